@@ -0,0 +1,19 @@
+package shier.rpc.annotation;
+
+import java.lang.annotation.*;
+
+/**
+ * 标记服务方法不阻塞, 服务端直接在IO线程中执行并写出响应, 不经过业务线程池
+ * <p>
+ * 可以标记在接口, 接口方法, 实现类或实现类方法上; 只用于纯内存计算且耗时很短的方法,
+ * 方法中有锁等待, IO或远程调用时会阻塞同一IO线程上所有连接的读写
+ *
+ * @author liangliang.wei
+ * @description
+ * @create 2017-12-21 上午10:15
+ **/
+@Documented
+@Target({ElementType.TYPE, ElementType.METHOD})
+@Retention(RetentionPolicy.RUNTIME)
+public @interface RpcNonBlocking {
+}
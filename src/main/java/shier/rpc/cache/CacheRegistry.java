@@ -0,0 +1,68 @@
+package shier.rpc.cache;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * 进程内所有结果缓存, 按服务方法名索引, 用于处理服务端推送的失效通知和导出统计
+ *
+ * @author liangliang.wei
+ * @description
+ * @create 2017-12-25 下午2:00
+ **/
+@Slf4j
+public class CacheRegistry {
+
+    private static final Map<String, List<ResultCache>> CACHE_MAP = new ConcurrentHashMap<>();
+
+    private CacheRegistry() {
+    }
+
+    /**
+     * 注册缓存
+     *
+     * @param cache {@link ResultCache#getName()} 为服务方法名, 见 NameUtils.buildServiceMethodName
+     */
+    public static void register(ResultCache cache) {
+        CACHE_MAP.computeIfAbsent(cache.getName(), key -> new CopyOnWriteArrayList<>()).add(cache);
+    }
+
+    /**
+     * 清空指定服务方法的缓存
+     *
+     * @param serviceMethodNames
+     */
+    public static void invalidate(Object[] serviceMethodNames) {
+        if (serviceMethodNames == null) {
+            return;
+        }
+        for (Object serviceMethodName : serviceMethodNames) {
+            List<ResultCache> caches = CACHE_MAP.get(String.valueOf(serviceMethodName));
+            if (caches == null) {
+                continue;
+            }
+            for (ResultCache cache : caches) {
+                cache.invalidateAll();
+            }
+            log.debug("CacheRegistry invalidate {}", serviceMethodName);
+        }
+    }
+
+    /**
+     * 所有缓存
+     *
+     * @return
+     */
+    public static List<ResultCache> getCaches() {
+        List<ResultCache> caches = new ArrayList<>();
+        for (List<ResultCache> list : CACHE_MAP.values()) {
+            caches.addAll(list);
+        }
+        return caches;
+    }
+}
@@ -0,0 +1,79 @@
+package shier.rpc.cache;
+
+/**
+ * TinyLFU的访问频率估计, count-min sketch, 每个计数4位, 16个计数打包在一个long中
+ * <p>
+ * 每个key按4个种子各选一个计数, 估计值取最小; 累计增加 10 * 容量 次后所有计数减半, 使旧的热点逐渐冷却.
+ * 不是线程安全的, 由 {@link ResultCache} 在锁内调用
+ *
+ * @author liangliang.wei
+ * @description
+ * @create 2017-12-25 上午10:10
+ **/
+class FrequencySketch {
+
+    private static final long[] SEEDS = {0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L};
+
+    private static final long RESET_MASK = 0x7777777777777777L;
+
+    private final long[] table;
+
+    private final int tableMask;
+
+    private final int sampleSize;
+
+    private int size;
+
+    FrequencySketch(int maximumSize) {
+        int capacity = 16;
+        while (capacity < maximumSize) {
+            capacity <<= 1;
+        }
+        table = new long[capacity];
+        tableMask = capacity - 1;
+        sampleSize = 10 * Math.max(maximumSize, 1);
+    }
+
+    /**
+     * 估计的访问次数, 最大15
+     *
+     * @param hash
+     * @return
+     */
+    int frequency(int hash) {
+        int frequency = 15;
+        for (int i = 0; i < SEEDS.length; i++) {
+            long h = slot(hash, i);
+            frequency = Math.min(frequency, (int) ((table[(int) h & tableMask] >>> shift(h)) & 0xF));
+        }
+        return frequency;
+    }
+
+    void increment(int hash) {
+        boolean added = false;
+        for (int i = 0; i < SEEDS.length; i++) {
+            long h = slot(hash, i);
+            int index = (int) h & tableMask;
+            int shift = shift(h);
+            if (((table[index] >>> shift) & 0xF) < 15) {
+                table[index] += 1L << shift;
+                added = true;
+            }
+        }
+        if (added && ++size >= sampleSize) {
+            for (int i = 0; i < table.length; i++) {
+                table[i] = (table[i] >>> 1) & RESET_MASK;
+            }
+            size >>>= 1;
+        }
+    }
+
+    private static long slot(int hash, int i) {
+        long h = (hash + SEEDS[i]) * SEEDS[i];
+        return h ^ (h >>> 32);
+    }
+
+    private static int shift(long h) {
+        return ((int) (h >>> 40) & 15) << 2;
+    }
+}
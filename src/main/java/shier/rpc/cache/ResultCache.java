@@ -0,0 +1,298 @@
+package shier.rpc.cache;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 消费端单个方法的调用结果缓存, 按 W-TinyLFU 淘汰
+ * <p>
+ * 新结果先进入容量1%的窗口LRU, 被挤出窗口时与主区LRU最久未访问的结果比较 {@link FrequencySketch} 估计的访问频率,
+ * 频率高的留下; 只访问一次的结果不会冲掉主区的热点. 主区不再分probation/protected两段.
+ * <p>
+ * 读取不加锁, 命中时尝试获取锁更新访问顺序和频率, 获取不到直接跳过; 写入和淘汰在锁内进行.
+ * 缓存的结果对象被所有调用方共享, 调用方不能修改
+ *
+ * @author liangliang.wei
+ * @description
+ * @create 2017-12-25 上午10:40
+ **/
+public class ResultCache {
+
+    /**
+     * 未配置过期时间时的默认值(毫秒)
+     */
+    public static long DEFAULT_TTL = 60000;
+
+    private final String name;
+
+    private final int windowMax;
+
+    private final int mainMax;
+
+    private final long ttlNanos;
+
+    private final Map<Key, Node> data = new ConcurrentHashMap<>();
+
+    /**
+     * 窗口区和主区, 按访问顺序排列, 只在锁内访问
+     */
+    private final LinkedHashMap<Key, Node> window = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final LinkedHashMap<Key, Node> main = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final FrequencySketch sketch;
+
+    private final ReentrantLock lock = new ReentrantLock();
+
+    /**
+     * 整体失效时递增, 失效前发出的调用返回后不再写入
+     */
+    private volatile long generation;
+
+    private final LongAdder hitCount = new LongAdder();
+
+    private final LongAdder missCount = new LongAdder();
+
+    private final LongAdder evictionCount = new LongAdder();
+
+    /**
+     * @param name        服务方法名, 用于统计和失效通知
+     * @param maximumSize 最多缓存的结果数
+     * @param ttlMillis   写入后多久过期, 不大于0时不过期
+     */
+    public ResultCache(String name, int maximumSize, long ttlMillis) {
+        this.name = name;
+        int size = Math.max(1, maximumSize);
+        this.windowMax = Math.max(1, size / 100);
+        this.mainMax = size - windowMax;
+        this.ttlNanos = ttlMillis > 0 ? TimeUnit.MILLISECONDS.toNanos(ttlMillis) : 0;
+        this.sketch = new FrequencySketch(size);
+    }
+
+    /**
+     * 生成缓存的key
+     *
+     * @param methodId 方法id
+     * @param args     序列化后的参数
+     * @return
+     */
+    public static Key newKey(int methodId, byte[] args) {
+        return new Key(methodId, args);
+    }
+
+    /**
+     * 查询缓存, 同时记录命中或未命中
+     *
+     * @param key
+     * @return 未命中时返回null, 命中时返回 {@link Hit}, 缓存的结果本身可以为null
+     */
+    public Hit get(Key key) {
+        Node node = data.get(key);
+        if (node == null) {
+            missCount.increment();
+            return null;
+        }
+        if (ttlNanos > 0 && System.nanoTime() - node.expireAt > 0) {
+            missCount.increment();
+            lock.lock();
+            try {
+                if (data.remove(key, node)) {
+                    (node.inWindow ? window : main).remove(key);
+                }
+            } finally {
+                lock.unlock();
+            }
+            return null;
+        }
+        hitCount.increment();
+        if (lock.tryLock()) {
+            try {
+                sketch.increment(key.hash);
+                (node.inWindow ? window : main).get(key); //更新访问顺序
+            } finally {
+                lock.unlock();
+            }
+        }
+        return node;
+    }
+
+    /**
+     * 当前的失效代数, 发起调用前获取, 写入时传入
+     *
+     * @return
+     */
+    public long getGeneration() {
+        return generation;
+    }
+
+    /**
+     * 写入调用结果
+     *
+     * @param key
+     * @param value
+     * @param generation 发起调用前的 {@link #getGeneration()}, 期间发生过失效时不写入
+     */
+    public void put(Key key, Object value, long generation) {
+        lock.lock();
+        try {
+            if (generation != this.generation) {
+                return;
+            }
+            sketch.increment(key.hash);
+            Node node = new Node(value, ttlNanos > 0 ? System.nanoTime() + ttlNanos : 0);
+            Node old = data.put(key, node);
+            if (old != null) {
+                (old.inWindow ? window : main).remove(key);
+            }
+            node.inWindow = true;
+            window.put(key, node);
+            evict();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 窗口超出容量时, 把最久未访问的结果移入主区或淘汰
+     */
+    private void evict() {
+        while (window.size() > windowMax) {
+            Iterator<Map.Entry<Key, Node>> iterator = window.entrySet().iterator();
+            Map.Entry<Key, Node> candidate = iterator.next();
+            iterator.remove();
+            if (main.size() < mainMax) {
+                admit(candidate);
+                continue;
+            }
+            Iterator<Map.Entry<Key, Node>> mainIterator = main.entrySet().iterator();
+            if (!mainIterator.hasNext()) {
+                remove(candidate.getKey(), candidate.getValue());
+                continue;
+            }
+            Map.Entry<Key, Node> victim = mainIterator.next();
+            if (sketch.frequency(candidate.getKey().hash) > sketch.frequency(victim.getKey().hash)) {
+                mainIterator.remove();
+                remove(victim.getKey(), victim.getValue());
+                admit(candidate);
+            } else {
+                remove(candidate.getKey(), candidate.getValue());
+            }
+        }
+    }
+
+    private void admit(Map.Entry<Key, Node> entry) {
+        entry.getValue().inWindow = false;
+        main.put(entry.getKey(), entry.getValue());
+    }
+
+    private void remove(Key key, Node node) {
+        data.remove(key, node);
+        evictionCount.increment();
+    }
+
+    /**
+     * 清空缓存, 正在进行的调用返回后也不会写入
+     */
+    public void invalidateAll() {
+        lock.lock();
+        try {
+            generation++;
+            data.clear();
+            window.clear();
+            main.clear();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int size() {
+        return data.size();
+    }
+
+    public long getHitCount() {
+        return hitCount.sum();
+    }
+
+    public long getMissCount() {
+        return missCount.sum();
+    }
+
+    public long getEvictionCount() {
+        return evictionCount.sum();
+    }
+
+    /**
+     * 命中的结果
+     */
+    public interface Hit {
+
+        Object getValue();
+    }
+
+    private static class Node implements Hit {
+
+        private final Object value;
+
+        private final long expireAt;
+
+        /**
+         * 是否在窗口区, 只在锁内修改
+         */
+        private volatile boolean inWindow;
+
+        Node(Object value, long expireAt) {
+            this.value = value;
+            this.expireAt = expireAt;
+        }
+
+        @Override
+        public Object getValue() {
+            return value;
+        }
+    }
+
+    /**
+     * 方法id和序列化后的参数, 哈希值预先计算
+     */
+    public static final class Key {
+
+        private final int methodId;
+
+        private final byte[] args;
+
+        private final int hash;
+
+        Key(int methodId, byte[] args) {
+            this.methodId = methodId;
+            this.args = args;
+            this.hash = methodId * 31 + Arrays.hashCode(args);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key key = (Key) o;
+            return methodId == key.methodId && Arrays.equals(args, key.args);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package shier.rpc.context;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/**
+ * 调用上下文, 用于同步接口的异步调用
+ * <pre>
+ * CompletableFuture&lt;Long&gt; future = RpcContext.asyncCall(() -&gt; testService.addTest(testDTO));
+ * </pre>
+ * future在IO线程中完成, 后续有阻塞操作时请使用 thenApplyAsync 等方法切换线程
+ *
+ * @author liangliang.wei
+ * @description
+ * @create 2017-12-12 下午3:20
+ **/
+public class RpcContext {
+
+    private static final ThreadLocal<Boolean> ASYNC = new ThreadLocal<>();
+
+    private static final ThreadLocal<CompletableFuture<?>> FUTURE = new ThreadLocal<>();
+
+    private RpcContext() {
+    }
+
+    /**
+     * 异步执行一次远程调用, 远程方法立即返回默认值, 结果通过返回的future获取
+     *
+     * @param call 只能包含一次远程调用
+     * @param <T>
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> CompletableFuture<T> asyncCall(Supplier<T> call) {
+        ASYNC.set(Boolean.TRUE);
+        try {
+            T value = call.get();
+            CompletableFuture<?> future = FUTURE.get();
+            return future != null ? (CompletableFuture<T>) future : CompletableFuture.completedFuture(value);
+        } catch (Throwable e) {
+            CompletableFuture<T> future = new CompletableFuture<>();
+            future.completeExceptionally(e);
+            return future;
+        } finally {
+            ASYNC.remove();
+            FUTURE.remove();
+        }
+    }
+
+    /**
+     * 当前线程是否处于异步调用中
+     *
+     * @return
+     */
+    public static boolean isAsync() {
+        return ASYNC.get() != null;
+    }
+
+    /**
+     * 设置本次异步调用的future, 同时结束异步标记, 避免同一次asyncCall中的后续调用也变成异步
+     *
+     * @param future
+     */
+    public static void setFuture(CompletableFuture<?> future) {
+        ASYNC.remove();
+        FUTURE.set(future);
+    }
+}
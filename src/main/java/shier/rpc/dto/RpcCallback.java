@@ -1,63 +1,184 @@
 package shier.rpc.dto;
 
-import lombok.Data;
-import lombok.extern.slf4j.Slf4j;
+import io.netty.util.Recycler;
 import shier.rpc.exception.RpcTimeoutException;
+import shier.rpc.utils.VirtualThreads;
 
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.locks.Condition;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.locks.LockSupport;
 
 /**
+ * 调用回调槽位, 无锁实现
+ * <p>
+ * 同步调用的槽位通过 {@link Recycler} 池化复用, 等待方只有在自己拿到结果(DONE)或者自己从请求表中移除了该槽位时
+ * 才能调用 {@link #recycle()}, 否则IO线程可能仍持有该对象; 异步调用的槽位不池化, 结果写入 {@link CompletableFuture}
+ * <p>
+ * 等待使用 {@link LockSupport#parkNanos}, 在虚拟线程中调用时只挂起虚拟线程, 不占用载体线程
+ *
  * @author liangliang.wei
  * @description
  * @create 2017-12-02 下午8:32
  **/
-@Data
-@Slf4j
 public class RpcCallback {
-    private Lock lock = new ReentrantLock();
-    private Condition finish = lock.newCondition();
-    private String requestId;
-    private Long timeout;
+
+    private static final Recycler<RpcCallback> RECYCLER = new Recycler<RpcCallback>() {
+        @Override
+        protected RpcCallback newObject(Handle<RpcCallback> handle) {
+            return new RpcCallback(handle);
+        }
+    };
+
+    private static final int WAITING = 0;
+
+    private static final int DONE = 1;
+
+    private static final int CANCELLED = 2;
+
+    private static final AtomicIntegerFieldUpdater<RpcCallback> STATE_UPDATER =
+            AtomicIntegerFieldUpdater.newUpdater(RpcCallback.class, "state");
+
+    private final Recycler.Handle<RpcCallback> handle;
+
+    private long requestId;
+
+    private volatile int state;
+
+    private volatile Thread waiter;
 
     private Object object;
 
-    public RpcCallback() {
+    private Throwable throwable;
+
+    private CompletableFuture<Object> future;
+
+    private RpcCallback(Recycler.Handle<RpcCallback> handle) {
+        this.handle = handle;
+    }
+
+    /**
+     * 从对象池获取回调槽位, 当前线程为等待线程
+     *
+     * @param requestId
+     * @return
+     */
+    public static RpcCallback newInstance(long requestId) {
+        //对象池按线程缓存, 虚拟线程数量多且生命周期短, 不池化
+        RpcCallback rpcCallback = VirtualThreads.isVirtual(Thread.currentThread()) ? new RpcCallback(null) : RECYCLER.get();
+        rpcCallback.requestId = requestId;
+        rpcCallback.object = null;
+        rpcCallback.throwable = null;
+        rpcCallback.waiter = Thread.currentThread();
+        rpcCallback.state = WAITING;
+        return rpcCallback;
     }
 
-    public RpcCallback(String requestId, Long timeout) {
-        this.requestId = requestId;
-        this.timeout = timeout;
+    /**
+     * 创建异步回调, 结果在IO线程中写入future
+     *
+     * @param requestId
+     * @param future
+     * @return
+     */
+    public static RpcCallback newAsyncInstance(long requestId, CompletableFuture<Object> future) {
+        RpcCallback rpcCallback = new RpcCallback(null);
+        rpcCallback.requestId = requestId;
+        rpcCallback.future = future;
+        return rpcCallback;
     }
 
-    public Object waitCallback() throws Exception {
+    /**
+     * 等待回调返回结果
+     *
+     * @param timeout 毫秒
+     * @return
+     * @throws Throwable 超时抛出 RpcTimeoutException, 服务端异常原样抛出
+     */
+    public Object waitCallback(long timeout) throws Throwable {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+        while (state == WAITING) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                if (STATE_UPDATER.compareAndSet(this, WAITING, CANCELLED)) {
+                    throw new RpcTimeoutException("await timeout " + timeout);
+                }
+                break;
+            }
+            LockSupport.parkNanos(this, remaining);
+            if (Thread.interrupted()) {
+                if (STATE_UPDATER.compareAndSet(this, WAITING, CANCELLED)) {
+                    throw new InterruptedException();
+                }
+                //结果已经到达, 保留中断标记
+                Thread.currentThread().interrupt();
+            }
+        }
 
-        if (this.object != null) {
-            return this.object;
+        if (throwable != null) {
+            throw throwable;
         }
+        return object;
+    }
+
+    /**
+     * 收到调用结果
+     *
+     * @param object
+     * @return 等待方已放弃时返回false
+     */
+    public boolean callback(Object object) {
+        this.object = object;
+        return complete();
+    }
+
+    /**
+     * 收到调用异常
+     *
+     * @param throwable
+     * @return 等待方已放弃时返回false
+     */
+    public boolean callbackError(Throwable throwable) {
+        this.throwable = throwable;
+        return complete();
+    }
 
-        try {
-            lock.lock();
-            Boolean signalFlg = finish.await(timeout, TimeUnit.MILLISECONDS);
-            if (!signalFlg) {
-                throw new RpcTimeoutException("await timeout " + timeout);
+    private boolean complete() {
+        if (future != null) {
+            if (!STATE_UPDATER.compareAndSet(this, WAITING, DONE)) {
+                return false;
             }
-            return this.object;
-        } finally {
-            lock.unlock();
+            return throwable != null ? future.completeExceptionally(throwable) : future.complete(object);
+        }
+
+        Thread thread = waiter;
+        if (STATE_UPDATER.compareAndSet(this, WAITING, DONE)) {
+            //CAS成功之后不能再访问当前对象, 等待方随时可能回收
+            LockSupport.unpark(thread);
+            return true;
         }
+        return false;
     }
 
-    public void callback(Object object) {
-        try {
-            lock.lock();
-            this.object = object;
-            finish.signalAll();
-        } finally {
-            lock.unlock();
+    /**
+     * 归还对象池
+     */
+    public void recycle() {
+        if (handle == null) {
+            return;
         }
+        waiter = null;
+        object = null;
+        throwable = null;
+        handle.recycle(this);
+    }
+
+    public long getRequestId() {
+        return requestId;
+    }
+
+    public boolean isDone() {
+        return state == DONE;
     }
 
 }
@@ -12,12 +12,48 @@ import java.io.Serializable;
 @Data
 public class RpcRequestDTO implements Serializable {
 
-    private String requestId;
+    private long requestId;
 
+    /**
+     * 方法id, 见 MethodIdRegistry
+     */
+    private int methodId;
+
+    /**
+     * 参数的序列化方式, 见 SerializerRegistry
+     */
+    private byte serializerId;
+
+    /**
+     * 服务名, 只在本地使用, 不参与传输
+     */
     private String serviceName;
 
+    /**
+     * 方法名, 只在本地使用, 不参与传输
+     */
     private String methodName;
 
     private Object[] params;
 
+    /**
+     * 调用方的超时时间(毫秒), 大于0时随请求传给服务端, 服务端据此丢弃调用方已放弃的请求
+     */
+    private int timeout;
+
+    /**
+     * 服务端按收到请求的时间和timeout计算的截止时间(System.nanoTime), 0为不限制; 只在本地使用, 不参与传输
+     */
+    private long deadline;
+
+    /**
+     * 一致性哈希负载均衡使用的参数, 只在本地使用, 不参与传输
+     */
+    private Object hashKey;
+
+    /**
+     * 是否为方法握手消息
+     */
+    private boolean handshake;
+
 }
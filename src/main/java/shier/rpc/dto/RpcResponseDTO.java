@@ -11,8 +11,17 @@ import java.io.Serializable;
  **/
 @Data
 public class RpcResponseDTO implements Serializable {
-    private String requestId;
+    private long requestId;
+    private byte serializerId;
     private boolean hasError = false;
     private Throwable throwable;
+    /**
+     * 服务端繁忙未执行, 只传输标志位
+     */
+    private boolean busy = false;
+    /**
+     * 服务端推送的缓存失效通知, result为服务方法名数组
+     */
+    private boolean invalidate = false;
     private Object result;
 }
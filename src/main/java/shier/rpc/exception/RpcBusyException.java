@@ -0,0 +1,15 @@
+package shier.rpc.exception;
+
+/**
+ * 服务端线程池已满, 请求未执行, 可以安全地重试其他服务提供者
+ *
+ * @author liangliang.wei
+ * @description
+ * @create 2017-12-20 上午10:20
+ **/
+public class RpcBusyException extends RuntimeException {
+
+    public RpcBusyException(String message) {
+        super(message);
+    }
+}
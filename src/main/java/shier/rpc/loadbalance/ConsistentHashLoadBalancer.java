@@ -0,0 +1,136 @@
+package shier.rpc.loadbalance;
+
+import shier.rpc.dto.RpcRequestDTO;
+import shier.rpc.netty.RpcNettyClient;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * 一致性哈希, 相同参数总是路由到同一个服务提供者, 便于利用提供者的本地缓存
+ * <p>
+ * 哈希的参数由 {@link RpcRequestDTO#getHashKey()} 指定, 默认为第一个参数; 每个地址160个虚拟节点,
+ * 服务提供者变化时只影响相邻区间
+ *
+ * @author liangliang.wei
+ * @description
+ * @create 2017-12-18 上午10:20
+ **/
+public class ConsistentHashLoadBalancer implements LoadBalancer {
+
+    public static final String NAME = "consistentHash";
+
+    private static final int VIRTUAL_NODES = 160;
+
+    private volatile Ring ring;
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public RpcNettyClient select(List<RpcNettyClient> clients, RpcRequestDTO rpcRequestDTO) {
+        return ring(clients).select(key(rpcRequestDTO));
+    }
+
+    /**
+     * 沿哈希环顺时针找下一个未排除的提供者, 不重建环
+     */
+    @Override
+    public RpcNettyClient select(List<RpcNettyClient> clients, RpcRequestDTO rpcRequestDTO, Collection<RpcNettyClient> excluded) {
+        return ring(clients).select(key(rpcRequestDTO), excluded);
+    }
+
+    private Ring ring(List<RpcNettyClient> clients) {
+        Ring ring = this.ring;
+        if (ring == null || !ring.matches(clients)) {
+            ring = new Ring(clients);
+            this.ring = ring;
+        }
+        return ring;
+    }
+
+    private static String key(RpcRequestDTO rpcRequestDTO) {
+        Object key = rpcRequestDTO.getHashKey();
+        if (key == null && rpcRequestDTO.getParams() != null && rpcRequestDTO.getParams().length > 0) {
+            key = rpcRequestDTO.getParams()[0];
+        }
+        return String.valueOf(key);
+    }
+
+    private static byte[] md5(String value) {
+        try {
+            return MessageDigest.getInstance("MD5").digest(value.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * md5的16个字节拆成4个哈希值
+     */
+    private static long hash(byte[] digest, int index) {
+        return ((long) (digest[3 + index * 4] & 0xFF) << 24)
+                | ((long) (digest[2 + index * 4] & 0xFF) << 16)
+                | ((long) (digest[1 + index * 4] & 0xFF) << 8)
+                | (digest[index * 4] & 0xFF);
+    }
+
+    /**
+     * 哈希环, 服务提供者列表变化时重建
+     */
+    private static class Ring {
+
+        private final TreeMap<Long, RpcNettyClient> nodes = new TreeMap<>();
+
+        private final List<RpcNettyClient> clients;
+
+        private final int size;
+
+        Ring(List<RpcNettyClient> clients) {
+            this.clients = clients;
+            this.size = clients.size();
+            for (RpcNettyClient client : clients) {
+                for (int i = 0; i < VIRTUAL_NODES / 4; i++) {
+                    byte[] digest = md5(client.getServiceAddress() + "#" + i);
+                    for (int j = 0; j < 4; j++) {
+                        nodes.put(hash(digest, j), client);
+                    }
+                }
+            }
+        }
+
+        /**
+         * 服务提供者列表是不可修改的快照, 变化时整体替换, 再比较大小防止调用方传入可变列表
+         */
+        boolean matches(List<RpcNettyClient> clients) {
+            return this.clients == clients && this.size == clients.size();
+        }
+
+        RpcNettyClient select(String key) {
+            Map.Entry<Long, RpcNettyClient> entry = nodes.ceilingEntry(hash(md5(key), 0));
+            return entry != null ? entry.getValue() : nodes.firstEntry().getValue();
+        }
+
+        RpcNettyClient select(String key, Collection<RpcNettyClient> excluded) {
+            long hash = hash(md5(key), 0);
+            for (RpcNettyClient client : nodes.tailMap(hash, true).values()) {
+                if (!excluded.contains(client)) {
+                    return client;
+                }
+            }
+            for (RpcNettyClient client : nodes.headMap(hash, false).values()) {
+                if (!excluded.contains(client)) {
+                    return client;
+                }
+            }
+            return null;
+        }
+    }
+}
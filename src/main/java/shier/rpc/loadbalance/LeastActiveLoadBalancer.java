@@ -0,0 +1,51 @@
+package shier.rpc.loadbalance;
+
+import shier.rpc.dto.RpcRequestDTO;
+import shier.rpc.netty.RpcNettyClient;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 最少在途请求, 在途请求数相同时随机选择
+ *
+ * @author liangliang.wei
+ * @description
+ * @create 2017-12-18 上午10:20
+ **/
+public class LeastActiveLoadBalancer implements LoadBalancer {
+
+    public static final String NAME = "leastActive";
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public RpcNettyClient select(List<RpcNettyClient> clients, RpcRequestDTO rpcRequestDTO) {
+        return select(clients, rpcRequestDTO, Collections.emptyList());
+    }
+
+    @Override
+    public RpcNettyClient select(List<RpcNettyClient> clients, RpcRequestDTO rpcRequestDTO, Collection<RpcNettyClient> excluded) {
+        int size = clients.size();
+        int start = ThreadLocalRandom.current().nextInt(size); //随机起点, 避免并列时总选第一个
+        RpcNettyClient selected = null;
+        int minActive = Integer.MAX_VALUE;
+        for (int i = 0; i < size; i++) {
+            RpcNettyClient client = clients.get((start + i) % size);
+            if (excluded.contains(client)) {
+                continue;
+            }
+            int active = client.getPendingCount();
+            if (active < minActive) {
+                minActive = active;
+                selected = client;
+            }
+        }
+        return selected;
+    }
+}
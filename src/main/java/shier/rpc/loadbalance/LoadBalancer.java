@@ -0,0 +1,74 @@
+package shier.rpc.loadbalance;
+
+import shier.rpc.dto.RpcRequestDTO;
+import shier.rpc.netty.RpcNettyClient;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 负载均衡策略, 每个消费者持有独立的实例, 可以保存路由状态
+ * <p>
+ * 扩展时实现该接口并提供无参构造方法, 在 META-INF/services/shier.rpc.loadbalance.LoadBalancer 中声明实现类,
+ * 消费者通过 {@link #getName()} 引用
+ *
+ * @author liangliang.wei
+ * @description
+ * @create 2017-12-18 上午10:20
+ **/
+public interface LoadBalancer {
+
+    /**
+     * 配置中引用的名称
+     *
+     * @return
+     */
+    String getName();
+
+    /**
+     * 选择服务提供者
+     *
+     * @param clients       可用的服务提供者, 不为空
+     * @param rpcRequestDTO 本次请求
+     * @return
+     */
+    RpcNettyClient select(List<RpcNettyClient> clients, RpcRequestDTO rpcRequestDTO);
+
+    /**
+     * 消费者的路由快照(全部服务提供者)被替换时调用, 在此清理已下线提供者的状态
+     * <p>
+     * select收到的是按熔断过滤后的列表, 不能据此判断提供者是否下线
+     *
+     * @param clients 新的路由快照, 不可修改
+     */
+    default void updateProviders(List<RpcNettyClient> clients) {
+    }
+
+    /**
+     * 重试和对冲时选择一个还没有尝试过的服务提供者
+     * <p>
+     * clients与普通调用是同一个快照, 不为每次尝试新建列表; 默认按 {@link #select(List, RpcRequestDTO)} 选择,
+     * 选中已排除的提供者时从随机位置找下一个
+     *
+     * @param clients       可用的服务提供者, 不为空
+     * @param rpcRequestDTO 本次请求
+     * @param excluded      已经尝试过的提供者
+     * @return 全部被排除时返回null
+     */
+    default RpcNettyClient select(List<RpcNettyClient> clients, RpcRequestDTO rpcRequestDTO, Collection<RpcNettyClient> excluded) {
+        RpcNettyClient selected = select(clients, rpcRequestDTO);
+        if (!excluded.contains(selected)) {
+            return selected;
+        }
+        int size = clients.size();
+        int start = ThreadLocalRandom.current().nextInt(size);
+        for (int i = 0; i < size; i++) {
+            RpcNettyClient client = clients.get((start + i) % size);
+            if (!excluded.contains(client)) {
+                return client;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,62 @@
+package shier.rpc.loadbalance;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Map;
+import java.util.ServiceLoader;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 负载均衡策略注册表, 内置 random/leastActive/p2c/weightedRoundRobin/consistentHash,
+ * 其余通过 {@link ServiceLoader} 加载
+ *
+ * @author liangliang.wei
+ * @description
+ * @create 2017-12-18 上午10:20
+ **/
+@Slf4j
+public class LoadBalancerRegistry {
+
+    public static final String DEFAULT = RandomLoadBalancer.NAME;
+
+    private static final Map<String, Class<? extends LoadBalancer>> LOAD_BALANCER_MAP = new ConcurrentHashMap<>();
+
+    static {
+        register(new RandomLoadBalancer());
+        register(new LeastActiveLoadBalancer());
+        register(new P2cLoadBalancer());
+        register(new WeightedRoundRobinLoadBalancer());
+        register(new ConsistentHashLoadBalancer());
+        for (LoadBalancer loadBalancer : ServiceLoader.load(LoadBalancer.class)) {
+            register(loadBalancer);
+        }
+    }
+
+    private LoadBalancerRegistry() {
+    }
+
+    private static void register(LoadBalancer loadBalancer) {
+        if (LOAD_BALANCER_MAP.putIfAbsent(loadBalancer.getName(), loadBalancer.getClass()) != null) {
+            throw new IllegalStateException("loadBalancer name repeat: " + loadBalancer.getName());
+        }
+        log.info("LoadBalancerRegistry.register name={}", loadBalancer.getName());
+    }
+
+    /**
+     * 按配置名称创建新的实例, 每个消费者一个
+     *
+     * @param name
+     * @return
+     */
+    public static LoadBalancer newLoadBalancer(String name) {
+        Class<? extends LoadBalancer> clazz = LOAD_BALANCER_MAP.get(name);
+        if (clazz == null) {
+            throw new IllegalArgumentException("unknown loadBalancer " + name);
+        }
+        try {
+            return clazz.newInstance();
+        } catch (InstantiationException | IllegalAccessException e) {
+            throw new IllegalStateException("create loadBalancer fail " + name, e);
+        }
+    }
+}
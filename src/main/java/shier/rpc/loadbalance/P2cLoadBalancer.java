@@ -0,0 +1,71 @@
+package shier.rpc.loadbalance;
+
+import shier.rpc.dto.RpcRequestDTO;
+import shier.rpc.netty.RpcNettyClient;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Power of two choices: 随机取两个, 选择 EWMA延迟 * (在途请求数 + 1) 较小的一个
+ * <p>
+ * 慢的服务提供者延迟升高后很快被避开, 同时随机性避免所有消费者同时涌向同一个最快的提供者
+ *
+ * @author liangliang.wei
+ * @description
+ * @create 2017-12-18 上午10:20
+ **/
+public class P2cLoadBalancer implements LoadBalancer {
+
+    public static final String NAME = "p2c";
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public RpcNettyClient select(List<RpcNettyClient> clients, RpcRequestDTO rpcRequestDTO) {
+        int size = clients.size();
+        if (size == 1) {
+            return clients.get(0);
+        }
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        int a = random.nextInt(size);
+        int b = random.nextInt(size - 1);
+        if (b >= a) {
+            b++;
+        }
+        RpcNettyClient first = clients.get(a);
+        RpcNettyClient second = clients.get(b);
+        return load(first) <= load(second) ? first : second;
+    }
+
+    @Override
+    public RpcNettyClient select(List<RpcNettyClient> clients, RpcRequestDTO rpcRequestDTO, Collection<RpcNettyClient> excluded) {
+        //从两个随机位置各找一个未排除的提供者
+        RpcNettyClient first = pick(clients, excluded, null);
+        if (first == null) {
+            return null;
+        }
+        RpcNettyClient second = pick(clients, excluded, first);
+        return second == null || load(first) <= load(second) ? first : second;
+    }
+
+    private static RpcNettyClient pick(List<RpcNettyClient> clients, Collection<RpcNettyClient> excluded, RpcNettyClient other) {
+        int size = clients.size();
+        int start = ThreadLocalRandom.current().nextInt(size);
+        for (int i = 0; i < size; i++) {
+            RpcNettyClient client = clients.get((start + i) % size);
+            if (client != other && !excluded.contains(client)) {
+                return client;
+            }
+        }
+        return null;
+    }
+
+    private static double load(RpcNettyClient client) {
+        return client.getEwmaLatency() * (client.getPendingCount() + 1);
+    }
+}
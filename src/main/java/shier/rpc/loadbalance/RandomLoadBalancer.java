@@ -0,0 +1,29 @@
+package shier.rpc.loadbalance;
+
+import shier.rpc.dto.RpcRequestDTO;
+import shier.rpc.netty.RpcNettyClient;
+
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * 随机
+ *
+ * @author liangliang.wei
+ * @description
+ * @create 2017-12-18 上午10:20
+ **/
+public class RandomLoadBalancer implements LoadBalancer {
+
+    public static final String NAME = "random";
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public RpcNettyClient select(List<RpcNettyClient> clients, RpcRequestDTO rpcRequestDTO) {
+        return clients.get(ThreadLocalRandom.current().nextInt(clients.size()));
+    }
+}
@@ -0,0 +1,100 @@
+package shier.rpc.loadbalance;
+
+import shier.rpc.dto.RpcRequestDTO;
+import shier.rpc.netty.RpcNettyClient;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 平滑加权轮询(与nginx相同): 每次所有提供者的当前值加上各自权重, 选择当前值最大的一个并减去总权重
+ * <p>
+ * 权重来自 {@link RpcNettyClient#getWeight()}; 并发选择时不加锁, 极少数情况下顺序略有偏差.
+ * 当前值按地址保存在整体替换的不可修改map中, 只在路由快照变化({@link #updateProviders(List)})时去掉已下线的地址,
+ * 熔断过滤和重试不影响其他提供者的当前值
+ *
+ * @author liangliang.wei
+ * @description
+ * @create 2017-12-18 上午10:20
+ **/
+public class WeightedRoundRobinLoadBalancer implements LoadBalancer {
+
+    public static final String NAME = "weightedRoundRobin";
+
+    private volatile Map<String, AtomicLong> currentWeightMap = Collections.emptyMap();
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public RpcNettyClient select(List<RpcNettyClient> clients, RpcRequestDTO rpcRequestDTO) {
+        return select(clients, rpcRequestDTO, Collections.emptyList());
+    }
+
+    /**
+     * 已排除的提供者不参与本次计算, 当前值保持不变(与nginx跳过已尝试的upstream相同)
+     */
+    @Override
+    public RpcNettyClient select(List<RpcNettyClient> clients, RpcRequestDTO rpcRequestDTO, Collection<RpcNettyClient> excluded) {
+        Map<String, AtomicLong> currentWeightMap = this.currentWeightMap;
+        long totalWeight = 0;
+        long maxCurrent = Long.MIN_VALUE;
+        RpcNettyClient selected = null;
+        AtomicLong selectedCurrent = null;
+        for (RpcNettyClient client : clients) {
+            if (excluded.contains(client)) {
+                continue;
+            }
+            int weight = client.getWeight();
+            AtomicLong current = currentWeightMap.get(client.getServiceAddress());
+            if (current == null) {
+                current = addAddress(client.getServiceAddress());
+            }
+            long value = current.addAndGet(weight);
+            totalWeight += weight;
+            if (value > maxCurrent) {
+                maxCurrent = value;
+                selected = client;
+                selectedCurrent = current;
+            }
+        }
+        if (selectedCurrent != null) {
+            selectedCurrent.addAndGet(-totalWeight);
+        }
+        return selected;
+    }
+
+    /**
+     * 保留仍在快照中的地址的当前值(同一个AtomicLong, 并发的选择不会丢失更新), 已下线的地址重新上线时从0开始
+     */
+    @Override
+    public synchronized void updateProviders(List<RpcNettyClient> clients) {
+        Map<String, AtomicLong> old = currentWeightMap;
+        Map<String, AtomicLong> map = new HashMap<>();
+        for (RpcNettyClient client : clients) {
+            AtomicLong current = old.get(client.getServiceAddress());
+            map.put(client.getServiceAddress(), current != null ? current : new AtomicLong());
+        }
+        currentWeightMap = map;
+    }
+
+    /**
+     * 直接使用未经过快照的列表时按需加入地址
+     */
+    private synchronized AtomicLong addAddress(String address) {
+        AtomicLong current = currentWeightMap.get(address);
+        if (current == null) {
+            Map<String, AtomicLong> map = new HashMap<>(currentWeightMap);
+            current = new AtomicLong();
+            map.put(address, current);
+            currentWeightMap = map;
+        }
+        return current;
+    }
+}
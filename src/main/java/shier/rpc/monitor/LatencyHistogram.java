@@ -0,0 +1,90 @@
+package shier.rpc.monitor;
+
+/**
+ * HDR风格的对数线性分桶, 以微秒为单位
+ * <p>
+ * 小于 {@link #SUB_COUNT} 的值每个值一个桶; 之后每个2的幂区间再等分为 {@link #SUB_COUNT} / 2 个桶,
+ * 相对误差不超过 1 / ({@link #SUB_COUNT} / 2) 约6%; 超过 2^{@link #MAX_MAGNITUDE} 微秒(约71分钟)的值计入最后一个桶
+ *
+ * @author liangliang.wei
+ * @description
+ * @create 2017-12-21 下午2:10
+ **/
+public final class LatencyHistogram {
+
+    private static final int SUB_BITS = 5;
+
+    /**
+     * 精确计数的范围, 也是每个区间的桶数的两倍
+     */
+    public static final int SUB_COUNT = 1 << SUB_BITS;
+
+    private static final int HALF_COUNT = SUB_COUNT >> 1;
+
+    private static final int MAX_MAGNITUDE = 32;
+
+    private static final long MAX_VALUE = (1L << (MAX_MAGNITUDE + 1)) - 1;
+
+    /**
+     * 桶的总数
+     */
+    public static final int BUCKET_COUNT = bucketIndex(MAX_VALUE) + 1;
+
+    private LatencyHistogram() {
+    }
+
+    /**
+     * 值所在的桶
+     *
+     * @param micros 不小于0
+     * @return
+     */
+    public static int bucketIndex(long micros) {
+        long value = Math.min(Math.max(micros, 0), MAX_VALUE);
+        if (value < SUB_COUNT) {
+            return (int) value;
+        }
+        int magnitude = 63 - Long.numberOfLeadingZeros(value);
+        int shift = magnitude - SUB_BITS + 1;
+        //value >>> shift 落在 [HALF_COUNT, SUB_COUNT)
+        return SUB_COUNT + (shift - 1) * HALF_COUNT + (int) (value >>> shift) - HALF_COUNT;
+    }
+
+    /**
+     * 桶内最大的值, 作为该桶的代表值
+     *
+     * @param index
+     * @return
+     */
+    public static long bucketValue(int index) {
+        if (index < SUB_COUNT) {
+            return index;
+        }
+        int shift = (index - SUB_COUNT) / HALF_COUNT + 1;
+        long top = HALF_COUNT + (index - SUB_COUNT) % HALF_COUNT;
+        return ((top + 1) << shift) - 1;
+    }
+
+    /**
+     * 计算分位值
+     *
+     * @param counts     每个桶的计数
+     * @param total      计数之和
+     * @param percentile 0 - 100
+     * @return 微秒, 没有样本时为0
+     */
+    public static long percentile(long[] counts, long total, double percentile) {
+        if (total <= 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(total * percentile / 100));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return bucketValue(i);
+            }
+        }
+        return bucketValue(counts.length - 1);
+    }
+}
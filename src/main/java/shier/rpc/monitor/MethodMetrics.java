@@ -0,0 +1,144 @@
+package shier.rpc.monitor;
+
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 单个服务方法在一端(消费者或提供者)的调用统计
+ * <p>
+ * 按线程分成多个条带, 每个条带是数组中连续的一段: 成功数, 失败数, 总耗时, 最大耗时, 最小耗时, 耗时分桶计数.
+ * 记录时只做几次原子加, 不分配对象; 导出时逐个 getAndSet 清零, 记录和导出并发时样本只会计入相邻的两个周期之一, 不会丢失
+ *
+ * @author liangliang.wei
+ * @description
+ * @create 2017-12-21 下午2:40
+ **/
+public class MethodMetrics {
+
+    private static final int SUCCESS = 0;
+
+    private static final int FAIL = 1;
+
+    private static final int TOTAL = 2;
+
+    private static final int MAX = 3;
+
+    private static final int MIN = 4;
+
+    private static final int BUCKETS = 5;
+
+    private static final int STRIPE_LENGTH = BUCKETS + LatencyHistogram.BUCKET_COUNT;
+
+    private static final int STRIPES;
+
+    static {
+        int n = 1;
+        while (n < Math.min(8, Runtime.getRuntime().availableProcessors())) {
+            n <<= 1;
+        }
+        STRIPES = n;
+    }
+
+    private final String side;
+
+    private final String serviceName;
+
+    private final String methodName;
+
+    private final AtomicLongArray cells = new AtomicLongArray(STRIPES * STRIPE_LENGTH);
+
+    public MethodMetrics(String side, String serviceName, String methodName) {
+        this.side = side;
+        this.serviceName = serviceName;
+        this.methodName = methodName;
+        for (int i = 0; i < STRIPES; i++) {
+            cells.set(i * STRIPE_LENGTH + MIN, Long.MAX_VALUE);
+        }
+    }
+
+    /**
+     * 记录一次调用
+     *
+     * @param elapsedNanos 耗时
+     * @param success      是否成功
+     */
+    public void record(long elapsedNanos, boolean success) {
+        long micros = TimeUnit.NANOSECONDS.toMicros(elapsedNanos);
+        int base = ((int) Thread.currentThread().getId() & (STRIPES - 1)) * STRIPE_LENGTH;
+        cells.incrementAndGet(base + (success ? SUCCESS : FAIL));
+        cells.addAndGet(base + TOTAL, micros);
+        cells.incrementAndGet(base + BUCKETS + LatencyHistogram.bucketIndex(micros));
+        long max;
+        while (micros > (max = cells.get(base + MAX)) && !cells.compareAndSet(base + MAX, max, micros)) {
+        }
+        long min;
+        while (micros < (min = cells.get(base + MIN)) && !cells.compareAndSet(base + MIN, min, micros)) {
+        }
+    }
+
+    /**
+     * 导出并清零本周期的统计
+     *
+     * @param startTime 周期开始时间
+     * @param endTime   周期结束时间
+     * @return 本周期没有调用时返回null
+     */
+    public Report drain(Date startTime, Date endTime) {
+        long success = 0;
+        long fail = 0;
+        long total = 0;
+        long max = 0;
+        long min = Long.MAX_VALUE;
+        long[] counts = new long[LatencyHistogram.BUCKET_COUNT];
+        for (int stripe = 0; stripe < STRIPES; stripe++) {
+            int base = stripe * STRIPE_LENGTH;
+            success += cells.getAndSet(base + SUCCESS, 0);
+            fail += cells.getAndSet(base + FAIL, 0);
+            total += cells.getAndSet(base + TOTAL, 0);
+            max = Math.max(max, cells.getAndSet(base + MAX, 0));
+            min = Math.min(min, cells.getAndSet(base + MIN, Long.MAX_VALUE));
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] += cells.getAndSet(base + BUCKETS + i, 0);
+            }
+        }
+
+        long count = 0;
+        for (long c : counts) {
+            count += c;
+        }
+        if (count == 0) {
+            return null;
+        }
+
+        Report report = new Report();
+        report.setSide(side);
+        report.setServiceName(serviceName);
+        report.setMethodName(methodName);
+        report.setStartTime(startTime);
+        report.setEndTime(endTime);
+        report.setCount(count);
+        report.setSuccessCount(success);
+        report.setFailCount(fail);
+        report.setTotalTime(total);
+        report.setMaxTime(max);
+        report.setMinTime(min == Long.MAX_VALUE ? 0 : min);
+        report.setP50(LatencyHistogram.percentile(counts, count, 50));
+        report.setP90(LatencyHistogram.percentile(counts, count, 90));
+        report.setP99(LatencyHistogram.percentile(counts, count, 99));
+        report.setP999(LatencyHistogram.percentile(counts, count, 99.9));
+        return report;
+    }
+
+    public String getSide() {
+        return side;
+    }
+
+    public String getServiceName() {
+        return serviceName;
+    }
+
+    public String getMethodName() {
+        return methodName;
+    }
+}
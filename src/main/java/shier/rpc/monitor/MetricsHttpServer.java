@@ -0,0 +1,126 @@
+package shier.rpc.monitor;
+
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelFutureListener;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.FullHttpRequest;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpHeaderValues;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpObjectAggregator;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpServerCodec;
+import io.netty.handler.codec.http.HttpUtil;
+import io.netty.handler.codec.http.HttpVersion;
+import lombok.extern.slf4j.Slf4j;
+import shier.rpc.netty.NettyTransport;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * 供本地采集程序拉取统计的HTTP服务, GET /metrics 返回 {@link MetricsReporter#getExposition()}
+ * <p>
+ * 只读取上报线程生成好的文本, 不导出统计, 拉取频率不影响推送的增量
+ *
+ * @author liangliang.wei
+ * @description
+ * @create 2017-12-22 下午2:30
+ **/
+@Slf4j
+public class MetricsHttpServer {
+
+    public static final String PATH = "/metrics";
+
+    private static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private final int port;
+
+    private final MetricsReporter metricsReporter;
+
+    private EventLoopGroup eventLoopGroup;
+
+    private Channel channel;
+
+    public MetricsHttpServer(int port, MetricsReporter metricsReporter) {
+        this.port = port;
+        this.metricsReporter = metricsReporter;
+    }
+
+    /**
+     * 绑定端口
+     *
+     * @throws InterruptedException
+     */
+    public void start() throws InterruptedException {
+        eventLoopGroup = NettyTransport.newEventLoopGroup(1, false, "shier-rpc-metrics");
+        ChannelFuture future = new ServerBootstrap()
+                .group(eventLoopGroup)
+                .channel(NettyTransport.serverSocketChannelClass(eventLoopGroup))
+                .childHandler(new ChannelInitializer<SocketChannel>() {
+                    @Override
+                    protected void initChannel(SocketChannel ch) {
+                        ch.pipeline()
+                                .addLast(new HttpServerCodec())
+                                .addLast(new HttpObjectAggregator(4096))
+                                .addLast(new MetricsHandler());
+                    }
+                })
+                .bind(port).sync();
+        channel = future.channel();
+        log.info("MetricsHttpServer start port={}", port);
+    }
+
+    public void close() {
+        if (channel != null) {
+            channel.close();
+        }
+        if (eventLoopGroup != null) {
+            eventLoopGroup.shutdownGracefully();
+        }
+    }
+
+    private class MetricsHandler extends SimpleChannelInboundHandler<FullHttpRequest> {
+
+        @Override
+        protected void channelRead0(ChannelHandlerContext ctx, FullHttpRequest request) {
+            FullHttpResponse response;
+            String uri = request.uri();
+            int query = uri.indexOf('?');
+            String path = query < 0 ? uri : uri.substring(0, query);
+            if (!PATH.equals(path)) {
+                response = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.NOT_FOUND);
+            } else if (!HttpMethod.GET.equals(request.method())) {
+                response = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.METHOD_NOT_ALLOWED);
+            } else {
+                ByteBuf content = Unpooled.copiedBuffer(metricsReporter.getExposition(), StandardCharsets.UTF_8);
+                response = new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.OK, content);
+                response.headers().set(HttpHeaderNames.CONTENT_TYPE, CONTENT_TYPE);
+            }
+            HttpUtil.setContentLength(response, response.content().readableBytes());
+
+            boolean keepAlive = HttpUtil.isKeepAlive(request);
+            if (keepAlive) {
+                response.headers().set(HttpHeaderNames.CONNECTION, HttpHeaderValues.KEEP_ALIVE);
+                ctx.writeAndFlush(response);
+            } else {
+                ctx.writeAndFlush(response).addListener(ChannelFutureListener.CLOSE);
+            }
+        }
+
+        @Override
+        public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
+            log.warn("MetricsHttpServer {}", cause.getMessage());
+            ctx.close();
+        }
+    }
+}
@@ -0,0 +1,314 @@
+package shier.rpc.monitor;
+
+import lombok.extern.slf4j.Slf4j;
+import shier.rpc.cache.CacheRegistry;
+import shier.rpc.cache.ResultCache;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.Supplier;
+
+/**
+ * 定期导出调用统计, 推送给监控中心并生成供拉取的文本
+ * <p>
+ * 只在上报线程中运行, 调用线程只写 {@link MethodMetrics}, 与上报互不等待.
+ * 每个周期的增量编码为一帧 {@link ReportCodec} 放入待发送队列, 推送失败时保留, 下个周期与新的一帧合并为一个批次重试,
+ * 队列超过 {@link #MAX_PENDING} 帧时丢弃最旧的. 推送读完响应后不断开连接, 由HttpURLConnection的keep-alive缓存复用
+ *
+ * @author liangliang.wei
+ * @description
+ * @create 2017-12-22 上午11:00
+ **/
+@Slf4j
+public class MetricsReporter implements Runnable {
+
+    /**
+     * 推送失败时最多保留的周期数
+     */
+    public static int MAX_PENDING = 60;
+
+    public static int CONNECT_TIMEOUT = 1000;
+
+    public static int READ_TIMEOUT = 3000;
+
+    private final Supplier<String> centerAddressSupplier;
+
+    private final ArrayDeque<byte[]> pending = new ArrayDeque<>();
+
+    /**
+     * 按 side:serviceName:methodName 累计的统计, 只在上报线程中修改
+     */
+    private final Map<String, Totals> totalsMap = new TreeMap<>();
+
+    /**
+     * 供拉取的文本, 每个周期整体替换
+     */
+    private volatile String exposition = "";
+
+    private volatile int pendingCount;
+
+    private volatile long droppedCount;
+
+    private volatile long pushedCount;
+
+    /**
+     * @param centerAddressSupplier 监控中心地址, 返回空时只更新拉取的文本, 不推送
+     */
+    public MetricsReporter(Supplier<String> centerAddressSupplier) {
+        this.centerAddressSupplier = centerAddressSupplier;
+    }
+
+    @Override
+    public void run() {
+        try {
+            Map<String, Report> reportMap = Monitor.drain();
+            accumulate(reportMap);
+            if (!reportMap.isEmpty()) {
+                if (pending.size() >= MAX_PENDING) {
+                    pending.pollFirst();
+                    droppedCount++;
+                }
+                pending.addLast(ReportCodec.encode(reportMap.values()));
+            }
+
+            String centerAddress = centerAddress();
+            if (centerAddress != null && !pending.isEmpty() && push(centerAddress + "/report", batch())) {
+                pushedCount += pending.size();
+                pending.clear();
+            }
+            pendingCount = pending.size();
+        } catch (Exception e) {
+            log.error("MetricsReporter", e);
+        }
+    }
+
+    private String centerAddress() {
+        try {
+            String centerAddress = centerAddressSupplier.get();
+            return centerAddress == null || "".equals(centerAddress) ? null : centerAddress;
+        } catch (Exception e) {
+            log.warn("MetricsReporter can't get center address {}", e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * 把待发送的帧拼接为一个批次
+     *
+     * @return
+     */
+    private byte[] batch() {
+        if (pending.size() == 1) {
+            return pending.peekFirst();
+        }
+        int length = 0;
+        for (byte[] frame : pending) {
+            length += frame.length;
+        }
+        byte[] batch = new byte[length];
+        int offset = 0;
+        for (byte[] frame : pending) {
+            System.arraycopy(frame, 0, batch, offset, frame.length);
+            offset += frame.length;
+        }
+        return batch;
+    }
+
+    private boolean push(String url, byte[] body) {
+        HttpURLConnection conn = null;
+        try {
+            conn = (HttpURLConnection) new URL(url).openConnection();
+            conn.setConnectTimeout(CONNECT_TIMEOUT);
+            conn.setReadTimeout(READ_TIMEOUT);
+            conn.setRequestMethod("POST");
+            conn.setDoOutput(true);
+            conn.setUseCaches(false);
+            conn.setFixedLengthStreamingMode(body.length);
+            conn.setRequestProperty("Content-Type", ReportCodec.CONTENT_TYPE);
+            try (OutputStream outputStream = conn.getOutputStream()) {
+                outputStream.write(body);
+            }
+            int code = conn.getResponseCode();
+            //读完响应后连接才会放回keep-alive缓存, 不调用disconnect
+            consume(code < 400 ? conn.getInputStream() : conn.getErrorStream());
+            if (code / 100 != 2) {
+                log.warn("MetricsReporter push {} response code {}", url, code);
+                return false;
+            }
+            return true;
+        } catch (IOException e) {
+            if (conn != null) {
+                consume(conn.getErrorStream());
+            }
+            log.warn("MetricsReporter push {} failed {}, pending={}", url, e.getMessage(), pending.size());
+            return false;
+        }
+    }
+
+    private static void consume(InputStream inputStream) {
+        if (inputStream == null) {
+            return;
+        }
+        byte[] buffer = new byte[256];
+        try {
+            while (inputStream.read(buffer) >= 0) {
+            }
+            inputStream.close();
+        } catch (IOException e) {
+        }
+    }
+
+    /**
+     * 累计本周期的增量, 并重新生成拉取的文本; 没有调用的周期也重新生成, 缓存命中不产生调用
+     *
+     * @param reportMap
+     */
+    private void accumulate(Map<String, Report> reportMap) {
+        for (Map.Entry<String, Report> entry : reportMap.entrySet()) {
+            Report report = entry.getValue();
+            Totals totals = totalsMap.computeIfAbsent(entry.getKey(), key -> new Totals());
+            totals.successCount += report.getSuccessCount();
+            totals.failCount += report.getFailCount();
+            totals.totalTime += report.getTotalTime();
+            totals.last = report;
+        }
+
+        StringBuilder sb = new StringBuilder(256 + totalsMap.size() * 512);
+        sb.append("# TYPE shier_rpc_calls_total counter\n");
+        for (Totals totals : totalsMap.values()) {
+            appendSample(sb, "shier_rpc_calls_total", totals.last, "result", "success", totals.successCount);
+            appendSample(sb, "shier_rpc_calls_total", totals.last, "result", "fail", totals.failCount);
+        }
+        //分位值和最大值为最近一个有调用的周期, sum和count为累计值
+        sb.append("# TYPE shier_rpc_latency_microseconds summary\n");
+        for (Totals totals : totalsMap.values()) {
+            Report last = totals.last;
+            appendSample(sb, "shier_rpc_latency_microseconds", last, "quantile", "0.5", last.getP50());
+            appendSample(sb, "shier_rpc_latency_microseconds", last, "quantile", "0.9", last.getP90());
+            appendSample(sb, "shier_rpc_latency_microseconds", last, "quantile", "0.99", last.getP99());
+            appendSample(sb, "shier_rpc_latency_microseconds", last, "quantile", "0.999", last.getP999());
+            appendSample(sb, "shier_rpc_latency_microseconds_sum", last, null, null, totals.totalTime);
+            appendSample(sb, "shier_rpc_latency_microseconds_count", last, null, null, totals.successCount + totals.failCount);
+        }
+        sb.append("# TYPE shier_rpc_latency_max_microseconds gauge\n");
+        for (Totals totals : totalsMap.values()) {
+            appendSample(sb, "shier_rpc_latency_max_microseconds", totals.last, null, null, totals.last.getMaxTime());
+        }
+        appendCaches(sb);
+        exposition = sb.toString();
+    }
+
+    /**
+     * 消费端结果缓存的命中统计
+     *
+     * @param sb
+     */
+    private static void appendCaches(StringBuilder sb) {
+        List<ResultCache> caches = CacheRegistry.getCaches();
+        if (caches.isEmpty()) {
+            return;
+        }
+        sb.append("# TYPE shier_rpc_cache_requests_total counter\n");
+        for (ResultCache cache : caches) {
+            appendCacheSample(sb, "shier_rpc_cache_requests_total", cache, "hit", cache.getHitCount());
+            appendCacheSample(sb, "shier_rpc_cache_requests_total", cache, "miss", cache.getMissCount());
+        }
+        sb.append("# TYPE shier_rpc_cache_evictions_total counter\n");
+        for (ResultCache cache : caches) {
+            appendCacheSample(sb, "shier_rpc_cache_evictions_total", cache, null, cache.getEvictionCount());
+        }
+        sb.append("# TYPE shier_rpc_cache_size gauge\n");
+        for (ResultCache cache : caches) {
+            appendCacheSample(sb, "shier_rpc_cache_size", cache, null, cache.size());
+        }
+    }
+
+    private static void appendCacheSample(StringBuilder sb, String name, ResultCache cache, String result, long value) {
+        sb.append(name).append("{name=\"");
+        appendEscaped(sb, cache.getName());
+        sb.append('"');
+        if (result != null) {
+            sb.append(",result=\"").append(result).append('"');
+        }
+        sb.append("} ").append(value).append('\n');
+    }
+
+    private static void appendSample(StringBuilder sb, String name, Report report, String label, String labelValue, long value) {
+        sb.append(name).append("{side=\"").append(report.getSide()).append("\",service=\"");
+        appendEscaped(sb, report.getServiceName());
+        sb.append("\",method=\"");
+        appendEscaped(sb, report.getMethodName());
+        sb.append('"');
+        if (label != null) {
+            sb.append(',').append(label).append("=\"").append(labelValue).append('"');
+        }
+        sb.append("} ").append(value).append('\n');
+    }
+
+    private static void appendEscaped(StringBuilder sb, String value) {
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '\\' || c == '"') {
+                sb.append('\\').append(c);
+            } else if (c == '\n') {
+                sb.append("\\n");
+            } else {
+                sb.append(c);
+            }
+        }
+    }
+
+    /**
+     * 拉取用的文本, Prometheus text format 0.0.4
+     *
+     * @return
+     */
+    public String getExposition() {
+        return exposition;
+    }
+
+    /**
+     * 等待推送的周期数
+     *
+     * @return
+     */
+    public int getPendingCount() {
+        return pendingCount;
+    }
+
+    /**
+     * 因推送失败过久被丢弃的周期数
+     *
+     * @return
+     */
+    public long getDroppedCount() {
+        return droppedCount;
+    }
+
+    /**
+     * 已推送成功的周期数
+     *
+     * @return
+     */
+    public long getPushedCount() {
+        return pushedCount;
+    }
+
+    private static class Totals {
+
+        private long successCount;
+
+        private long failCount;
+
+        private long totalTime;
+
+        private Report last;
+    }
+}
@@ -0,0 +1,66 @@
+package shier.rpc.monitor;
+
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 调用统计入口
+ * <p>
+ * 消费者和提供者在初始化时通过 {@link #getMetrics(String, String, String)} 取得每个方法的 {@link MethodMetrics} 并持有,
+ * 调用时直接记录, 不查表; 上报线程定期调用 {@link #drain()} 导出上一周期的报告
+ *
+ * @author liangliang.wei
+ * @description
+ * @create 2017-12-21 下午3:20
+ **/
+public class Monitor {
+
+    public static final String CONSUMER = "consumer";
+
+    public static final String PROVIDER = "provider";
+
+    private static final Map<String, MethodMetrics> METRICS_MAP = new ConcurrentHashMap<>();
+
+    private static long intervalStart = System.currentTimeMillis();
+
+    private Monitor() {
+    }
+
+    /**
+     * 获取方法的统计, 不存在时创建
+     *
+     * @param side        {@link #CONSUMER} / {@link #PROVIDER}
+     * @param serviceName
+     * @param methodName
+     * @return
+     */
+    public static MethodMetrics getMetrics(String side, String serviceName, String methodName) {
+        return METRICS_MAP.computeIfAbsent(buildKey(side, serviceName, methodName),
+                key -> new MethodMetrics(side, serviceName, methodName));
+    }
+
+    /**
+     * 导出并清零上一次导出以来的统计, 只返回有调用的方法
+     *
+     * @return key为 side:serviceName:methodName
+     */
+    public static synchronized Map<String, Report> drain() {
+        Date startTime = new Date(intervalStart);
+        intervalStart = System.currentTimeMillis();
+        Date endTime = new Date(intervalStart);
+        Map<String, Report> reportMap = new HashMap<>();
+        for (Map.Entry<String, MethodMetrics> entry : METRICS_MAP.entrySet()) {
+            Report report = entry.getValue().drain(startTime, endTime);
+            if (report != null) {
+                reportMap.put(entry.getKey(), report);
+            }
+        }
+        return reportMap;
+    }
+
+    private static String buildKey(String side, String serviceName, String methodName) {
+        return side + ":" + serviceName + ":" + methodName;
+    }
+}
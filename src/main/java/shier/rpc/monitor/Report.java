@@ -0,0 +1,50 @@
+package shier.rpc.monitor;
+
+import lombok.Data;
+
+import java.io.Serializable;
+import java.util.Date;
+
+/**
+ * 一个统计周期内单个服务方法的调用报告, 耗时单位为微秒
+ *
+ * @author liangliang.wei
+ * @description
+ * @create 2017-12-21 下午3:05
+ **/
+@Data
+public class Report implements Serializable {
+
+    /**
+     * consumer / provider
+     */
+    private String side;
+
+    private String serviceName;
+
+    private String methodName;
+
+    private Date startTime;
+
+    private Date endTime;
+
+    private long count;
+
+    private long successCount;
+
+    private long failCount;
+
+    private long totalTime;
+
+    private long maxTime;
+
+    private long minTime;
+
+    private long p50;
+
+    private long p90;
+
+    private long p99;
+
+    private long p999;
+}
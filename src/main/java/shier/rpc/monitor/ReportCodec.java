@@ -0,0 +1,158 @@
+package shier.rpc.monitor;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 上报监控中心的二进制格式
+ * <p>
+ * 每个统计周期一帧, 多帧直接拼接成一个批次:
+ * <pre>
+ * 帧:   version(1) startTime(varlong) duration(varlong) reportCount(varint) report...
+ * 报告: side(1) serviceName(str) methodName(str) count successCount failCount totalTime minTime maxTime p50 p90 p99 p999 (varlong)
+ * str:  帧内已出现过的字符串写 序号+1(varint), 首次出现写 0 + 长度(varint) + UTF-8
+ * </pre>
+ * 周期内的统计都是增量, 数值多数很小, 变长编码后一个方法通常只占二三十个字节
+ *
+ * @author liangliang.wei
+ * @description
+ * @create 2017-12-22 上午10:20
+ **/
+public final class ReportCodec {
+
+    public static final byte VERSION = 1;
+
+    public static final String CONTENT_TYPE = "application/x-shier-report";
+
+    private static final byte SIDE_CONSUMER = 0;
+
+    private static final byte SIDE_PROVIDER = 1;
+
+    private ReportCodec() {
+    }
+
+    /**
+     * 编码一个统计周期的报告, 报告的起止时间应相同
+     *
+     * @param reports 不能为空
+     * @return
+     */
+    public static byte[] encode(Collection<Report> reports) {
+        Report first = reports.iterator().next();
+        long startTime = first.getStartTime().getTime();
+        ByteArrayOutputStream out = new ByteArrayOutputStream(64 + reports.size() * 32);
+        Map<String, Integer> stringTable = new HashMap<>();
+        out.write(VERSION);
+        writeVarLong(out, startTime);
+        writeVarLong(out, first.getEndTime().getTime() - startTime);
+        writeVarLong(out, reports.size());
+        for (Report report : reports) {
+            out.write(Monitor.PROVIDER.equals(report.getSide()) ? SIDE_PROVIDER : SIDE_CONSUMER);
+            writeString(out, stringTable, report.getServiceName());
+            writeString(out, stringTable, report.getMethodName());
+            writeVarLong(out, report.getCount());
+            writeVarLong(out, report.getSuccessCount());
+            writeVarLong(out, report.getFailCount());
+            writeVarLong(out, report.getTotalTime());
+            writeVarLong(out, report.getMinTime());
+            writeVarLong(out, report.getMaxTime());
+            writeVarLong(out, report.getP50());
+            writeVarLong(out, report.getP90());
+            writeVarLong(out, report.getP99());
+            writeVarLong(out, report.getP999());
+        }
+        return out.toByteArray();
+    }
+
+    /**
+     * 解码一个批次, 可以包含多帧
+     *
+     * @param data
+     * @return
+     */
+    public static List<Report> decode(byte[] data) {
+        List<Report> reports = new ArrayList<>();
+        int[] position = {0};
+        while (position[0] < data.length) {
+            byte version = data[position[0]++];
+            if (version != VERSION) {
+                throw new IllegalArgumentException("unsupported report version " + version);
+            }
+            long startTime = readVarLong(data, position);
+            Date start = new Date(startTime);
+            Date end = new Date(startTime + readVarLong(data, position));
+            int size = (int) readVarLong(data, position);
+            List<String> stringTable = new ArrayList<>();
+            for (int i = 0; i < size; i++) {
+                Report report = new Report();
+                report.setSide(data[position[0]++] == SIDE_PROVIDER ? Monitor.PROVIDER : Monitor.CONSUMER);
+                report.setServiceName(readString(data, position, stringTable));
+                report.setMethodName(readString(data, position, stringTable));
+                report.setStartTime(start);
+                report.setEndTime(end);
+                report.setCount(readVarLong(data, position));
+                report.setSuccessCount(readVarLong(data, position));
+                report.setFailCount(readVarLong(data, position));
+                report.setTotalTime(readVarLong(data, position));
+                report.setMinTime(readVarLong(data, position));
+                report.setMaxTime(readVarLong(data, position));
+                report.setP50(readVarLong(data, position));
+                report.setP90(readVarLong(data, position));
+                report.setP99(readVarLong(data, position));
+                report.setP999(readVarLong(data, position));
+                reports.add(report);
+            }
+        }
+        return reports;
+    }
+
+    private static void writeString(ByteArrayOutputStream out, Map<String, Integer> stringTable, String value) {
+        Integer index = stringTable.get(value);
+        if (index != null) {
+            writeVarLong(out, index + 1);
+            return;
+        }
+        stringTable.put(value, stringTable.size());
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.write(0);
+        writeVarLong(out, bytes.length);
+        out.write(bytes, 0, bytes.length);
+    }
+
+    private static String readString(byte[] data, int[] position, List<String> stringTable) {
+        int index = (int) readVarLong(data, position);
+        if (index > 0) {
+            return stringTable.get(index - 1);
+        }
+        int length = (int) readVarLong(data, position);
+        String value = new String(data, position[0], length, StandardCharsets.UTF_8);
+        position[0] += length;
+        stringTable.add(value);
+        return value;
+    }
+
+    private static void writeVarLong(ByteArrayOutputStream out, long value) {
+        while ((value & ~0x7FL) != 0) {
+            out.write((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.write((int) value);
+    }
+
+    private static long readVarLong(byte[] data, int[] position) {
+        long value = 0;
+        for (int shift = 0; ; shift += 7) {
+            byte b = data[position[0]++];
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package shier.rpc.netty;
+
+import io.netty.channel.Channel;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Iterator;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 有界业务线程池, 队列满时拒绝而不是抛出异常, 由调用方快速返回繁忙响应
+ * <p>
+ * 积压(线程池为排队中的任务数, 虚拟线程为执行中的任务数)达到高水位时暂停提交任务的连接读取(autoRead),
+ * 回落到低水位后恢复, 让积压留在TCP缓冲区和客户端, 而不是无限堆积在服务端
+ *
+ * @author liangliang.wei
+ * @description
+ * @create 2017-12-20 上午10:30
+ **/
+@Slf4j
+public class BoundedExecutor {
+
+    private final String name;
+
+    private final ExecutorService executorService;
+
+    /**
+     * 线程池模式的队列, 按队列长度计算积压
+     */
+    private final BlockingQueue<Runnable> queue;
+
+    /**
+     * 虚拟线程模式的执行中任务数, 按并发数计算积压
+     */
+    private final AtomicInteger running;
+
+    private final int maxRunning;
+
+    private final int highWatermark;
+
+    private final int lowWatermark;
+
+    private final Set<Channel> pausedChannels = ConcurrentHashMap.newKeySet();
+
+    private final LongAdder rejectedCount = new LongAdder();
+
+    /**
+     * 创建固定线程数的线程池
+     *
+     * @param name          线程名前缀
+     * @param threads       线程数
+     * @param queueCapacity 队列长度
+     * @param highWatermark 暂停读取的队列长度
+     * @param lowWatermark  恢复读取的队列长度
+     */
+    public BoundedExecutor(String name, int threads, int queueCapacity, int highWatermark, int lowWatermark) {
+        this(name, newThreadPoolExecutor(name, threads, queueCapacity), highWatermark, lowWatermark);
+    }
+
+    /**
+     * 使用已有的线程池, 线程池需要使用有界队列
+     *
+     * @param name
+     * @param threadPoolExecutor
+     * @param highWatermark      暂停读取的队列长度, 不大于0时不暂停
+     * @param lowWatermark       恢复读取的队列长度
+     */
+    public BoundedExecutor(String name, ThreadPoolExecutor threadPoolExecutor, int highWatermark, int lowWatermark) {
+        this.name = name;
+        this.executorService = threadPoolExecutor;
+        this.queue = threadPoolExecutor.getQueue();
+        this.running = null;
+        this.maxRunning = 0;
+        this.highWatermark = highWatermark;
+        this.lowWatermark = Math.min(lowWatermark, highWatermark);
+    }
+
+    /**
+     * 按并发数限制的线程池, 用于每个任务一个线程的虚拟线程池, 多个实例可以共用一个executorService
+     *
+     * @param name
+     * @param executorService
+     * @param maxRunning      最大并发数, 超过时拒绝
+     * @param highWatermark   暂停读取的并发数, 不大于0时不暂停
+     * @param lowWatermark    恢复读取的并发数
+     */
+    public BoundedExecutor(String name, ExecutorService executorService, int maxRunning, int highWatermark, int lowWatermark) {
+        this.name = name;
+        this.executorService = executorService;
+        this.queue = null;
+        this.running = new AtomicInteger();
+        this.maxRunning = Math.max(1, maxRunning);
+        this.highWatermark = highWatermark;
+        this.lowWatermark = Math.min(lowWatermark, highWatermark);
+    }
+
+    private static ThreadPoolExecutor newThreadPoolExecutor(String name, int threads, int queueCapacity) {
+        ThreadPoolExecutor threadPoolExecutor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(Math.max(1, queueCapacity)), new DefaultThreadFactory(name), new ThreadPoolExecutor.AbortPolicy());
+        threadPoolExecutor.allowCoreThreadTimeOut(true);
+        return threadPoolExecutor;
+    }
+
+    /**
+     * 提交任务, 队列达到高水位时暂停channel读取
+     *
+     * @param channel 请求所在的连接
+     * @param task
+     * @return 队列已满被拒绝时返回false
+     */
+    public boolean execute(Channel channel, Runnable task) {
+        if (running != null && running.incrementAndGet() > maxRunning) {
+            running.decrementAndGet();
+            rejectedCount.increment();
+            return false;
+        }
+        try {
+            executorService.execute(() -> {
+                try {
+                    task.run();
+                } finally {
+                    if (running != null) {
+                        running.decrementAndGet();
+                    }
+                    resumeIfDrained();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            if (running != null) {
+                running.decrementAndGet();
+            }
+            rejectedCount.increment();
+            return false;
+        }
+
+        if (highWatermark > 0 && getBacklog() >= highWatermark && channel.config().isAutoRead()) {
+            //先暂停再登记, 否则业务线程可能在两步之间恢复读取, 随后又被这里暂停, 且不再有人恢复
+            channel.config().setAutoRead(false);
+            pausedChannels.add(channel);
+            log.debug("BoundedExecutor {} pause read channel={} backlog={}", name, channel, getBacklog());
+            //登记前队列可能已经回落, 再检查一次
+            resumeIfDrained();
+        }
+        return true;
+    }
+
+    private void resumeIfDrained() {
+        if (pausedChannels.isEmpty() || getBacklog() > lowWatermark) {
+            return;
+        }
+        Iterator<Channel> iterator = pausedChannels.iterator();
+        while (iterator.hasNext()) {
+            Channel channel = iterator.next();
+            iterator.remove();
+            channel.config().setAutoRead(true);
+        }
+    }
+
+    /**
+     * 积压的任务数, 线程池为排队中的任务数, 虚拟线程为执行中的任务数
+     *
+     * @return
+     */
+    public int getBacklog() {
+        return running != null ? running.get() : queue.size();
+    }
+
+    /**
+     * 被拒绝的任务数
+     *
+     * @return
+     */
+    public long getRejectedCount() {
+        return rejectedCount.sum();
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void shutdown() {
+        executorService.shutdown();
+    }
+}
@@ -0,0 +1,212 @@
+package shier.rpc.netty;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 单个服务提供者的熔断器
+ * <p>
+ * 关闭状态下按10个1秒的时间桶统计最近10秒的请求数, 失败数和慢请求数, 请求数不少于 {@link #MIN_REQUESTS}
+ * 且失败率或慢请求率达到阈值时打开, 打开后不再路由请求.
+ * 打开 {@link #OPEN_DURATION} 毫秒后进入半开状态, 由 {@link RpcNettyClient} 用服务端的health服务探测,
+ * 连续 {@link #PROBE_SUCCESS} 次成功后关闭, 失败则重新打开, 打开时间逐次翻倍, 最长 {@link #MAX_OPEN_DURATION} 毫秒.
+ * 半开状态下也不路由业务请求, 探测失败不会影响调用方
+ *
+ * @author liangliang.wei
+ * @description
+ * @create 2017-12-23 上午10:15
+ **/
+public class CircuitBreaker {
+
+    public static final int CLOSED = 0;
+
+    public static final int OPEN = 1;
+
+    public static final int HALF_OPEN = 2;
+
+    /**
+     * 统计窗口内至少多少个请求才判断是否打开
+     */
+    public static int MIN_REQUESTS = 20;
+
+    /**
+     * 打开熔断的失败率
+     */
+    public static double ERROR_RATE = 0.5;
+
+    /**
+     * 打开熔断的慢请求率
+     */
+    public static double SLOW_RATE = 0.8;
+
+    /**
+     * 超过该时间(毫秒)的请求为慢请求
+     */
+    public static long SLOW_THRESHOLD = 3000;
+
+    /**
+     * 第一次打开的时间(毫秒)
+     */
+    public static long OPEN_DURATION = 5000;
+
+    public static long MAX_OPEN_DURATION = 60000;
+
+    /**
+     * 半开状态下连续探测成功多少次后关闭
+     */
+    public static int PROBE_SUCCESS = 3;
+
+    private static final int BUCKETS = 10;
+
+    private static final long BUCKET_MILLIS = 1000;
+
+    private static final int TOTAL = 0;
+
+    private static final int FAIL = 1;
+
+    private static final int SLOW = 2;
+
+    private static final int FIELDS = 3;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS * FIELDS);
+
+    /**
+     * 每个时间桶当前对应的秒数, 不一致时先清零再计数
+     */
+    private final AtomicLongArray bucketEpochs = new AtomicLongArray(BUCKETS);
+
+    private final AtomicInteger state = new AtomicInteger(CLOSED);
+
+    /**
+     * 状态变化时回调, 用于刷新路由
+     */
+    private final Runnable onStateChange;
+
+    /**
+     * 连续打开的次数, 关闭后清零
+     */
+    private volatile int openCount;
+
+    private volatile int probeSuccessCount;
+
+    public CircuitBreaker(Runnable onStateChange) {
+        this.onStateChange = onStateChange;
+    }
+
+    /**
+     * 是否可以路由请求
+     *
+     * @return
+     */
+    public boolean allowRequest() {
+        return state.get() == CLOSED;
+    }
+
+    public int getState() {
+        return state.get();
+    }
+
+    /**
+     * 记录一次请求的结果, 只在关闭状态下统计
+     *
+     * @param latencyNanos
+     * @param failure      是否为服务提供者的问题(超时, 连接失败, 繁忙), 业务异常不算
+     * @return 本次记录是否使熔断打开
+     */
+    public boolean record(long latencyNanos, boolean failure) {
+        if (state.get() != CLOSED) {
+            return false;
+        }
+        long epoch = System.currentTimeMillis() / BUCKET_MILLIS;
+        int bucket = (int) (epoch % BUCKETS);
+        long bucketEpoch = bucketEpochs.get(bucket);
+        if (bucketEpoch != epoch && bucketEpochs.compareAndSet(bucket, bucketEpoch, epoch)) {
+            for (int i = 0; i < FIELDS; i++) {
+                counts.set(bucket * FIELDS + i, 0);
+            }
+        }
+        boolean slow = latencyNanos > TimeUnit.MILLISECONDS.toNanos(SLOW_THRESHOLD);
+        counts.incrementAndGet(bucket * FIELDS + TOTAL);
+        if (failure) {
+            counts.incrementAndGet(bucket * FIELDS + FAIL);
+        }
+        if (slow) {
+            counts.incrementAndGet(bucket * FIELDS + SLOW);
+        }
+        //只有失败或慢请求才可能使比例上升
+        return (failure || slow) && shouldOpen(epoch) && open(CLOSED);
+    }
+
+    private boolean shouldOpen(long epoch) {
+        long total = 0;
+        long fail = 0;
+        long slow = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            if (epoch - bucketEpochs.get(i) >= BUCKETS) {
+                continue;
+            }
+            total += counts.get(i * FIELDS + TOTAL);
+            fail += counts.get(i * FIELDS + FAIL);
+            slow += counts.get(i * FIELDS + SLOW);
+        }
+        return total >= MIN_REQUESTS && (fail >= total * ERROR_RATE || slow >= total * SLOW_RATE);
+    }
+
+    private boolean open(int expect) {
+        if (!state.compareAndSet(expect, OPEN)) {
+            return false;
+        }
+        openCount++;
+        onStateChange.run();
+        return true;
+    }
+
+    /**
+     * 本次打开的时长(毫秒), 随连续打开次数翻倍
+     *
+     * @return
+     */
+    public long getOpenDuration() {
+        int shift = Math.min(Math.max(openCount - 1, 0), 16);
+        return Math.min(OPEN_DURATION << shift, MAX_OPEN_DURATION);
+    }
+
+    /**
+     * 打开时间结束, 开始探测
+     */
+    public void halfOpen() {
+        if (state.compareAndSet(OPEN, HALF_OPEN)) {
+            probeSuccessCount = 0;
+        }
+    }
+
+    /**
+     * 探测成功
+     *
+     * @return 是否已关闭
+     */
+    public boolean probeSuccess() {
+        if (state.get() != HALF_OPEN) {
+            return state.get() == CLOSED;
+        }
+        if (++probeSuccessCount < PROBE_SUCCESS) {
+            return false;
+        }
+        for (int i = 0; i < counts.length(); i++) {
+            counts.set(i, 0);
+        }
+        if (state.compareAndSet(HALF_OPEN, CLOSED)) {
+            openCount = 0;
+            onStateChange.run();
+        }
+        return true;
+    }
+
+    /**
+     * 探测失败, 重新打开
+     */
+    public void probeFailure() {
+        open(HALF_OPEN);
+    }
+}
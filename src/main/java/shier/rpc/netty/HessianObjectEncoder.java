@@ -1,43 +0,0 @@
-package shier.rpc.netty;
-
-import com.caucho.hessian.io.Hessian2Output;
-import io.netty.buffer.ByteBuf;
-import io.netty.buffer.ByteBufOutputStream;
-import io.netty.channel.ChannelHandlerContext;
-import io.netty.handler.codec.MessageToByteEncoder;
-
-import java.io.Serializable;
-
-/**
- * @author liangliang.wei
- * @description
- * @create 2017-12-11 下午4:10
- **/
-public class HessianObjectEncoder extends MessageToByteEncoder<Serializable> {
-
-    private static final byte[] LENGTH_PLACEHOLDER = new byte[4];
-
-    @Override
-    protected void encode(ChannelHandlerContext ctx, Serializable msg, ByteBuf out) throws Exception {
-        int startIdx = out.writerIndex();
-
-        ByteBufOutputStream bout = new ByteBufOutputStream(out);
-        Hessian2Output oout = null;
-        try {
-            bout.write(LENGTH_PLACEHOLDER);
-            oout = new Hessian2Output(bout);
-            oout.writeObject(msg);
-            oout.flush();
-        } finally {
-            if (oout != null) {
-                oout.close();
-            } else {
-                bout.close();
-            }
-        }
-
-        int endIdx = out.writerIndex();
-
-        out.setInt(startIdx, endIdx - startIdx - 4);
-    }
-}
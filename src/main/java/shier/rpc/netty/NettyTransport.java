@@ -0,0 +1,67 @@
+package shier.rpc.netty;
+
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollServerSocketChannel;
+import io.netty.channel.epoll.EpollSocketChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.ServerSocketChannel;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.util.concurrent.DefaultThreadFactory;
+import lombok.extern.slf4j.Slf4j;
+
+/**
+ * 传输层选择, 开启epoll且为Linux时使用native epoll, 否则使用NIO
+ *
+ * @author liangliang.wei
+ * @description
+ * @create 2017-12-16 上午10:30
+ **/
+@Slf4j
+public class NettyTransport {
+
+    private NettyTransport() {
+    }
+
+    /**
+     * 创建EventLoopGroup
+     *
+     * @param threads  线程数, 0为netty默认的cpu核数*2
+     * @param epoll    是否使用native epoll, 不可用时退回NIO
+     * @param poolName 线程名前缀
+     * @return
+     */
+    public static EventLoopGroup newEventLoopGroup(int threads, boolean epoll, String poolName) {
+        DefaultThreadFactory threadFactory = new DefaultThreadFactory(poolName, true);
+        if (epoll) {
+            if (Epoll.isAvailable()) {
+                return new EpollEventLoopGroup(threads, threadFactory);
+            }
+            log.warn("NettyTransport epoll is unavailable, use nio", Epoll.unavailabilityCause());
+        }
+        return new NioEventLoopGroup(threads, threadFactory);
+    }
+
+    /**
+     * 与EventLoopGroup匹配的客户端Channel类型
+     *
+     * @param group
+     * @return
+     */
+    public static Class<? extends SocketChannel> socketChannelClass(EventLoopGroup group) {
+        return group instanceof EpollEventLoopGroup ? EpollSocketChannel.class : NioSocketChannel.class;
+    }
+
+    /**
+     * 与EventLoopGroup匹配的服务端Channel类型
+     *
+     * @param group
+     * @return
+     */
+    public static Class<? extends ServerSocketChannel> serverSocketChannelClass(EventLoopGroup group) {
+        return group instanceof EpollEventLoopGroup ? EpollServerSocketChannel.class : NioServerSocketChannel.class;
+    }
+}
@@ -0,0 +1,116 @@
+package shier.rpc.netty;
+
+import shier.rpc.dto.RpcCallback;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * 等待响应的请求表, 以连接内自增的long型requestId为key
+ * <p>
+ * requestId连续递增, 直接按 requestId & mask 定位槽位, 通过CAS存取, 无锁且不产生装箱;
+ * 槽位被占用(在途请求超过容量)时退化到ConcurrentHashMap
+ *
+ * @author liangliang.wei
+ * @description
+ * @create 2017-12-02 下午8:40
+ **/
+public class PendingRequestTable {
+
+    private final AtomicReferenceArray<RpcCallback> slots;
+
+    private final int mask;
+
+    private final Map<Long, RpcCallback> overflowMap = new ConcurrentHashMap<>();
+
+    private final AtomicInteger size = new AtomicInteger();
+
+    public PendingRequestTable(int capacity) {
+        int n = 1;
+        while (n < capacity) {
+            n <<= 1;
+        }
+        this.slots = new AtomicReferenceArray<>(n);
+        this.mask = n - 1;
+    }
+
+    /**
+     * 放入等待回调
+     *
+     * @param rpcCallback
+     */
+    public void put(RpcCallback rpcCallback) {
+        size.incrementAndGet();
+        int index = (int) rpcCallback.getRequestId() & mask;
+        if (!slots.compareAndSet(index, null, rpcCallback)) {
+            overflowMap.put(rpcCallback.getRequestId(), rpcCallback);
+        }
+    }
+
+    /**
+     * 移除等待回调, 只有移除成功的一方可以完成该回调
+     *
+     * @param requestId
+     * @return 不存在返回null
+     */
+    public RpcCallback remove(long requestId) {
+        int index = (int) requestId & mask;
+        RpcCallback rpcCallback = slots.get(index);
+        if (rpcCallback != null && rpcCallback.getRequestId() == requestId && slots.compareAndSet(index, rpcCallback, null)) {
+            if (rpcCallback.getRequestId() == requestId) {
+                size.decrementAndGet();
+                return rpcCallback;
+            }
+            //槽位对象在比较期间被回收复用, 放回去
+            if (!slots.compareAndSet(index, null, rpcCallback)) {
+                overflowMap.put(rpcCallback.getRequestId(), rpcCallback);
+            }
+        }
+
+        if (overflowMap.isEmpty()) {
+            return null;
+        }
+        rpcCallback = overflowMap.remove(requestId);
+        if (rpcCallback != null) {
+            size.decrementAndGet();
+        }
+        return rpcCallback;
+    }
+
+    /**
+     * 移除全部等待回调, 连接断开时使用
+     *
+     * @return
+     */
+    public List<RpcCallback> removeAll() {
+        List<RpcCallback> list = new ArrayList<>();
+        for (int i = 0; i < slots.length(); i++) {
+            RpcCallback rpcCallback = slots.getAndSet(i, null);
+            if (rpcCallback != null) {
+                size.decrementAndGet();
+                list.add(rpcCallback);
+            }
+        }
+        for (Long requestId : overflowMap.keySet()) {
+            RpcCallback rpcCallback = overflowMap.remove(requestId);
+            if (rpcCallback != null) {
+                size.decrementAndGet();
+                list.add(rpcCallback);
+            }
+        }
+        return list;
+    }
+
+    /**
+     * 在途请求数
+     *
+     * @return
+     */
+    public int size() {
+        return size.get();
+    }
+}
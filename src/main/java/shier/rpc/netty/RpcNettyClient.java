@@ -2,22 +2,36 @@ package shier.rpc.netty;
 
 import com.alibaba.fastjson.JSON;
 import io.netty.bootstrap.Bootstrap;
+import io.netty.buffer.PooledByteBufAllocator;
 import io.netty.channel.*;
-import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.SocketChannel;
-import io.netty.channel.socket.nio.NioSocketChannel;
-import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
-import io.netty.handler.codec.LengthFieldPrepender;
+import io.netty.handler.timeout.IdleStateEvent;
+import io.netty.handler.timeout.IdleStateHandler;
+import io.netty.util.HashedWheelTimer;
+import io.netty.util.Timeout;
+import io.netty.util.concurrent.DefaultThreadFactory;
 import lombok.extern.slf4j.Slf4j;
+import shier.rpc.cache.CacheRegistry;
 import shier.rpc.dto.RpcCallback;
 import shier.rpc.dto.RpcRequestDTO;
 import shier.rpc.dto.RpcResponseDTO;
+import shier.rpc.exception.RpcBusyException;
 import shier.rpc.exception.RpcConnectException;
+import shier.rpc.exception.RpcTimeoutException;
+import shier.rpc.protocol.MethodIdRegistry;
+import shier.rpc.serialize.HessianSerializer;
 import shier.rpc.spring.RpcConfigBean;
+import shier.rpc.spring.RpcProviderBean;
+import shier.rpc.utils.NameUtils;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * @author liangliang.wei
@@ -27,16 +41,131 @@ import java.util.concurrent.TimeUnit;
 @Slf4j
 public class RpcNettyClient {
 
+    /**
+     * 轮询选择连接
+     */
+    public static final String SELECT_ROUND_ROBIN = "roundRobin";
+
+    /**
+     * 选择在途请求最少的连接
+     */
+    public static final String SELECT_LEAST_PENDING = "leastPending";
+
+    public static final int DEFAULT_WEIGHT = 100;
+
+    /**
+     * 响应时间EWMA的衰减时间, 越久之前的样本权重越低
+     */
+    private static final double EWMA_DECAY_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+    /**
+     * 异步调用的超时检查, 所有客户端共用一个时间轮线程, 每10毫秒推进一格;
+     * 同步调用由调用线程按截止时间park, 不需要定时任务
+     */
+    private static final HashedWheelTimer TIMEOUT_TIMER = new HashedWheelTimer(
+            new DefaultThreadFactory("shier-rpc-timeout", true), 10, TimeUnit.MILLISECONDS);
+
+    /**
+     * 熔断探测的超时时间(毫秒)
+     */
+    public static long PROBE_TIMEOUT = 1000;
+
+    /**
+     * 半开状态下两次探测的间隔(毫秒)
+     */
+    public static long PROBE_INTERVAL = 500;
+
+    /**
+     * 断线重连的最长间隔(秒), 从1秒开始逐次翻倍
+     */
+    private static final int MAX_RECONNECT_DELAY = 16;
+
+    private static final int HEALTH_METHOD_ID = MethodIdRegistry.register(
+            NameUtils.buildServiceMethodName(RpcProviderBean.HEALTH, RpcProviderBean.HEALTH));
+
+    private static final int PROBE_METHOD_ID = MethodIdRegistry.register(
+            NameUtils.buildServiceMethodName(RpcProviderBean.HEALTH, RpcProviderBean.PROBE));
+
+    /**
+     * 任一客户端的可用状态(熔断, 连接)变化时递增, 消费者据此判断是否需要重新过滤路由列表
+     */
+    private static final AtomicInteger ROUTING_VERSION = new AtomicInteger();
+
     private String serviceAddress;
 
-    private ChannelFuture channelFuture;
+    /**
+     * 权重, 用于加权负载均衡
+     */
+    private volatile int weight = DEFAULT_WEIGHT;
+
+    /**
+     * 响应时间的指数加权移动平均(纳秒), 初始为1毫秒; 多线程更新不加锁, 偶尔丢失一个样本不影响路由
+     */
+    private volatile double ewmaLatency = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private volatile long ewmaTime = System.nanoTime();
+
+    /**
+     * 连接池, 扩缩容时整体替换, 发送请求时无锁读取
+     */
+    private volatile RpcClientHandler[] rpcClientHandlers = new RpcClientHandler[0];
+
+    private final AtomicInteger roundRobinIndex = new AtomicInteger();
+
+    private int connections;
+
+    private boolean leastPending;
 
-    private RpcClientHandler rpcClientHandler;
+    private CountDownLatch warmUpLatch;
+
+    private Bootstrap bootstrap;
 
     private EventLoopGroup group;
 
+    /**
+     * 是否自己创建的EventLoopGroup, 共享的group由创建方关闭
+     */
+    private boolean ownGroup;
+
+    /**
+     * 合并写出时每多少条flush一次, 0为每条请求单独flush
+     */
+    private int writeBatchSize;
+
+    private volatile boolean closed;
+
+    private final CircuitBreaker circuitBreaker = new CircuitBreaker(ROUTING_VERSION::incrementAndGet);
+
+    /**
+     * 是否开启熔断, 关闭时只按连接状态判断是否可用
+     */
+    private boolean circuitBreakerEnabled = true;
+
+    /**
+     * 连接空闲(没有读到数据)多久(毫秒)后发送心跳, 0为不发送
+     */
+    private int heartbeatInterval;
+
+    /**
+     * 心跳超时(毫秒), 超时后关闭连接并重连
+     */
+    private int heartbeatTimeout;
+
     public RpcNettyClient(String serviceAddress) {
+        this(serviceAddress, 1, SELECT_ROUND_ROBIN, null);
+    }
+
+    /**
+     * @param serviceAddress 服务地址
+     * @param connections    连接数
+     * @param select         连接选择方式 {@link #SELECT_ROUND_ROBIN} {@link #SELECT_LEAST_PENDING}
+     * @param group          共享的EventLoopGroup, 为空时自己创建
+     */
+    public RpcNettyClient(String serviceAddress, int connections, String select, EventLoopGroup group) {
         this.serviceAddress = serviceAddress;
+        this.connections = Math.max(1, connections);
+        this.leastPending = SELECT_LEAST_PENDING.equals(select);
+        this.group = group;
     }
 
     /**
@@ -45,60 +174,307 @@ public class RpcNettyClient {
      * @param rpcRequestDTO
      * @param timeout
      * @return
+     * @throws Throwable
+     */
+    public Object sendRpcRequest(RpcRequestDTO rpcRequestDTO, Long timeout) throws Throwable {
+        RpcClientHandler handler = selectHandler();
+        long start = System.nanoTime();
+        Throwable error = null;
+        try {
+            return handler.sendRpcRequest(rpcRequestDTO, timeout);
+        } catch (Throwable e) {
+            error = e;
+            throw e;
+        } finally {
+            record(System.nanoTime() - start, error);
+        }
+    }
+
+    /**
+     * 异步发送远程调用请求, 结果在IO线程中写入返回的future
+     *
+     * @param rpcRequestDTO
+     * @param timeout
+     * @return
      * @throws Exception
      */
-    public Object sendRpcRequest(RpcRequestDTO rpcRequestDTO, Long timeout) throws Exception {
-        if (!channelFuture.isSuccess()) {
-            throw new RpcConnectException(serviceAddress + " is cann't connect");
+    public CompletableFuture<Object> sendRpcRequestAsync(RpcRequestDTO rpcRequestDTO, Long timeout) throws Exception {
+        RpcClientHandler handler = selectHandler();
+        long start = System.nanoTime();
+        CompletableFuture<Object> future = handler.sendRpcRequestAsync(rpcRequestDTO, timeout);
+        future.whenComplete((result, e) -> record(System.nanoTime() - start, e));
+        return future;
+    }
+
+    /**
+     * 记录响应时间并计入熔断统计
+     *
+     * @param latencyNanos
+     * @param e            调用异常, 成功时为null
+     */
+    private void record(long latencyNanos, Throwable e) {
+        recordLatency(latencyNanos);
+        if (circuitBreakerEnabled && circuitBreaker.record(latencyNanos, isProviderFailure(e))) {
+            log.warn("RpcNettyClient circuit breaker open serviceAddress={} duration={}ms", serviceAddress, circuitBreaker.getOpenDuration());
+            scheduleProbe(circuitBreaker.getOpenDuration());
         }
-        if (rpcClientHandler == null) {
-            throw new NullPointerException(serviceAddress + " is cann't connect");
+    }
+
+    /**
+     * 是否为服务提供者不可用导致的失败, 业务异常不计入熔断
+     *
+     * @param e
+     * @return
+     */
+    public static boolean isProviderFailure(Throwable e) {
+        if (e instanceof CompletionException && e.getCause() != null) {
+            e = e.getCause();
         }
-        return rpcClientHandler.sendRpcRequest(rpcRequestDTO, timeout);
+        return e instanceof RpcTimeoutException || e instanceof RpcConnectException
+                || e instanceof RpcBusyException || e instanceof IOException;
     }
 
+    /**
+     * 在共用的时间轮上执行延时任务, 精度10毫秒
+     *
+     * @param task
+     * @param delayMillis
+     * @return
+     */
+    public static Timeout schedule(Runnable task, long delayMillis) {
+        return TIMEOUT_TIMER.newTimeout(t -> task.run(), delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void scheduleProbe(long delayMillis) {
+        if (!closed) {
+            TIMEOUT_TIMER.newTimeout(t -> probe(), delayMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * 用health服务探测熔断中的服务提供者, 成功且不慢才算通过
+     * <p>
+     * 探测请求在服务端经过业务线程池, 繁忙(FLAG_BUSY)或排队超时的提供者不会通过探测
+     */
+    private void probe() {
+        if (closed) {
+            return;
+        }
+        circuitBreaker.halfOpen();
+        long start = System.nanoTime();
+        CompletableFuture<Object> future;
+        try {
+            future = selectHandler().sendRpcRequestAsync(newHealthRequest(PROBE_METHOD_ID, RpcProviderBean.PROBE), PROBE_TIMEOUT);
+        } catch (Exception e) {
+            future = new CompletableFuture<>();
+            future.completeExceptionally(e);
+        }
+        future.whenComplete((result, e) -> {
+            boolean healthy = e == null && RpcProviderBean.OK.equals(result)
+                    && System.nanoTime() - start <= TimeUnit.MILLISECONDS.toNanos(CircuitBreaker.SLOW_THRESHOLD);
+            if (!healthy) {
+                circuitBreaker.probeFailure();
+                log.warn("RpcNettyClient probe fail serviceAddress={} next={}ms", serviceAddress, circuitBreaker.getOpenDuration());
+                scheduleProbe(circuitBreaker.getOpenDuration());
+            } else if (circuitBreaker.probeSuccess()) {
+                log.info("RpcNettyClient circuit breaker closed serviceAddress={}", serviceAddress);
+            } else {
+                scheduleProbe(PROBE_INTERVAL);
+            }
+        });
+    }
+
+    /**
+     * 服务端health服务的请求, 心跳使用在IO线程应答的health, 熔断探测使用经过业务线程池的probe
+     *
+     * @param methodId
+     * @param methodName
+     * @return
+     */
+    private static RpcRequestDTO newHealthRequest(int methodId, String methodName) {
+        RpcRequestDTO rpcRequestDTO = new RpcRequestDTO();
+        rpcRequestDTO.setMethodId(methodId);
+        rpcRequestDTO.setSerializerId(HessianSerializer.ID);
+        rpcRequestDTO.setServiceName(RpcProviderBean.HEALTH);
+        rpcRequestDTO.setMethodName(methodName);
+        return rpcRequestDTO;
+    }
+
+    /**
+     * 是否可以路由请求: 熔断关闭且至少有一个连接可用
+     *
+     * @return
+     */
+    public boolean isAvailable() {
+        if (circuitBreakerEnabled && !circuitBreaker.allowRequest()) {
+            return false;
+        }
+        for (RpcClientHandler handler : rpcClientHandlers) {
+            if (handler.isActive()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 可用状态的版本号, 任一客户端熔断或连接状态变化时改变
+     *
+     * @return
+     */
+    public static int getRoutingVersion() {
+        return ROUTING_VERSION.get();
+    }
+
+    public CircuitBreaker getCircuitBreaker() {
+        return circuitBreaker;
+    }
+
+    /**
+     * 记录一次调用的响应时间(包括失败和超时)
+     * <p>
+     * 样本大于当前值时直接取样本(peak EWMA), 变慢的提供者会被立即避开; 否则按距上次样本的时间衰减后平均
+     *
+     * @param latencyNanos
+     */
+    private void recordLatency(long latencyNanos) {
+        long now = System.nanoTime();
+        double ewma = ewmaLatency;
+        if (latencyNanos > ewma) {
+            ewmaLatency = latencyNanos;
+        } else {
+            double w = Math.exp(-(now - ewmaTime) / EWMA_DECAY_NANOS);
+            ewmaLatency = ewma * w + latencyNanos * (1 - w);
+        }
+        ewmaTime = now;
+    }
+
+    /**
+     * 响应时间的EWMA(纳秒), 长时间没有样本时向0衰减, 使被避开的提供者之后还能再被尝试
+     *
+     * @return
+     */
+    public double getEwmaLatency() {
+        return ewmaLatency * Math.exp(-(System.nanoTime() - ewmaTime) / EWMA_DECAY_NANOS);
+    }
+
+    /**
+     * 从连接池中选择一个可用连接
+     *
+     * @return
+     * @throws RpcConnectException 没有可用连接
+     */
+    private RpcClientHandler selectHandler() throws RpcConnectException {
+        RpcClientHandler[] handlers = rpcClientHandlers;
+        int length = handlers.length;
+        if (length == 1 && handlers[0].isActive()) {
+            return handlers[0];
+        }
+        int start = roundRobinIndex.getAndIncrement();
+        RpcClientHandler selected = null;
+        int minPending = Integer.MAX_VALUE;
+        for (int i = 0; i < length; i++) {
+            //计数器溢出后start + i可能为负, 用floorMod取下标
+            RpcClientHandler handler = handlers[Math.floorMod(start + i, length)];
+            if (!handler.isActive()) {
+                continue;
+            }
+            if (!leastPending) {
+                return handler;
+            }
+            int pending = handler.pendingRequestTable.size();
+            if (pending < minPending) {
+                minPending = pending;
+                selected = handler;
+            }
+        }
+        if (selected == null) {
+            throw new RpcConnectException(serviceAddress + " is cann't connect");
+        }
+        return selected;
+    }
+
+    /**
+     * 建立连接池并预热, 最多等待 {@link RpcConfigBean#WARM_UP_TIMEOUT} 毫秒
+     */
     public void init() {
-        group = new NioEventLoopGroup();
-        Bootstrap bootstrap = new Bootstrap();
+        connect();
+        awaitWarmUp(RpcConfigBean.WARM_UP_TIMEOUT);
+    }
 
-        ChannelFutureListener channelFutureListener = new MyChannelFutureListener(bootstrap);
+    /**
+     * 发起建立连接池, 不等待连接完成
+     */
+    public void connect() {
+        if (group == null) {
+            group = NettyTransport.newEventLoopGroup(0, false, "shier-rpc-client");
+            ownGroup = true;
+        }
+        bootstrap = new Bootstrap();
         bootstrap.group(group)
-                .channel(NioSocketChannel.class)
+                .channel(NettyTransport.socketChannelClass(group))
                 .option(ChannelOption.TCP_NODELAY, true)
-                .handler(new ChannelInitializer<SocketChannel>() {
-                    @Override
-                    protected void initChannel(SocketChannel ch) throws Exception {
-                        ch.pipeline().addLast(new LengthFieldBasedFrameDecoder(RpcConfigBean.RPC_DECODER_MAX_MAX_FRAME_LENGTH, 0, 4, 0, 4));
-                        ch.pipeline().addLast(new LengthFieldPrepender(4));
-                        ch.pipeline().addLast(new HessianObjectEncoder());
-                        ch.pipeline().addLast(new HessianObjectDecoder(Integer.MAX_VALUE));
-                        rpcClientHandler = new RpcClientHandler(bootstrap, channelFutureListener);
-                        ch.pipeline().addLast(rpcClientHandler);
-                    }
-                });
+                .option(ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT);
 
-        doConnect(bootstrap, channelFutureListener);
+        warmUpLatch = new CountDownLatch(connections);
+        resize(connections);
     }
 
     /**
-     * 连接服务
+     * 等待连接池预热完成
      *
-     * @param bootstrap
-     * @param channelFutureListener
+     * @param timeoutMillis
+     * @return 是否全部连接成功
      */
-    private void doConnect(Bootstrap bootstrap, ChannelFutureListener channelFutureListener) {
-        //发起异步链接操作
-        String[] addressArray = serviceAddress.split(":");
-        channelFuture = bootstrap.connect(addressArray[0], Integer.parseInt(addressArray[1]));
-        channelFuture.addListener(channelFutureListener);
+    public boolean awaitWarmUp(long timeoutMillis) {
+        try {
+            if (warmUpLatch.await(Math.max(0, timeoutMillis), TimeUnit.MILLISECONDS)) {
+                return true;
+            }
+            log.warn("RpcNettyClient.init warm up timeout serviceAddress={} active={}/{}",
+                    serviceAddress, connections - warmUpLatch.getCount(), connections);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return false;
+    }
+
+    /**
+     * 调整连接数, 多出的连接在途请求结束后关闭
+     *
+     * @param size
+     */
+    public synchronized void resize(int size) {
+        if (closed) {
+            return;
+        }
+        size = Math.max(1, size);
+        RpcClientHandler[] oldHandlers = rpcClientHandlers;
+        RpcClientHandler[] newHandlers = Arrays.copyOf(oldHandlers, size);
+        for (int i = oldHandlers.length; i < size; i++) {
+            newHandlers[i] = new RpcClientHandler();
+            newHandlers[i].connect();
+        }
+        rpcClientHandlers = newHandlers;
+        for (int i = size; i < oldHandlers.length; i++) {
+            oldHandlers[i].closeGracefully();
+        }
+        connections = size;
+        log.info("RpcNettyClient.resize serviceAddress={} connections={}", serviceAddress, size);
     }
 
     /**
      * 断开连接
      */
-    public void disConnect() {
+    public synchronized void disConnect() {
         log.info("RpcNettyClient.disConnect serviceAddress={}", serviceAddress);
-        group.shutdownGracefully();
+        closed = true;
+        for (RpcClientHandler handler : rpcClientHandlers) {
+            handler.close();
+        }
+        if (ownGroup) {
+            group.shutdownGracefully();
+        }
     }
 
     public String getServiceAddress() {
@@ -110,41 +486,287 @@ public class RpcNettyClient {
         return this;
     }
 
+    public RpcNettyClient setWriteBatchSize(int writeBatchSize) {
+        this.writeBatchSize = writeBatchSize;
+        return this;
+    }
+
+    public int getWeight() {
+        return weight;
+    }
+
+    /**
+     * 设置心跳, 在connect之前调用
+     *
+     * @param heartbeatInterval 空闲多久(毫秒)后发送心跳, 0为不发送
+     * @param heartbeatTimeout  心跳超时(毫秒)
+     * @return
+     */
+    public RpcNettyClient setHeartbeat(int heartbeatInterval, int heartbeatTimeout) {
+        this.heartbeatInterval = heartbeatInterval;
+        this.heartbeatTimeout = heartbeatTimeout;
+        return this;
+    }
+
+    public RpcNettyClient setCircuitBreakerEnabled(boolean circuitBreakerEnabled) {
+        this.circuitBreakerEnabled = circuitBreakerEnabled;
+        return this;
+    }
+
+    public RpcNettyClient setWeight(int weight) {
+        this.weight = weight;
+        return this;
+    }
+
+    public int getConnections() {
+        return connections;
+    }
+
+    /**
+     * 所有连接的在途请求数
+     *
+     * @return
+     */
+    public int getPendingCount() {
+        int count = 0;
+        for (RpcClientHandler handler : rpcClientHandlers) {
+            count += handler.pendingRequestTable.size();
+        }
+        return count;
+    }
+
+    /**
+     * 连接池中的一个连接, 断线重连时复用同一个handler
+     */
+    @ChannelHandler.Sharable
     private class RpcClientHandler extends ChannelInboundHandlerAdapter {
 
-        private Map<String, RpcCallback> callbackMap = new HashMap<>(RpcConfigBean.CALLBACK_MAP_INIT_SIZE);
+        private final PendingRequestTable pendingRequestTable = new PendingRequestTable(RpcConfigBean.CALLBACK_MAP_INIT_SIZE);
+
+        private final AtomicLong requestIdGenerator = new AtomicLong();
 
-        private Channel channel;
+        private volatile Channel channel;
 
-        private Bootstrap bootstrap;
+        /**
+         * 开启合并写出时当前连接的写出队列
+         */
+        private volatile WriteQueue writeQueue;
 
-        private ChannelFutureListener channelFutureListener;
+        /**
+         * 已经通过握手告知服务端的方法数
+         */
+        private volatile int negotiatedCount;
 
-        RpcClientHandler(Bootstrap bootstrap, ChannelFutureListener channelFutureListener) {
-            this.bootstrap = bootstrap;
-            this.channelFutureListener = channelFutureListener;
+        private volatile boolean closed;
+
+        /**
+         * 下次重连的等待时间(秒)
+         */
+        private int reconnectDelay = 1;
+
+        /**
+         * 是否有未返回的心跳, 只在IO线程中修改
+         */
+        private boolean heartbeatPending;
+
+        /**
+         * 发起连接, 失败时等待后重新连接, 等待时间从1秒逐次翻倍到 {@link #MAX_RECONNECT_DELAY} 秒
+         */
+        private void connect() {
+            if (closed) {
+                return;
+            }
+            String[] addressArray = serviceAddress.split(":");
+            Bootstrap connectBootstrap = bootstrap.clone().handler(new ChannelInitializer<SocketChannel>() {
+                @Override
+                protected void initChannel(SocketChannel ch) throws Exception {
+                    if (heartbeatInterval > 0) {
+                        ch.pipeline().addLast(new IdleStateHandler(heartbeatInterval, 0, 0, TimeUnit.MILLISECONDS));
+                    }
+                    ch.pipeline().addLast(new RpcProtocolDecoder(RpcConfigBean.RPC_DECODER_MAX_MAX_FRAME_LENGTH));
+                    ch.pipeline().addLast(new RpcProtocolEncoder());
+                    ch.pipeline().addLast(RpcClientHandler.this);
+                }
+            });
+            connectBootstrap.connect(addressArray[0], Integer.parseInt(addressArray[1])).addListener((ChannelFutureListener) f -> {
+                if (f.isSuccess() && closed) { //连接过程中已被关闭, 此时close()拿不到channel, 由这里关闭
+                    f.channel().close();
+                } else if (f.isSuccess()) { //连接成功
+                    reconnectDelay = 1;
+                    log.info("RpcNettyClient serviceAddress={} connected!", serviceAddress);
+                } else if (!closed) {
+                    //  连接失败 等待后重新连接
+                    int delay = reconnectDelay;
+                    reconnectDelay = Math.min(delay * 2, MAX_RECONNECT_DELAY);
+                    f.channel().eventLoop().schedule(this::connect, delay, TimeUnit.SECONDS);
+                }
+            });
+        }
+
+        /**
+         * 移出连接池后等待在途请求结束再关闭连接
+         */
+        private void closeGracefully() {
+            closed = true;
+            Channel channel = this.channel;
+            if (channel == null) {
+                return;
+            }
+            if (pendingRequestTable.size() == 0) {
+                channel.close();
+            } else {
+                channel.eventLoop().schedule(this::closeGracefully, 100, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        /**
+         * 立即关闭连接, 不再重连
+         */
+        private void close() {
+            closed = true;
+            Channel channel = this.channel;
+            if (channel != null) {
+                channel.close();
+            }
+        }
+
+        private boolean isActive() {
+            Channel channel = this.channel;
+            return channel != null && channel.isActive();
         }
 
         @Override
         public void channelActive(ChannelHandlerContext ctx) throws Exception {
+            synchronized (this) {
+                writeQueue = writeBatchSize > 0 ? new WriteQueue(ctx.channel(), writeBatchSize) : null;
+                negotiatedCount = 0; //新连接重新握手
+                negotiate(ctx.channel());
+            }
             this.channel = ctx.channel();
+            //先赋值再检查, 与close()先置closed再读channel配合, 两边至少有一方关闭连接
+            if (closed) {
+                ctx.close();
+                warmUpLatch.countDown();
+                return;
+            }
+            ROUTING_VERSION.incrementAndGet();
+            warmUpLatch.countDown();
+        }
+
+        /**
+         * 方法握手, 把还未告知服务端的方法名发送过去
+         * <p>
+         * 握手消息与请求在同一连接上按顺序写出, 服务端总是先处理握手, 不需要等待应答
+         *
+         * @param channel
+         */
+        private synchronized void negotiate(Channel channel) {
+            int from = negotiatedCount;
+            int to = MethodIdRegistry.size();
+            if (to <= from) {
+                return;
+            }
+            RpcRequestDTO handshake = new RpcRequestDTO();
+            handshake.setHandshake(true);
+            handshake.setSerializerId(HessianSerializer.ID);
+            handshake.setMethodId(from);
+            handshake.setParams(MethodIdRegistry.getMethodNames(from, to));
+            writeAndFlush(channel, handshake);
+            negotiatedCount = to;
+        }
+
+        /**
+         * 写出请求, 方法id还未握手时先补充握手
+         *
+         * @param rpcRequestDTO
+         * @return
+         */
+        private ChannelFuture write(RpcRequestDTO rpcRequestDTO) {
+            if (rpcRequestDTO.getMethodId() >= negotiatedCount) {
+                negotiate(channel);
+            }
+            return writeAndFlush(channel, rpcRequestDTO);
+        }
+
+        /**
+         * 开启合并写出时经过写出队列, 握手和请求走同一个队列以保证顺序
+         *
+         * @param channel
+         * @param msg
+         * @return
+         */
+        private ChannelFuture writeAndFlush(Channel channel, Object msg) {
+            WriteQueue writeQueue = this.writeQueue;
+            return writeQueue != null ? writeQueue.write(msg) : channel.writeAndFlush(msg);
         }
 
         @Override
         public void channelInactive(ChannelHandlerContext ctx) throws Exception {
             ctx.fireChannelInactive();
-            doConnect(bootstrap, channelFutureListener);
+            ROUTING_VERSION.incrementAndGet();
+            //连接断开, 在途请求直接失败
+            for (RpcCallback rpcCallback : pendingRequestTable.removeAll()) {
+                rpcCallback.callbackError(new RpcConnectException(serviceAddress + " is disconnected"));
+            }
+            connect();
         }
 
         @Override
         public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
             RpcResponseDTO responseDTO = (RpcResponseDTO) msg;
-            RpcCallback rpcCallback = callbackMap.get(responseDTO.getRequestId());
+            if (responseDTO.isInvalidate()) { //服务端推送的缓存失效通知
+                CacheRegistry.invalidate((Object[]) responseDTO.getResult());
+                return;
+            }
+            RpcCallback rpcCallback = pendingRequestTable.remove(responseDTO.getRequestId());
             if (rpcCallback != null) {
                 log.debug("收到回调requestId={} result={}", responseDTO.getRequestId(), responseDTO.getResult());
-                callbackMap.remove(responseDTO.getRequestId());
-                rpcCallback.callback(responseDTO.getResult()); //收到回调
+                if (responseDTO.isHasError()) {
+                    rpcCallback.callbackError(responseDTO.getThrowable());
+                } else {
+                    rpcCallback.callback(responseDTO.getResult()); //收到回调
+                }
+            }
+        }
+
+        @Override
+        public void userEventTriggered(ChannelHandlerContext ctx, Object evt) throws Exception {
+            if (evt instanceof IdleStateEvent) {
+                heartbeat(ctx.channel());
+            } else {
+                ctx.fireUserEventTriggered(evt);
+            }
+        }
+
+        /**
+         * 连接空闲时发送心跳, 往返时间计入响应时间EWMA; 超时说明连接已不可用, 关闭后重连
+         * <p>
+         * 服务端在IO线程中直接应答health, 心跳只反映网络和IO线程的状况, 不受业务线程池排队影响
+         *
+         * @param channel
+         */
+        private void heartbeat(Channel channel) {
+            if (heartbeatPending || channel != this.channel) {
+                return;
+            }
+            heartbeatPending = true;
+            long start = System.nanoTime();
+            CompletableFuture<Object> future;
+            try {
+                future = sendRpcRequestAsync(newHealthRequest(HEALTH_METHOD_ID, RpcProviderBean.HEALTH), (long) heartbeatTimeout);
+            } catch (Exception e) {
+                heartbeatPending = false;
+                return;
             }
+            future.whenComplete((result, e) -> channel.eventLoop().execute(() -> {
+                heartbeatPending = false;
+                if (e == null) {
+                    recordLatency(System.nanoTime() - start);
+                } else if (e instanceof RpcTimeoutException && channel.isActive()) {
+                    log.warn("RpcNettyClient heartbeat timeout serviceAddress={} timeout={}ms, close channel", serviceAddress, heartbeatTimeout);
+                    channel.close();
+                }
+            }));
         }
 
         @Override
@@ -153,43 +775,77 @@ public class RpcNettyClient {
             ctx.close();
         }
 
-        private Object sendRpcRequest(RpcRequestDTO rpcRequestDTO, Long timeout) throws Exception {
-            if (!this.channel.isActive()) {
+        private Object sendRpcRequest(RpcRequestDTO rpcRequestDTO, Long timeout) throws Throwable {
+            if (!isActive()) {
                 throw new RpcConnectException(serviceAddress + " is unable to connect");
             }
+            long requestId = requestIdGenerator.incrementAndGet();
+            rpcRequestDTO.setRequestId(requestId);
+            rpcRequestDTO.setTimeout((int) Math.min(timeout, Integer.MAX_VALUE));
+            RpcCallback rpcCallback = RpcCallback.newInstance(requestId);
+            pendingRequestTable.put(rpcCallback);
+            boolean owned = false;
             try {
-                RpcCallback rpcCallback = new RpcCallback(rpcRequestDTO.getRequestId(), timeout);
-                callbackMap.put(rpcRequestDTO.getRequestId(), rpcCallback);
-                this.channel.writeAndFlush(rpcRequestDTO); //发送请求
-                return rpcCallback.waitCallback(); //等待回调返回结果
-            } catch (Exception e) {
-                callbackMap.remove(rpcRequestDTO.getRequestId());
+                write(rpcRequestDTO).addListener(new WriteFailListener(requestId)); //发送请求
+                Object result = rpcCallback.waitCallback(timeout); //等待回调返回结果
+                owned = true;
+                return result;
+            } catch (Throwable e) {
+                //只有自己移除成功(或已收到结果)才能回收, 否则IO线程仍可能持有该回调
+                owned = owned || pendingRequestTable.remove(requestId) != null || rpcCallback.isDone();
                 log.error("rpcRequest:{} 调用失败 {}", JSON.toJSONString(rpcRequestDTO), e.getMessage());
                 throw e;
+            } finally {
+                if (owned) {
+                    rpcCallback.recycle();
+                }
             }
         }
-    }
 
-    private class MyChannelFutureListener implements ChannelFutureListener {
-        private Bootstrap bootstrap;
+        private CompletableFuture<Object> sendRpcRequestAsync(RpcRequestDTO rpcRequestDTO, Long timeout) throws Exception {
+            if (!isActive()) {
+                throw new RpcConnectException(serviceAddress + " is unable to connect");
+            }
+            long requestId = requestIdGenerator.incrementAndGet();
+            rpcRequestDTO.setRequestId(requestId);
+            rpcRequestDTO.setTimeout((int) Math.min(timeout, Integer.MAX_VALUE));
+            CompletableFuture<Object> future = new CompletableFuture<>();
+            pendingRequestTable.put(RpcCallback.newAsyncInstance(requestId, future));
 
-        public MyChannelFutureListener(Bootstrap bootstrap) {
-            this.bootstrap = bootstrap;
+            //超时移除, 由时间轮统一检查
+            Timeout timeoutTask = TIMEOUT_TIMER.newTimeout(t -> {
+                RpcCallback rpcCallback = pendingRequestTable.remove(requestId);
+                if (rpcCallback != null) {
+                    log.error("rpcRequest:{} 调用超时 {}", JSON.toJSONString(rpcRequestDTO), timeout);
+                    rpcCallback.callbackError(new RpcTimeoutException("await timeout " + timeout));
+                }
+            }, timeout, TimeUnit.MILLISECONDS);
+            future.whenComplete((result, e) -> timeoutTask.cancel());
+
+            write(rpcRequestDTO).addListener(new WriteFailListener(requestId)); //发送请求
+            return future;
         }
 
-        public void operationComplete(ChannelFuture f) throws Exception {
-            ChannelFutureListener _this = this;
-            if (f.isSuccess()) { //连接成功
-                log.info("RpcNettyClient serviceAddress={} connected!", serviceAddress);
-            } else {
-                //  连接失败 1秒后重新连接
-                f.channel().eventLoop().schedule(() -> {
-                    try {
-                        doConnect(bootstrap, _this);
-                    } catch (Exception e) {
-                        log.error("MyChannelFutureListener.operationComplete", e);
-                    }
-                }, 1, TimeUnit.SECONDS);
+        /**
+         * 请求写出失败时直接结束调用
+         */
+        private class WriteFailListener implements ChannelFutureListener {
+
+            private final long requestId;
+
+            WriteFailListener(long requestId) {
+                this.requestId = requestId;
+            }
+
+            @Override
+            public void operationComplete(ChannelFuture future) throws Exception {
+                if (future.isSuccess()) {
+                    return;
+                }
+                RpcCallback rpcCallback = pendingRequestTable.remove(requestId);
+                if (rpcCallback != null) {
+                    rpcCallback.callbackError(future.cause());
+                }
             }
         }
     }
@@ -0,0 +1,141 @@
+package shier.rpc.netty;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.CorruptedFrameException;
+import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
+import shier.rpc.dto.RpcRequestDTO;
+import shier.rpc.dto.RpcResponseDTO;
+import shier.rpc.exception.RpcBusyException;
+import shier.rpc.protocol.RpcProtocol;
+import shier.rpc.serialize.Serializer;
+import shier.rpc.serialize.SerializerRegistry;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 按 {@link RpcProtocol} 解码, 输出 {@link RpcRequestDTO} 或 {@link RpcResponseDTO}
+ * <p>
+ * 父类切出的帧是累积缓冲的retainedSlice, 不拷贝, 解码结束后释放帧
+ *
+ * @author liangliang.wei
+ * @description
+ * @create 2017-12-11 下午4:15
+ **/
+public class RpcProtocolDecoder extends LengthFieldBasedFrameDecoder {
+
+    public RpcProtocolDecoder(int maxFrameLength) {
+        super(maxFrameLength, 0, RpcProtocol.LENGTH_FIELD_LENGTH, 0, RpcProtocol.LENGTH_FIELD_LENGTH);
+    }
+
+    @Override
+    protected Object decode(ChannelHandlerContext ctx, ByteBuf in) throws Exception {
+        ByteBuf frame = (ByteBuf) super.decode(ctx, in);
+        if (frame == null) {
+            return null;
+        }
+
+        try {
+            if (frame.readableBytes() < RpcProtocol.HEADER_LENGTH || frame.readShort() != RpcProtocol.MAGIC) {
+                throw new CorruptedFrameException("invalid rpc frame");
+            }
+            byte version = frame.readByte();
+            if (version != RpcProtocol.VERSION) {
+                throw new CorruptedFrameException("unsupported protocol version " + version);
+            }
+            byte flags = frame.readByte();
+            long requestId = frame.readLong();
+            byte serializerId = frame.readByte();
+            int methodId = frame.readInt();
+            int timeout = (flags & RpcProtocol.FLAG_DEADLINE) != 0 ? frame.readInt() : 0;
+            Serializer serializer = SerializerRegistry.getSerializer(serializerId);
+            if (serializer == null) {
+                throw new CorruptedFrameException("unsupported serializer " + serializerId);
+            }
+            Object body;
+            Object resultAttachment = null;
+            Object[] paramAttachments = null;
+            if ((flags & RpcProtocol.FLAG_ATTACHMENT) != 0) {
+                int bodyLength = frame.readInt();
+                if (bodyLength < 0 || bodyLength > frame.readableBytes()) {
+                    throw new CorruptedFrameException("invalid body length " + bodyLength);
+                }
+                body = bodyLength > 0 ? serializer.deserialize(frame.readSlice(bodyLength)) : null;
+                //数组大小都来自对端, 分配前按帧的剩余长度和参数个数校验, 避免畸形帧导致大量分配
+                int count = frame.readInt();
+                if (count < 0 || count > frame.readableBytes() / 8) {
+                    throw new CorruptedFrameException("invalid attachment count " + count);
+                }
+                //响应的附件是结果, 序号为-1; 请求的附件是参数, 序号不超过参数个数
+                int maxIndex = (flags & RpcProtocol.FLAG_RESPONSE) != 0 || !(body instanceof Object[]) ? -1 : ((Object[]) body).length - 1;
+                int[] indexes = new int[count];
+                int[] lengths = new int[count];
+                for (int i = 0; i < count; i++) {
+                    indexes[i] = frame.readInt();
+                    lengths[i] = frame.readInt();
+                    if (maxIndex < 0 ? indexes[i] != -1 : indexes[i] < 0 || indexes[i] > maxIndex) {
+                        throw new CorruptedFrameException("invalid attachment index " + indexes[i]);
+                    }
+                }
+                for (int i = 0; i < count; i++) {
+                    if (lengths[i] < 0 || lengths[i] > frame.readableBytes()) {
+                        throw new CorruptedFrameException("invalid attachment length " + lengths[i]);
+                    }
+                    byte[] attachment = new byte[lengths[i]];
+                    frame.readBytes(attachment); //直接读入最终的数组, 只拷贝一次
+                    if (indexes[i] < 0) {
+                        resultAttachment = attachment;
+                    } else {
+                        if (paramAttachments == null) {
+                            paramAttachments = new Object[maxIndex + 1];
+                        }
+                        paramAttachments[indexes[i]] = attachment;
+                    }
+                }
+            } else {
+                body = frame.isReadable() ? serializer.deserialize(frame) : null;
+            }
+
+            if ((flags & RpcProtocol.FLAG_RESPONSE) != 0) {
+                RpcResponseDTO rpcResponseDTO = new RpcResponseDTO();
+                rpcResponseDTO.setRequestId(requestId);
+                rpcResponseDTO.setSerializerId(serializerId);
+                if ((flags & RpcProtocol.FLAG_BUSY) != 0) {
+                    rpcResponseDTO.setHasError(true);
+                    rpcResponseDTO.setBusy(true);
+                    rpcResponseDTO.setThrowable(new RpcBusyException("server busy " + ctx.channel().remoteAddress()));
+                } else if ((flags & RpcProtocol.FLAG_ERROR) != 0) {
+                    rpcResponseDTO.setHasError(true);
+                    rpcResponseDTO.setThrowable((Throwable) body);
+                } else {
+                    rpcResponseDTO.setInvalidate((flags & RpcProtocol.FLAG_INVALIDATE) != 0);
+                    rpcResponseDTO.setResult(resultAttachment != null ? resultAttachment : body);
+                }
+                return rpcResponseDTO;
+            }
+
+            RpcRequestDTO rpcRequestDTO = new RpcRequestDTO();
+            rpcRequestDTO.setRequestId(requestId);
+            rpcRequestDTO.setMethodId(methodId);
+            rpcRequestDTO.setSerializerId(serializerId);
+            rpcRequestDTO.setHandshake((flags & RpcProtocol.FLAG_HANDSHAKE) != 0);
+            if (timeout > 0) {
+                //按本机收到的时间计算截止时间, 不受两端时钟差影响
+                rpcRequestDTO.setTimeout(timeout);
+                rpcRequestDTO.setDeadline(System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout));
+            }
+            Object[] params = (Object[]) body;
+            if (paramAttachments != null) {
+                for (int i = 0; i < paramAttachments.length; i++) {
+                    if (paramAttachments[i] != null) {
+                        params[i] = paramAttachments[i];
+                    }
+                }
+            }
+            rpcRequestDTO.setParams(params);
+            return rpcRequestDTO;
+        } finally {
+            frame.release();
+        }
+    }
+}
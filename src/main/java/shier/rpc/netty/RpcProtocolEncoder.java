@@ -0,0 +1,174 @@
+package shier.rpc.netty;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.CompositeByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.handler.codec.EncoderException;
+import io.netty.handler.codec.MessageToMessageEncoder;
+import shier.rpc.dto.RpcRequestDTO;
+import shier.rpc.dto.RpcResponseDTO;
+import shier.rpc.protocol.RpcProtocol;
+import shier.rpc.serialize.Serializer;
+import shier.rpc.serialize.SerializerRegistry;
+import shier.rpc.spring.RpcConfigBean;
+
+import java.util.List;
+
+/**
+ * 按 {@link RpcProtocol} 编码请求和响应, 只序列化参数和结果
+ * <p>
+ * 直接序列化到池化的直接内存; 超过 {@link RpcConfigBean#ATTACHMENT_THRESHOLD} 的 byte[] 参数或结果不经过序列化,
+ * 以附件形式包装后与消息体组合成 CompositeByteBuf 写出, 不做拷贝
+ *
+ * @author liangliang.wei
+ * @description
+ * @create 2017-12-11 下午4:10
+ **/
+public class RpcProtocolEncoder extends MessageToMessageEncoder<Object> {
+
+    private static final int MIN_SIZE_HINT = 256;
+
+    /**
+     * 预估的消息大小, 避免写入时扩容拷贝; 编码器属于单个连接, 只在IO线程中访问
+     */
+    private int sizeHint = MIN_SIZE_HINT;
+
+    @Override
+    public boolean acceptOutboundMessage(Object msg) throws Exception {
+        return msg instanceof RpcRequestDTO || msg instanceof RpcResponseDTO;
+    }
+
+    @Override
+    protected void encode(ChannelHandlerContext ctx, Object msg, List<Object> out) throws Exception {
+        byte flags;
+        long requestId;
+        byte serializerId;
+        int methodId;
+        int timeout = 0;
+        Object body;
+        byte[][] attachments = null;
+        if (msg instanceof RpcRequestDTO) {
+            RpcRequestDTO rpcRequestDTO = (RpcRequestDTO) msg;
+            flags = rpcRequestDTO.isHandshake() ? RpcProtocol.FLAG_HANDSHAKE : 0;
+            requestId = rpcRequestDTO.getRequestId();
+            serializerId = rpcRequestDTO.getSerializerId();
+            methodId = rpcRequestDTO.getMethodId();
+            if (rpcRequestDTO.getTimeout() > 0) {
+                flags |= RpcProtocol.FLAG_DEADLINE;
+                timeout = rpcRequestDTO.getTimeout();
+            }
+            Object[] params = rpcRequestDTO.getParams();
+            if (params != null) {
+                for (int i = 0; i < params.length; i++) {
+                    if (isAttachment(params[i])) {
+                        if (attachments == null) {
+                            attachments = new byte[params.length][];
+                            params = params.clone(); //不修改调用方的参数数组
+                        }
+                        attachments[i] = (byte[]) params[i];
+                        params[i] = null;
+                    }
+                }
+            }
+            body = params;
+        } else {
+            RpcResponseDTO rpcResponseDTO = (RpcResponseDTO) msg;
+            flags = rpcResponseDTO.isHasError() ? RpcProtocol.FLAG_RESPONSE | RpcProtocol.FLAG_ERROR : RpcProtocol.FLAG_RESPONSE;
+            requestId = rpcResponseDTO.getRequestId();
+            serializerId = rpcResponseDTO.getSerializerId();
+            methodId = 0;
+            body = rpcResponseDTO.isHasError() ? rpcResponseDTO.getThrowable() : rpcResponseDTO.getResult();
+            if (rpcResponseDTO.isBusy()) {
+                flags |= RpcProtocol.FLAG_ERROR | RpcProtocol.FLAG_BUSY;
+                body = null;
+            } else if (rpcResponseDTO.isInvalidate()) {
+                flags |= RpcProtocol.FLAG_INVALIDATE;
+            }
+            if (isAttachment(body)) {
+                attachments = new byte[][]{(byte[]) body};
+                body = null;
+            }
+        }
+
+        ByteBuf buf = ctx.alloc().ioBuffer(sizeHint);
+        boolean release = true;
+        try {
+            buf.writeInt(0); //长度占位
+            buf.writeShort(RpcProtocol.MAGIC);
+            buf.writeByte(RpcProtocol.VERSION);
+            buf.writeByte(attachments != null ? flags | RpcProtocol.FLAG_ATTACHMENT : flags);
+            buf.writeLong(requestId);
+            buf.writeByte(serializerId);
+            buf.writeInt(methodId);
+            if ((flags & RpcProtocol.FLAG_DEADLINE) != 0) {
+                buf.writeInt(timeout);
+            }
+
+            int bodyLengthIdx = buf.writerIndex();
+            if (attachments != null) {
+                buf.writeInt(0); //消息体长度占位
+            }
+            if (body != null) {
+                Serializer serializer = SerializerRegistry.getSerializer(serializerId);
+                if (serializer == null) {
+                    throw new EncoderException("unsupported serializer " + serializerId);
+                }
+                serializer.serialize(body, buf);
+            }
+
+            int length = buf.writerIndex() - RpcProtocol.LENGTH_FIELD_LENGTH;
+            adjustSizeHint(buf.writerIndex());
+            if (attachments == null) {
+                buf.setInt(0, length);
+                out.add(buf);
+                release = false;
+                return;
+            }
+
+            buf.setInt(bodyLengthIdx, buf.writerIndex() - bodyLengthIdx - 4);
+            int count = 0;
+            for (byte[] attachment : attachments) {
+                if (attachment != null) {
+                    count++;
+                }
+            }
+            buf.writeInt(count);
+            length = buf.writerIndex() - RpcProtocol.LENGTH_FIELD_LENGTH;
+            for (int i = 0; i < attachments.length; i++) {
+                if (attachments[i] != null) {
+                    buf.writeInt(msg instanceof RpcRequestDTO ? i : -1);
+                    buf.writeInt(attachments[i].length);
+                    length += 8 + attachments[i].length;
+                }
+            }
+            buf.setInt(0, length);
+
+            CompositeByteBuf composite = ctx.alloc().compositeDirectBuffer(count + 1);
+            composite.addComponent(true, buf);
+            release = false;
+            for (byte[] attachment : attachments) {
+                if (attachment != null) {
+                    composite.addComponent(true, Unpooled.wrappedBuffer(attachment));
+                }
+            }
+            out.add(composite);
+        } finally {
+            if (release) {
+                buf.release();
+            }
+        }
+    }
+
+    private static boolean isAttachment(Object object) {
+        return object instanceof byte[] && ((byte[]) object).length >= RpcConfigBean.ATTACHMENT_THRESHOLD;
+    }
+
+    private void adjustSizeHint(int size) {
+        if (size > sizeHint) {
+            sizeHint = size;
+        } else {
+            sizeHint = Math.max(MIN_SIZE_HINT, sizeHint - ((sizeHint - size) >> 4));
+        }
+    }
+}
@@ -0,0 +1,97 @@
+package shier.rpc.netty;
+
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
+import io.netty.channel.ChannelPromise;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 合并写出队列, 多个线程的写入先入队, 由IO线程统一写出, 每写出 maxWritesBeforeFlush 条或队列清空时flush一次
+ * <p>
+ * 同一个线程的写入顺序不变; 同一连接的所有写入都要经过队列, 否则无法保证与直接写出的消息的先后顺序
+ *
+ * @author liangliang.wei
+ * @description
+ * @create 2017-12-16 下午3:10
+ **/
+public class WriteQueue {
+
+    private final Channel channel;
+
+    private final int maxWritesBeforeFlush;
+
+    private final Queue<QueuedWrite> queue = new ConcurrentLinkedQueue<>();
+
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+
+    private final Runnable drainTask = this::drain;
+
+    /**
+     * @param channel
+     * @param maxWritesBeforeFlush 最多写出多少条flush一次
+     */
+    public WriteQueue(Channel channel, int maxWritesBeforeFlush) {
+        this.channel = channel;
+        this.maxWritesBeforeFlush = Math.max(1, maxWritesBeforeFlush);
+    }
+
+    /**
+     * 入队, 队列中没有待执行的写出任务时提交一个到IO线程
+     *
+     * @param msg
+     * @return 写出结果
+     */
+    public ChannelFuture write(Object msg) {
+        ChannelPromise promise = channel.newPromise();
+        queue.add(new QueuedWrite(msg, promise));
+        scheduleDrain();
+        return promise;
+    }
+
+    private void scheduleDrain() {
+        if (scheduled.compareAndSet(false, true)) {
+            channel.eventLoop().execute(drainTask);
+        }
+    }
+
+    /**
+     * 在IO线程中写出队列中的所有消息
+     */
+    private void drain() {
+        int writes = 0;
+        try {
+            QueuedWrite queuedWrite;
+            while ((queuedWrite = queue.poll()) != null) {
+                channel.write(queuedWrite.msg, queuedWrite.promise);
+                if (++writes == maxWritesBeforeFlush) {
+                    channel.flush();
+                    writes = 0;
+                }
+            }
+        } finally {
+            if (writes > 0) {
+                channel.flush();
+            }
+            scheduled.set(false);
+            //置位前入队的消息可能没有提交任务
+            if (!queue.isEmpty()) {
+                scheduleDrain();
+            }
+        }
+    }
+
+    private static class QueuedWrite {
+
+        private final Object msg;
+
+        private final ChannelPromise promise;
+
+        QueuedWrite(Object msg, ChannelPromise promise) {
+            this.msg = msg;
+            this.promise = promise;
+        }
+    }
+}
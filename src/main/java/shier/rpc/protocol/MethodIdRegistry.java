@@ -0,0 +1,70 @@
+package shier.rpc.protocol;
+
+import shier.rpc.spring.RpcProviderBean;
+import shier.rpc.utils.NameUtils;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 消费端方法id分配, 进程内唯一且只增不减
+ * <p>
+ * 同一个id在所有连接上代表同一个方法, 连接建立时把 id -> 方法名 的映射发送给服务端
+ *
+ * @author liangliang.wei
+ * @description
+ * @create 2017-12-13 上午10:30
+ **/
+public class MethodIdRegistry {
+
+    private static final Map<String, Integer> METHOD_ID_MAP = new ConcurrentHashMap<>();
+
+    private static volatile String[] methodNames = new String[0];
+
+    static {
+        register(NameUtils.buildServiceMethodName(RpcProviderBean.HEALTH, RpcProviderBean.HEALTH));
+    }
+
+    private MethodIdRegistry() {
+    }
+
+    /**
+     * 分配方法id, 已分配过直接返回
+     *
+     * @param serviceMethodName
+     * @return
+     */
+    public static synchronized int register(String serviceMethodName) {
+        Integer methodId = METHOD_ID_MAP.get(serviceMethodName);
+        if (methodId != null) {
+            return methodId;
+        }
+        String[] names = Arrays.copyOf(methodNames, methodNames.length + 1);
+        methodId = names.length - 1;
+        names[methodId] = serviceMethodName;
+        METHOD_ID_MAP.put(serviceMethodName, methodId);
+        methodNames = names;
+        return methodId;
+    }
+
+    /**
+     * 已分配的方法数
+     *
+     * @return
+     */
+    public static int size() {
+        return methodNames.length;
+    }
+
+    /**
+     * 获取 [from, to) 区间的方法名
+     *
+     * @param from
+     * @param to
+     * @return
+     */
+    public static String[] getMethodNames(int from, int to) {
+        return Arrays.copyOfRange(methodNames, from, to);
+    }
+}
@@ -0,0 +1,83 @@
+package shier.rpc.protocol;
+
+/**
+ * 传输协议定义
+ * <pre>
+ * +--------+-------+---------+-------+-----------+--------------+----------+------+
+ * | length | magic | version | flags | requestId | serializerId | methodId | body |
+ * |   4    |   2   |    1    |   1   |     8     |      1       |    4     |  n   |
+ * +--------+-------+---------+-------+-----------+--------------+----------+------+
+ * </pre>
+ * length为其后全部字节数; 请求body只包含参数, 响应body只包含结果或异常;
+ * methodId由客户端分配, 建立连接时通过握手消息告知服务端对应的方法名
+ * <p>
+ * 带 {@link #FLAG_ATTACHMENT} 时大字节数组不参与序列化, body改为:
+ * <pre>
+ * | bodyLength(4) | body | count(4) | (index(4), length(4)) * count | 附件原始字节 |
+ * </pre>
+ * index为参数下标, 响应结果为-1, 对应位置在body中序列化为null
+ * <p>
+ * 请求带 {@link #FLAG_DEADLINE} 时header之后先是4字节的超时时间(毫秒), 再是上述body
+ * <p>
+ * 服务端可以随时推送 {@link #FLAG_INVALIDATE} 消息, 客户端据此清空对应方法的结果缓存
+ *
+ * @author liangliang.wei
+ * @description
+ * @create 2017-12-13 上午10:12
+ **/
+public class RpcProtocol {
+
+    public static final short MAGIC = (short) 0x5352;
+
+    public static final byte VERSION = 1;
+
+    /**
+     * magic 到 methodId 的长度
+     */
+    public static final int HEADER_LENGTH = 17;
+
+    public static final int LENGTH_FIELD_LENGTH = 4;
+
+    /**
+     * 响应消息
+     */
+    public static final byte FLAG_RESPONSE = 0x01;
+
+    /**
+     * 响应为异常
+     */
+    public static final byte FLAG_ERROR = 0x02;
+
+    /**
+     * 方法握手消息, methodId为起始id, body为方法名数组
+     */
+    public static final byte FLAG_HANDSHAKE = 0x04;
+
+    /**
+     * 携带字节数组附件
+     */
+    public static final byte FLAG_ATTACHMENT = 0x08;
+
+    /**
+     * 服务端繁忙, 请求未执行, 与 {@link #FLAG_ERROR} 一起出现, 没有body
+     */
+    public static final byte FLAG_BUSY = 0x10;
+
+    /**
+     * 请求携带调用方的超时时间, 服务端丢弃已超时的请求
+     */
+    public static final byte FLAG_DEADLINE = 0x20;
+
+    /**
+     * 服务端主动推送的缓存失效通知, 与 {@link #FLAG_RESPONSE} 一起出现, requestId为0, body为服务方法名数组
+     */
+    public static final byte FLAG_INVALIDATE = 0x40;
+
+    /**
+     * 健康检查方法, 固定为0
+     */
+    public static final int HEALTH_METHOD_ID = 0;
+
+    private RpcProtocol() {
+    }
+}
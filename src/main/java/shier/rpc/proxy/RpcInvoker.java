@@ -0,0 +1,21 @@
+package shier.rpc.proxy;
+
+/**
+ * 生成的消费者存根通过该接口发起远程调用
+ *
+ * @author liangliang.wei
+ * @description
+ * @create 2017-12-17 下午2:10
+ **/
+public interface RpcInvoker {
+
+    /**
+     * 发起远程调用
+     *
+     * @param methodIndex 方法在 {@link RpcStubGenerator#getStubMethods(Class)} 中的下标, 生成存根时写为常量
+     * @param args        调用参数
+     * @return 调用结果, 返回基本类型的方法为null时存根返回默认值
+     * @throws Throwable
+     */
+    Object invoke(int methodIndex, Object[] args) throws Throwable;
+}
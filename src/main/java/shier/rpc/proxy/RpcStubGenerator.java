@@ -0,0 +1,136 @@
+package shier.rpc.proxy;
+
+import lombok.extern.slf4j.Slf4j;
+import net.sf.cglib.core.*;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Type;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 为服务接口生成消费者存根类
+ * <p>
+ * 存根直接实现接口, 每个方法把方法下标作为常量, 参数装箱为数组后调用 {@link RpcInvoker#invoke(int, Object[])},
+ * 调用时不经过 MethodInterceptor, 不需要按 Method 查找方法信息
+ * <pre>
+ * public final class TestService$$RpcStub implements TestService {
+ *     private final RpcInvoker invoker;
+ *     public Long addTest(TestDTO testDTO) {
+ *         return (Long) invoker.invoke(0, new Object[]{testDTO});
+ *     }
+ * }
+ * </pre>
+ *
+ * @author liangliang.wei
+ * @description
+ * @create 2017-12-17 下午2:10
+ **/
+@Slf4j
+public class RpcStubGenerator {
+
+    private static final String STUB_SUFFIX = "$$RpcStub";
+
+    private static final String INVOKER_FIELD = "invoker";
+
+    private static final Type INVOKER_TYPE = Type.getType(RpcInvoker.class);
+
+    private static final Signature INVOKE = new Signature("invoke", Type.getType(Object.class),
+            new Type[]{Type.INT_TYPE, Type.getType(Object[].class)});
+
+    private static final Signature CONSTRUCTOR = new Signature(Constants.CONSTRUCTOR_NAME, Type.VOID_TYPE, new Type[]{INVOKER_TYPE});
+
+    private static final Map<Class<?>, Constructor<?>> STUB_CONSTRUCTOR_MAP = new ConcurrentHashMap<>();
+
+    private RpcStubGenerator() {
+    }
+
+    /**
+     * 创建存根实例, 同一接口的存根类只生成一次
+     *
+     * @param interfaceClass 服务接口
+     * @param invoker        远程调用入口
+     * @param <T>
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> T newStub(Class<T> interfaceClass, RpcInvoker invoker) {
+        Constructor<?> constructor = STUB_CONSTRUCTOR_MAP.computeIfAbsent(interfaceClass, RpcStubGenerator::generate);
+        try {
+            return (T) constructor.newInstance(invoker);
+        } catch (Exception e) {
+            throw new IllegalStateException("create stub fail " + interfaceClass.getName(), e);
+        }
+    }
+
+    /**
+     * 存根实现的方法, 去掉静态方法和重复签名后按名称和描述符排序, 数组下标即为存根中的方法下标
+     *
+     * @param interfaceClass
+     * @return
+     */
+    public static Method[] getStubMethods(Class<?> interfaceClass) {
+        Map<String, Method> methodMap = new TreeMap<>();
+        for (Method method : interfaceClass.getMethods()) {
+            if (!Modifier.isStatic(method.getModifiers())) {
+                methodMap.putIfAbsent(method.getName() + Type.getMethodDescriptor(method), method);
+            }
+        }
+        return methodMap.values().toArray(new Method[0]);
+    }
+
+    private static Constructor<?> generate(Class<?> interfaceClass) {
+        if (!interfaceClass.isInterface()) {
+            throw new IllegalArgumentException(interfaceClass.getName() + " is not interface");
+        }
+        String className = interfaceClass.getName() + STUB_SUFFIX;
+        ClassWriter classWriter = new ClassWriter(ClassWriter.COMPUTE_FRAMES);
+        ClassEmitter ce = new ClassEmitter(classWriter);
+        ce.begin_class(Constants.V1_8, Constants.ACC_PUBLIC | Constants.ACC_FINAL, className, Constants.TYPE_OBJECT,
+                new Type[]{Type.getType(interfaceClass)}, Constants.SOURCE_FILE);
+        ce.declare_field(Constants.ACC_PRIVATE | Constants.ACC_FINAL, INVOKER_FIELD, INVOKER_TYPE, null);
+
+        //构造方法
+        CodeEmitter e = ce.begin_method(Constants.ACC_PUBLIC, CONSTRUCTOR, null);
+        e.load_this();
+        e.super_invoke_constructor();
+        e.load_this();
+        e.load_arg(0);
+        e.putfield(INVOKER_FIELD);
+        e.return_value();
+        e.end_method();
+
+        //接口方法: return (R) invoker.invoke(index, new Object[]{args});
+        Method[] methods = getStubMethods(interfaceClass);
+        for (int i = 0; i < methods.length; i++) {
+            MethodInfo methodInfo = ReflectUtils.getMethodInfo(methods[i]);
+            e = EmitUtils.begin_method(ce, methodInfo, Constants.ACC_PUBLIC);
+            e.load_this();
+            e.getfield(INVOKER_FIELD);
+            e.push(i);
+            e.create_arg_array();
+            e.invoke_interface(INVOKER_TYPE, INVOKE);
+            Type returnType = methodInfo.getSignature().getReturnType();
+            if (Type.VOID_TYPE.equals(returnType)) {
+                e.pop();
+            } else {
+                e.unbox_or_zero(returnType);
+            }
+            e.return_value();
+            e.end_method();
+        }
+        ce.end_class();
+
+        try {
+            Class<?> stubClass = ReflectUtils.defineClass(className, classWriter.toByteArray(), interfaceClass.getClassLoader());
+            log.info("RpcStubGenerator.generate {} methods={}", className, methods.length);
+            return stubClass.getConstructor(RpcInvoker.class);
+        } catch (Exception ex) {
+            throw new IllegalStateException("generate stub fail " + interfaceClass.getName(), ex);
+        }
+    }
+}
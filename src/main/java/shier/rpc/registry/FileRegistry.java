@@ -0,0 +1,236 @@
+package shier.rpc.registry;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * 基于目录的注册中心, 同一台机器上的多个进程共享, 用于本机的多提供者测试和基准测试
+ * <p>
+ * 每个服务一个文件 serviceName.providers, 每行一个地址; 监控中心地址保存在 center 文件中.
+ * 写入时持有目录下 .lock 文件的锁, 先写临时文件再原子替换; 一个后台线程监听目录变化,
+ * 并每隔 {@link #CHECK_INTERVAL} 毫秒核对一次, 地址变化在该线程中按顺序通知
+ *
+ * @author liangliang.wei
+ * @description
+ * @create 2017-12-19 下午4:05
+ **/
+@Slf4j
+public class FileRegistry implements Registry {
+
+    public static long CHECK_INTERVAL = 1000;
+
+    private static final String PROVIDERS_SUFFIX = ".providers";
+
+    private static final String CENTER = "center";
+
+    private static final String LOCK = ".lock";
+
+    /**
+     * 同一进程内的多个实例共用目录时, 文件锁不能重复获取
+     */
+    private static final Object JVM_LOCK = new Object();
+
+    private final Path directory;
+
+    private final WatchService watchService;
+
+    private final Thread watchThread;
+
+    private final Map<String, List<NotifyListener>> listenerMap = new HashMap<>();
+
+    /**
+     * 每个被监听服务最近一次通知的地址
+     */
+    private final Map<String, List<String>> notifiedMap = new HashMap<>();
+
+    /**
+     * 本实例注册的服务提供者, 关闭时注销
+     */
+    private final Map<String, Set<String>> registeredMap = new ConcurrentHashMap<>();
+
+    private volatile boolean closed;
+
+    public FileRegistry(String directory) {
+        try {
+            this.directory = Files.createDirectories(Paths.get(directory));
+            this.watchService = FileSystems.getDefault().newWatchService();
+            this.directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+        } catch (IOException e) {
+            throw new IllegalStateException("FileRegistry init fail directory=" + directory, e);
+        }
+        watchThread = new Thread(this::watch, "shier-rpc-file-registry");
+        watchThread.setDaemon(true);
+        watchThread.start();
+        log.info("FileRegistry directory={}", this.directory);
+    }
+
+    @Override
+    public void register(String serviceName, String address) {
+        registeredMap.computeIfAbsent(serviceName, key -> ConcurrentHashMap.newKeySet()).add(address);
+        update(serviceName + PROVIDERS_SUFFIX, lines -> {
+            if (!lines.contains(address)) {
+                lines.add(address);
+            }
+        });
+        log.info("FileRegistry.register serviceName={} address={}", serviceName, address);
+    }
+
+    @Override
+    public void unregister(String serviceName, String address) {
+        Set<String> addressSet = registeredMap.get(serviceName);
+        if (addressSet != null) {
+            addressSet.remove(address);
+        }
+        update(serviceName + PROVIDERS_SUFFIX, lines -> lines.remove(address));
+        log.info("FileRegistry.unregister serviceName={} address={}", serviceName, address);
+    }
+
+    @Override
+    public List<String> subscribe(String serviceName, NotifyListener listener) {
+        synchronized (this) {
+            listenerMap.computeIfAbsent(serviceName, key -> new ArrayList<>()).add(listener);
+            List<String> addressList = readLines(serviceName + PROVIDERS_SUFFIX);
+            notifiedMap.put(serviceName, addressList);
+            return addressList;
+        }
+    }
+
+    @Override
+    public void registerCenter(String address) {
+        update(CENTER, lines -> {
+            lines.clear();
+            lines.add(address);
+        });
+    }
+
+    @Override
+    public void cancelCenter() {
+        update(CENTER, List::clear);
+    }
+
+    @Override
+    public String getCenterAddress() {
+        List<String> lines = readLines(CENTER);
+        return lines.isEmpty() ? null : lines.get(0);
+    }
+
+    @Override
+    public void close() {
+        for (Map.Entry<String, Set<String>> entry : registeredMap.entrySet()) {
+            for (String address : new ArrayList<>(entry.getValue())) {
+                unregister(entry.getKey(), address);
+            }
+        }
+        closed = true;
+        watchThread.interrupt();
+        try {
+            watchService.close();
+        } catch (IOException e) {
+            log.error("FileRegistry.close", e);
+        }
+    }
+
+    /**
+     * 持有文件锁修改文件内容
+     *
+     * @param fileName
+     * @param modifier
+     */
+    private void update(String fileName, Consumer<List<String>> modifier) {
+        synchronized (JVM_LOCK) {
+            try (FileChannel lockChannel = FileChannel.open(directory.resolve(LOCK),
+                    StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+                FileLock lock = lockChannel.lock();
+                try {
+                    List<String> lines = new ArrayList<>(readLines(fileName));
+                    modifier.accept(lines);
+                    Path tmp = directory.resolve(fileName + ".tmp");
+                    Files.write(tmp, lines, StandardCharsets.UTF_8);
+                    Files.move(tmp, directory.resolve(fileName), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                } finally {
+                    lock.release();
+                }
+            } catch (IOException e) {
+                throw new IllegalStateException("FileRegistry update fail file=" + fileName, e);
+            }
+        }
+    }
+
+    private List<String> readLines(String fileName) {
+        Path path = directory.resolve(fileName);
+        if (!Files.exists(path)) {
+            return Collections.emptyList();
+        }
+        try {
+            List<String> lines = new ArrayList<>();
+            for (String line : Files.readAllLines(path, StandardCharsets.UTF_8)) {
+                line = line.trim();
+                if (!line.isEmpty() && !line.startsWith("#")) {
+                    lines.add(line);
+                }
+            }
+            return Collections.unmodifiableList(lines);
+        } catch (NoSuchFileException e) {
+            return Collections.emptyList();
+        } catch (IOException e) {
+            throw new IllegalStateException("FileRegistry read fail file=" + fileName, e);
+        }
+    }
+
+    /**
+     * 后台线程, 目录有变化或到达核对间隔时比较所有被监听服务的地址
+     */
+    private void watch() {
+        while (!closed) {
+            try {
+                WatchKey watchKey = watchService.poll(CHECK_INTERVAL, TimeUnit.MILLISECONDS);
+                if (watchKey != null) {
+                    watchKey.pollEvents();
+                    watchKey.reset();
+                }
+                check();
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                return;
+            } catch (Exception e) {
+                log.error("FileRegistry.watch", e);
+            }
+        }
+    }
+
+    private void check() {
+        Map<String, List<String>> changedMap = new HashMap<>();
+        Map<String, List<NotifyListener>> listenersMap = new HashMap<>();
+        synchronized (this) {
+            for (Map.Entry<String, List<NotifyListener>> entry : listenerMap.entrySet()) {
+                String serviceName = entry.getKey();
+                List<String> addressList = readLines(serviceName + PROVIDERS_SUFFIX);
+                if (!addressList.equals(notifiedMap.get(serviceName))) {
+                    notifiedMap.put(serviceName, addressList);
+                    changedMap.put(serviceName, addressList);
+                    listenersMap.put(serviceName, new ArrayList<>(entry.getValue()));
+                }
+            }
+        }
+        //在锁外回调, 避免与监听方的锁互相等待
+        for (Map.Entry<String, List<String>> entry : changedMap.entrySet()) {
+            log.info("FileRegistry serviceName={} change:{}", entry.getKey(), entry.getValue());
+            for (NotifyListener listener : listenersMap.get(entry.getKey())) {
+                try {
+                    listener.notify(entry.getKey(), entry.getValue());
+                } catch (Exception e) {
+                    log.error("FileRegistry.notify fail serviceName={}", entry.getKey(), e);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,104 @@
+package shier.rpc.registry;
+
+import io.netty.util.concurrent.DefaultThreadFactory;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * 进程内注册中心, 用于测试和基准测试, 不依赖外部服务
+ * <p>
+ * 同一个实例注入到多个 RpcConfigBean 中即可在一个进程内运行多个提供者和消费者; 调用 {@link #unregister(String, String)}
+ * 可以模拟提供者下线. 地址变化在单独的通知线程中按顺序回调
+ *
+ * @author liangliang.wei
+ * @description
+ * @create 2017-12-19 下午3:20
+ **/
+@Slf4j
+public class MemoryRegistry implements Registry {
+
+    private final Map<String, Set<String>> addressMap = new HashMap<>();
+
+    private final Map<String, List<NotifyListener>> listenerMap = new HashMap<>();
+
+    private final ExecutorService notifyExecutor = Executors.newSingleThreadExecutor(
+            new DefaultThreadFactory("shier-rpc-memory-registry", true));
+
+    private volatile String centerAddress;
+
+    @Override
+    public synchronized void register(String serviceName, String address) {
+        if (addressMap.computeIfAbsent(serviceName, key -> new LinkedHashSet<>()).add(address)) {
+            log.info("MemoryRegistry.register serviceName={} address={}", serviceName, address);
+            fireChange(serviceName);
+        }
+    }
+
+    @Override
+    public synchronized void unregister(String serviceName, String address) {
+        Set<String> addressSet = addressMap.get(serviceName);
+        if (addressSet != null && addressSet.remove(address)) {
+            log.info("MemoryRegistry.unregister serviceName={} address={}", serviceName, address);
+            fireChange(serviceName);
+        }
+    }
+
+    @Override
+    public synchronized List<String> subscribe(String serviceName, NotifyListener listener) {
+        listenerMap.computeIfAbsent(serviceName, key -> new ArrayList<>()).add(listener);
+        return getAddressList(serviceName);
+    }
+
+    /**
+     * 在通知线程中回调, 调用方持有本实例的锁, 入队顺序即通知顺序
+     *
+     * @param serviceName
+     */
+    private void fireChange(String serviceName) {
+        List<NotifyListener> listeners = listenerMap.get(serviceName);
+        if (listeners == null || listeners.isEmpty()) {
+            return;
+        }
+        List<NotifyListener> listenerList = new ArrayList<>(listeners);
+        List<String> addressList = getAddressList(serviceName);
+        notifyExecutor.execute(() -> {
+            for (NotifyListener listener : listenerList) {
+                try {
+                    listener.notify(serviceName, addressList);
+                } catch (Exception e) {
+                    log.error("MemoryRegistry.notify fail serviceName={}", serviceName, e);
+                }
+            }
+        });
+    }
+
+    private List<String> getAddressList(String serviceName) {
+        Set<String> addressSet = addressMap.get(serviceName);
+        return addressSet == null ? Collections.emptyList() : Collections.unmodifiableList(new ArrayList<>(addressSet));
+    }
+
+    @Override
+    public void registerCenter(String address) {
+        centerAddress = address;
+    }
+
+    @Override
+    public void cancelCenter() {
+        centerAddress = null;
+    }
+
+    @Override
+    public String getCenterAddress() {
+        return centerAddress;
+    }
+
+    @Override
+    public synchronized void close() {
+        addressMap.clear();
+        listenerMap.clear();
+        notifyExecutor.shutdown();
+    }
+}
@@ -0,0 +1,21 @@
+package shier.rpc.registry;
+
+import java.util.List;
+
+/**
+ * 服务提供者地址变化通知
+ *
+ * @author liangliang.wei
+ * @description
+ * @create 2017-12-19 下午2:10
+ **/
+public interface NotifyListener {
+
+    /**
+     * 地址发生变化
+     *
+     * @param serviceName
+     * @param addressList 变化后的全部地址
+     */
+    void notify(String serviceName, List<String> addressList);
+}
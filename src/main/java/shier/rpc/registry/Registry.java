@@ -0,0 +1,64 @@
+package shier.rpc.registry;
+
+import java.util.List;
+
+/**
+ * 注册中心, 保存服务提供者地址和监控中心地址
+ * <p>
+ * 实现必须线程安全; 同一个实例的地址变化通知按发生顺序在同一个线程中回调, 回调中不能再调用注册中心的方法等待结果
+ *
+ * @author liangliang.wei
+ * @description
+ * @create 2017-12-19 下午2:10
+ **/
+public interface Registry {
+
+    /**
+     * 注册服务提供者, 注册中心关闭后由实现负责清除
+     *
+     * @param serviceName
+     * @param address     ip:port
+     */
+    void register(String serviceName, String address);
+
+    /**
+     * 注销服务提供者
+     *
+     * @param serviceName
+     * @param address
+     */
+    void unregister(String serviceName, String address);
+
+    /**
+     * 监听服务提供者地址变化并返回当前地址, 返回之后的每次变化都会通知listener
+     *
+     * @param serviceName
+     * @param listener
+     * @return 当前地址, 没有提供者时为空列表
+     */
+    List<String> subscribe(String serviceName, NotifyListener listener);
+
+    /**
+     * 注册服务监控中心
+     *
+     * @param address
+     */
+    void registerCenter(String address);
+
+    /**
+     * 注销服务监控中心
+     */
+    void cancelCenter();
+
+    /**
+     * 服务监控中心地址
+     *
+     * @return 没有时返回null
+     */
+    String getCenterAddress();
+
+    /**
+     * 关闭注册中心, 清除本实例注册的服务提供者
+     */
+    void close();
+}
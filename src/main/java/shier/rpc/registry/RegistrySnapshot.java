@@ -0,0 +1,114 @@
+package shier.rpc.registry;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * 注册中心本地快照, 保存每个服务最近一次的提供者地址
+ * <p>
+ * 启动时先按快照路由, 注册中心在后台核对; 注册中心不可用时也能启动. 文件为properties格式,
+ * key为服务名, value为逗号分隔的地址; 地址变化后延迟1秒合并写入, 先写临时文件再原子替换
+ *
+ * @author liangliang.wei
+ * @description
+ * @create 2017-12-19 上午10:30
+ **/
+@Slf4j
+public class RegistrySnapshot {
+
+    private static final long SAVE_DELAY_SECONDS = 1;
+
+    private final Path path;
+
+    private final ScheduledExecutorService scheduledExecutor;
+
+    private final Map<String, List<String>> addressMap = new ConcurrentHashMap<>();
+
+    private final AtomicBoolean saveScheduled = new AtomicBoolean();
+
+    public RegistrySnapshot(String file, ScheduledExecutorService scheduledExecutor) {
+        this.path = Paths.get(file);
+        this.scheduledExecutor = scheduledExecutor;
+    }
+
+    /**
+     * 读取快照文件, 文件不存在或损坏时忽略
+     */
+    public void load() {
+        if (!Files.exists(path)) {
+            return;
+        }
+        Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            properties.load(reader);
+        } catch (IOException e) {
+            log.error("RegistrySnapshot.load fail path={}", path, e);
+            return;
+        }
+        for (String serviceName : properties.stringPropertyNames()) {
+            String value = properties.getProperty(serviceName).trim();
+            addressMap.put(serviceName, value.isEmpty() ? Collections.emptyList() : Arrays.asList(value.split(",")));
+        }
+        log.info("RegistrySnapshot.load path={} services={}", path, addressMap.size());
+    }
+
+    /**
+     * 快照中服务的提供者地址
+     *
+     * @param serviceName
+     * @return 快照中没有时返回null
+     */
+    public List<String> get(String serviceName) {
+        return addressMap.get(serviceName);
+    }
+
+    /**
+     * 更新服务的提供者地址, 稍后写入文件
+     *
+     * @param serviceName
+     * @param addresses
+     */
+    public void update(String serviceName, Collection<String> addresses) {
+        List<String> addressList = new ArrayList<>(addresses);
+        Collections.sort(addressList);
+        if (addressList.equals(addressMap.put(serviceName, addressList))) {
+            return;
+        }
+        if (saveScheduled.compareAndSet(false, true)) {
+            scheduledExecutor.schedule(this::save, SAVE_DELAY_SECONDS, TimeUnit.SECONDS);
+        }
+    }
+
+    /**
+     * 写入快照文件
+     */
+    public synchronized void save() {
+        saveScheduled.set(false);
+        Properties properties = new Properties();
+        addressMap.forEach((serviceName, addressList) -> properties.setProperty(serviceName, String.join(",", addressList)));
+        try {
+            Path parent = path.toAbsolutePath().getParent();
+            if (parent != null) {
+                Files.createDirectories(parent);
+            }
+            Path tmp = Paths.get(path.toString() + ".tmp");
+            try (Writer writer = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+                properties.store(writer, "shier-rpc registry snapshot");
+            }
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.error("RegistrySnapshot.save fail path={}", path, e);
+        }
+    }
+}
@@ -0,0 +1,273 @@
+package shier.rpc.registry;
+
+import com.alibaba.fastjson.JSON;
+import lombok.extern.slf4j.Slf4j;
+import org.I0Itec.zkclient.IZkChildListener;
+import org.I0Itec.zkclient.IZkDataListener;
+import org.I0Itec.zkclient.IZkStateListener;
+import org.I0Itec.zkclient.ZkClient;
+import org.I0Itec.zkclient.exception.ZkNodeExistsException;
+import org.I0Itec.zkclient.serialize.SerializableSerializer;
+import org.apache.zookeeper.CreateMode;
+import org.apache.zookeeper.Watcher;
+import org.apache.zookeeper.data.Stat;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * zookeeper注册中心, 地址变化在zkClient的事件线程中通知
+ *
+ * @author liangliang.wei
+ * @description
+ * @create 2017-12-19 下午2:30
+ **/
+@Slf4j
+public class ZookeeperRegistry implements Registry {
+
+    /**
+     * 注册方式: 每个服务一个持久节点, 数据为序列化的地址列表
+     */
+    public static final String MODE_LIST = "list";
+
+    /**
+     * 注册方式: 每个服务提供者一个临时子节点, 会话失效后自动删除, 消费者监听子节点变化
+     */
+    public static final String MODE_EPHEMERAL = "ephemeral";
+
+    private static final String ZK_PATH = "/rpcService_";
+
+    private static final String EPHEMERAL_ROOT = "/shier-rpc/";
+
+    private static final String PROVIDERS = "/providers";
+
+    private static final String CENTER = "center";
+
+    private final ZkClient zkClient;
+
+    private final boolean ephemeral;
+
+    /**
+     * 本实例注册的服务提供者, 临时节点在会话重建后重新创建, 关闭时注销
+     */
+    private final Map<String, Set<String>> registeredMap = new ConcurrentHashMap<>();
+
+    private volatile String centerAddress;
+
+    private volatile boolean centerSubscribed;
+
+    /**
+     * 连接zookeeper, 连接失败时抛出异常
+     *
+     * @param zookeeperAddress
+     * @param mode             {@link #MODE_LIST} / {@link #MODE_EPHEMERAL}
+     */
+    public ZookeeperRegistry(String zookeeperAddress, String mode) {
+        this.ephemeral = MODE_EPHEMERAL.equals(mode);
+        this.zkClient = new ZkClient(zookeeperAddress, 10000, 10000, new SerializableSerializer());
+        log.info("zkClient connected! address={}", zookeeperAddress);
+        if (ephemeral) {
+            zkClient.subscribeStateChanges(new EphemeralStateListener());
+        }
+    }
+
+    @Override
+    public void register(String serviceName, String address) {
+        registeredMap.computeIfAbsent(serviceName, key -> ConcurrentHashMap.newKeySet()).add(address);
+        if (ephemeral) {
+            String providersPath = EPHEMERAL_ROOT + serviceName + PROVIDERS;
+            zkClient.createPersistent(providersPath, true);
+            createEphemeral(providersPath + "/" + address);
+            return;
+        }
+
+        String servicePath = ZK_PATH + serviceName;
+        if (zkClient.exists(servicePath)) {
+            List<String> addressList = zkClient.readData(servicePath, new Stat());
+            if (!addressList.contains(address)) {
+                addressList.add(address);
+                zkClient.writeData(servicePath, addressList);
+            }
+        } else {
+            List<String> addressList = new ArrayList<>();
+            addressList.add(address);
+            zkClient.create(servicePath, addressList, CreateMode.PERSISTENT);//创建节点
+        }
+    }
+
+    @Override
+    public void unregister(String serviceName, String address) {
+        Set<String> addressSet = registeredMap.get(serviceName);
+        if (addressSet != null) {
+            addressSet.remove(address);
+        }
+        if (ephemeral) {
+            zkClient.delete(EPHEMERAL_ROOT + serviceName + PROVIDERS + "/" + address);
+            return;
+        }
+
+        String servicePath = ZK_PATH + serviceName;
+        List<String> addressList = zkClient.readData(servicePath, true);
+        if (addressList != null && addressList.remove(address)) {
+            zkClient.writeData(servicePath, addressList);
+        }
+    }
+
+    @Override
+    public List<String> subscribe(String serviceName, NotifyListener listener) {
+        if (ephemeral) {
+            String providersPath = EPHEMERAL_ROOT + serviceName + PROVIDERS;
+            zkClient.createPersistent(providersPath, true);
+            List<String> addressList = zkClient.subscribeChildChanges(providersPath, new IZkChildListener() {
+                @Override
+                public void handleChildChange(String parentPath, List<String> currentChilds) throws Exception {
+                    log.info("ZookeeperRegistry path:{} children:{}", parentPath, JSON.toJSONString(currentChilds));
+                    listener.notify(serviceName, currentChilds == null ? Collections.emptyList() : currentChilds);
+                }
+            });
+            return addressList == null ? Collections.emptyList() : addressList;
+        }
+
+        String servicePath = ZK_PATH + serviceName;
+        if (!zkClient.exists(servicePath)) {
+            try {
+                zkClient.create(servicePath, new ArrayList<>(), CreateMode.PERSISTENT);
+            } catch (ZkNodeExistsException e) {
+                //其他进程已创建
+            }
+        }
+        //先监听再读取, 避免两者之间的变化丢失
+        zkClient.subscribeDataChanges(servicePath, new IZkDataListener() {
+            @Override
+            public void handleDataChange(String s, Object o) throws Exception {
+                log.info("ZookeeperRegistry path:{} change:{}", s, JSON.toJSONString(o));
+                listener.notify(serviceName, toAddressList(o));
+            }
+
+            @Override
+            public void handleDataDeleted(String s) throws Exception {
+
+            }
+        });
+        List<String> addressList = zkClient.readData(servicePath, new Stat());
+        return addressList == null ? Collections.emptyList() : addressList;
+    }
+
+    /**
+     * 节点数据为序列化的地址列表, 逐个复制为字符串, 不做未检查的转换
+     *
+     * @param data
+     * @return
+     */
+    private static List<String> toAddressList(Object data) {
+        if (!(data instanceof List)) {
+            return Collections.emptyList();
+        }
+        List<String> addressList = new ArrayList<>();
+        for (Object address : (List<?>) data) {
+            addressList.add(String.valueOf(address));
+        }
+        return addressList;
+    }
+
+    @Override
+    public void registerCenter(String address) {
+        String centerPath = ZK_PATH + CENTER;
+        if (zkClient.exists(centerPath)) {
+            zkClient.writeData(centerPath, address);
+        } else {
+            zkClient.create(centerPath, address, CreateMode.PERSISTENT);//创建节点
+        }
+    }
+
+    @Override
+    public void cancelCenter() {
+        String centerPath = ZK_PATH + CENTER;
+        if (zkClient.exists(centerPath)) {
+            zkClient.writeData(centerPath, null);
+        }
+    }
+
+    @Override
+    public String getCenterAddress() {
+        if (centerSubscribed) {
+            return centerAddress;
+        }
+
+        String centerPath = ZK_PATH + CENTER;
+        if (!zkClient.exists(centerPath)) {
+            return null;
+        }
+        synchronized (this) {
+            if (!centerSubscribed) {
+                //监听节点变化
+                zkClient.subscribeDataChanges(centerPath, new IZkDataListener() {
+                    @Override
+                    public void handleDataChange(String s, Object o) throws Exception {
+                        centerAddress = (String) o;
+                        log.info("centerAddress change:{}", centerAddress);
+                    }
+
+                    @Override
+                    public void handleDataDeleted(String s) throws Exception {
+                        centerAddress = null;
+                    }
+                });
+                centerAddress = zkClient.readData(centerPath, true);
+                log.info("centerAddress:{}", centerAddress);
+                centerSubscribed = true;
+            }
+        }
+        return centerAddress;
+    }
+
+    @Override
+    public void close() {
+        for (Map.Entry<String, Set<String>> entry : registeredMap.entrySet()) {
+            for (String address : new ArrayList<>(entry.getValue())) {
+                try {
+                    unregister(entry.getKey(), address);
+                } catch (Exception e) {
+                    log.error("ZookeeperRegistry.close unregister fail serviceName={} address={}", entry.getKey(), address, e);
+                }
+            }
+        }
+        zkClient.close();
+    }
+
+    /**
+     * 创建临时节点; 进程快速重启时旧会话的节点可能还在, 删除后重新创建
+     *
+     * @param path
+     */
+    private void createEphemeral(String path) {
+        try {
+            zkClient.createEphemeral(path);
+        } catch (ZkNodeExistsException e) {
+            zkClient.delete(path);
+            zkClient.createEphemeral(path);
+        }
+    }
+
+    /**
+     * 会话失效后临时节点已被删除, 新会话建立时重新注册本实例的服务提供者
+     */
+    private class EphemeralStateListener implements IZkStateListener {
+
+        @Override
+        public void handleStateChanged(Watcher.Event.KeeperState state) throws Exception {
+            log.info("zkClient state change:{}", state);
+        }
+
+        @Override
+        public void handleNewSession() throws Exception {
+            for (Map.Entry<String, Set<String>> entry : registeredMap.entrySet()) {
+                for (String address : entry.getValue()) {
+                    String path = EPHEMERAL_ROOT + entry.getKey() + PROVIDERS + "/" + address;
+                    createEphemeral(path);
+                    log.info("EphemeralStateListener recreate path={}", path);
+                }
+            }
+        }
+    }
+}
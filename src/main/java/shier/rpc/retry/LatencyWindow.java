@@ -0,0 +1,87 @@
+package shier.rpc.retry;
+
+import shier.rpc.monitor.LatencyHistogram;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 单个方法最近的响应时间分布, 用于计算对冲请求的等待时间
+ * <p>
+ * 按 {@link #WINDOW_MILLIS} 分周期统计, 每个周期结束时由一个调用线程导出并计算分位值, 之后直接读取缓存的结果;
+ * 样本不足 {@link #MIN_SAMPLES} 的周期保留上一次的结果
+ *
+ * @author liangliang.wei
+ * @description
+ * @create 2017-12-24 上午11:00
+ **/
+public class LatencyWindow {
+
+    public static long WINDOW_MILLIS = 5000;
+
+    public static long MIN_SAMPLES = 100;
+
+    private final double percentile;
+
+    private final long minDelayMillis;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(LatencyHistogram.BUCKET_COUNT);
+
+    private final AtomicLong windowEnd = new AtomicLong(System.currentTimeMillis() + WINDOW_MILLIS);
+
+    private volatile long delayMillis;
+
+    /**
+     * @param percentile     对冲等待时间取第几百分位的响应时间, 为空时固定为minDelayMillis
+     * @param minDelayMillis 最短等待时间, 也是样本不足时的等待时间; 为空时样本不足不对冲
+     */
+    public LatencyWindow(Double percentile, Long minDelayMillis) {
+        this.percentile = percentile != null ? percentile : -1;
+        this.minDelayMillis = minDelayMillis != null ? minDelayMillis : 0;
+        this.delayMillis = minDelayMillis != null ? minDelayMillis : -1;
+    }
+
+    /**
+     * 记录一次成功调用的响应时间
+     *
+     * @param latencyNanos
+     */
+    public void record(long latencyNanos) {
+        if (percentile < 0) {
+            return;
+        }
+        buckets.incrementAndGet(LatencyHistogram.bucketIndex(TimeUnit.NANOSECONDS.toMicros(latencyNanos)));
+        rotate();
+    }
+
+    /**
+     * 对冲请求的等待时间
+     *
+     * @return 毫秒, 小于0时不对冲
+     */
+    public long getDelayMillis() {
+        if (percentile >= 0) {
+            rotate();
+        }
+        return delayMillis;
+    }
+
+    private void rotate() {
+        long now = System.currentTimeMillis();
+        long end = windowEnd.get();
+        if (now < end || !windowEnd.compareAndSet(end, now + WINDOW_MILLIS)) {
+            return;
+        }
+        long[] counts = new long[buckets.length()];
+        long total = 0;
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = buckets.getAndSet(i, 0);
+            total += counts[i];
+        }
+        if (total >= MIN_SAMPLES) {
+            long micros = LatencyHistogram.percentile(counts, total, percentile);
+            delayMillis = Math.max(minDelayMillis, TimeUnit.MICROSECONDS.toMillis(micros) + 1);
+        }
+    }
+}
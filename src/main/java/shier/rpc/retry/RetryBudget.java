@@ -0,0 +1,90 @@
+package shier.rpc.retry;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 重试预算, 同一个 RpcConfigBean 下的所有消费者共用, 限制重试和对冲请求占正常请求的比例
+ * <p>
+ * 每个请求存入 ratio 个令牌, 每次重试或对冲取出1个; 另外每秒补充 minPerSecond 个, 保证请求很少时也能重试.
+ * 令牌最多积累 max(minPerSecond * 10, 100) 个, 提供者整体故障时重试量被限制在正常请求的 ratio 倍以内, 不会形成重试风暴
+ *
+ * @author liangliang.wei
+ * @description
+ * @create 2017-12-24 上午10:30
+ **/
+public class RetryBudget {
+
+    /**
+     * 令牌以千分之一为单位计数
+     */
+    private static final long UNIT = 1000;
+
+    private final long depositUnits;
+
+    private final long refillUnits;
+
+    private final long maxUnits;
+
+    private final AtomicLong balance;
+
+    private final AtomicLong lastRefillSecond = new AtomicLong(System.currentTimeMillis() / 1000);
+
+    /**
+     * @param ratio        重试数占请求数的最大比例
+     * @param minPerSecond 每秒至少允许的重试数
+     */
+    public RetryBudget(double ratio, int minPerSecond) {
+        this.depositUnits = (long) (ratio * UNIT);
+        this.refillUnits = minPerSecond * UNIT;
+        this.maxUnits = Math.max(minPerSecond * 10L, 100L) * UNIT;
+        this.balance = new AtomicLong(refillUnits);
+    }
+
+    /**
+     * 记录一次请求(不含重试和对冲)
+     */
+    public void deposit() {
+        add(depositUnits);
+    }
+
+    /**
+     * 取出一次重试或对冲的令牌
+     *
+     * @return 预算不足时返回false, 不应再发起请求
+     */
+    public boolean tryWithdraw() {
+        long second = System.currentTimeMillis() / 1000;
+        long last = lastRefillSecond.get();
+        if (second != last && lastRefillSecond.compareAndSet(last, second)) {
+            add(refillUnits);
+        }
+        while (true) {
+            long current = balance.get();
+            if (current < UNIT) {
+                return false;
+            }
+            if (balance.compareAndSet(current, current - UNIT)) {
+                return true;
+            }
+        }
+    }
+
+    private void add(long units) {
+        while (true) {
+            long current = balance.get();
+            long next = Math.min(current + units, maxUnits);
+            if (next == current || balance.compareAndSet(current, next)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * 当前可用的重试次数
+     *
+     * @return
+     */
+    public long getBalance() {
+        return balance.get() / UNIT;
+    }
+}
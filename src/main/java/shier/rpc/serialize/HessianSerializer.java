@@ -0,0 +1,130 @@
+package shier.rpc.serialize;
+
+import com.caucho.hessian.io.Hessian2Input;
+import com.caucho.hessian.io.Hessian2Output;
+import com.caucho.hessian.io.SerializerFactory;
+import io.netty.buffer.ByteBuf;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Hessian2 序列化, 每个线程复用一组 Hessian2Output/Hessian2Input 及其读写 ByteBuf 的流,
+ * 所有线程共享 SerializerFactory 的类型缓存
+ *
+ * @author liangliang.wei
+ * @description
+ * @create 2017-12-14 下午2:20
+ **/
+public class HessianSerializer implements Serializer {
+
+    public static final byte ID = 1;
+
+    public static final String NAME = "hessian";
+
+    private static final SerializerFactory SERIALIZER_FACTORY = new SerializerFactory();
+
+    private static final ThreadLocal<HessianHolder> HOLDER = ThreadLocal.withInitial(HessianHolder::new);
+
+    @Override
+    public byte getId() {
+        return ID;
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public void serialize(Object object, ByteBuf out) throws Exception {
+        HessianHolder holder = HOLDER.get();
+        holder.outputStream.buf = out;
+        Hessian2Output output = holder.output;
+        output.init(holder.outputStream);
+        try {
+            output.writeObject(object);
+            output.flushBuffer();
+        } finally {
+            output.init(null);
+            holder.outputStream.buf = null;
+        }
+    }
+
+    @Override
+    public Object deserialize(ByteBuf in) throws Exception {
+        HessianHolder holder = HOLDER.get();
+        holder.inputStream.buf = in;
+        Hessian2Input input = holder.input;
+        input.init(holder.inputStream);
+        try {
+            return input.readObject();
+        } finally {
+            input.init(null);
+            holder.inputStream.buf = null;
+        }
+    }
+
+    private static class HessianHolder {
+
+        private final Hessian2Output output = new Hessian2Output(null);
+
+        private final Hessian2Input input = new Hessian2Input(null);
+
+        private final ByteBufWriter outputStream = new ByteBufWriter();
+
+        private final ByteBufReader inputStream = new ByteBufReader();
+
+        HessianHolder() {
+            output.setSerializerFactory(SERIALIZER_FACTORY);
+            input.setSerializerFactory(SERIALIZER_FACTORY);
+        }
+    }
+
+    /**
+     * 直接写入ByteBuf的可复用输出流
+     */
+    private static class ByteBufWriter extends OutputStream {
+
+        private ByteBuf buf;
+
+        @Override
+        public void write(int b) {
+            buf.writeByte(b);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            buf.writeBytes(b, off, len);
+        }
+    }
+
+    /**
+     * 直接读取ByteBuf的可复用输入流
+     */
+    private static class ByteBufReader extends InputStream {
+
+        private ByteBuf buf;
+
+        @Override
+        public int read() {
+            return buf.isReadable() ? buf.readByte() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            int readable = buf.readableBytes();
+            if (readable == 0) {
+                return len == 0 ? 0 : -1;
+            }
+            len = Math.min(readable, len);
+            buf.readBytes(b, off, len);
+            return len;
+        }
+
+        @Override
+        public int available() {
+            return buf.readableBytes();
+        }
+    }
+}
@@ -0,0 +1,98 @@
+package shier.rpc.serialize;
+
+import com.esotericsoftware.kryo.Kryo;
+import com.esotericsoftware.kryo.io.Input;
+import com.esotericsoftware.kryo.io.Output;
+import com.esotericsoftware.kryo.serializers.JavaSerializer;
+import io.netty.buffer.ByteBuf;
+import org.objenesis.strategy.StdInstantiatorStrategy;
+
+/**
+ * Kryo 序列化, 不需要预先注册类型; Kryo 实例及输入输出缓冲按线程复用
+ * <p>
+ * 异常类型包含不可变集合等字段, 使用Java原生序列化
+ *
+ * @author liangliang.wei
+ * @description
+ * @create 2017-12-14 下午2:40
+ **/
+public class KryoSerializer implements Serializer {
+
+    public static final byte ID = 2;
+
+    public static final String NAME = "kryo";
+
+    private static final int BUFFER_SIZE = 4096;
+
+    private static final ThreadLocal<KryoHolder> HOLDER = ThreadLocal.withInitial(KryoHolder::new);
+
+    @Override
+    public byte getId() {
+        return ID;
+    }
+
+    @Override
+    public String getName() {
+        return NAME;
+    }
+
+    @Override
+    public void serialize(Object object, ByteBuf out) throws Exception {
+        KryoHolder holder = HOLDER.get();
+        Output output = holder.output;
+        output.clear();
+        try {
+            holder.kryo.writeClassAndObject(output, object);
+            out.writeBytes(output.getBuffer(), 0, output.position());
+        } finally {
+            holder.kryo.reset();
+            if (output.getBuffer().length > BUFFER_SIZE) { //大对象不长期占用缓冲
+                output.setBuffer(new byte[BUFFER_SIZE], -1);
+            }
+        }
+    }
+
+    @Override
+    public Object deserialize(ByteBuf in) throws Exception {
+        KryoHolder holder = HOLDER.get();
+        Input input = holder.input;
+        int length = in.readableBytes();
+        int offset;
+        byte[] bytes;
+        if (in.hasArray()) {
+            bytes = in.array();
+            offset = in.arrayOffset() + in.readerIndex();
+        } else {
+            bytes = length > BUFFER_SIZE ? new byte[length] : holder.buffer;
+            offset = 0;
+            in.getBytes(in.readerIndex(), bytes, 0, length);
+        }
+        input.setBuffer(bytes, offset, length);
+        try {
+            Object object = holder.kryo.readClassAndObject(input);
+            in.skipBytes(input.position() - offset);
+            return object;
+        } finally {
+            holder.kryo.reset();
+            input.setBuffer(holder.buffer);
+        }
+    }
+
+    private static class KryoHolder {
+
+        private final Kryo kryo = new Kryo();
+
+        private final Output output = new Output(BUFFER_SIZE, -1);
+
+        private final Input input = new Input();
+
+        private final byte[] buffer = new byte[BUFFER_SIZE];
+
+        KryoHolder() {
+            kryo.setRegistrationRequired(false);
+            kryo.setReferences(true);
+            kryo.setInstantiatorStrategy(new Kryo.DefaultInstantiatorStrategy(new StdInstantiatorStrategy()));
+            kryo.addDefaultSerializer(Throwable.class, JavaSerializer.class);
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package shier.rpc.serialize;
+
+import io.netty.buffer.ByteBuf;
+
+/**
+ * 序列化扩展点
+ * <p>
+ * 自定义实现通过 META-INF/services/shier.rpc.serialize.Serializer 注册, id 不能与已有实现重复;
+ * 实现必须线程安全, 同一个实例会被所有IO线程和业务线程共享
+ *
+ * @author liangliang.wei
+ * @description
+ * @create 2017-12-14 下午2:05
+ **/
+public interface Serializer {
+
+    /**
+     * 协议头中的序列化id
+     *
+     * @return
+     */
+    byte getId();
+
+    /**
+     * 配置中使用的名称
+     *
+     * @return
+     */
+    String getName();
+
+    /**
+     * 序列化并写入out
+     *
+     * @param object
+     * @param out
+     * @throws Exception
+     */
+    void serialize(Object object, ByteBuf out) throws Exception;
+
+    /**
+     * 从in中读取并反序列化, 读取完成后in的readerIndex需要移动到对象结尾
+     *
+     * @param in
+     * @return
+     * @throws Exception
+     */
+    Object deserialize(ByteBuf in) throws Exception;
+}
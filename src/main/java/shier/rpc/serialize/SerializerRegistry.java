@@ -0,0 +1,69 @@
+package shier.rpc.serialize;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Map;
+import java.util.ServiceLoader;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * 序列化实现注册表, 内置 hessian/kryo, 其余通过 {@link ServiceLoader} 加载
+ *
+ * @author liangliang.wei
+ * @description
+ * @create 2017-12-14 下午3:00
+ **/
+@Slf4j
+public class SerializerRegistry {
+
+    public static final String DEFAULT = HessianSerializer.NAME;
+
+    private static final Serializer[] SERIALIZERS = new Serializer[256];
+
+    private static final Map<String, Serializer> SERIALIZER_NAME_MAP = new ConcurrentHashMap<>();
+
+    static {
+        register(new HessianSerializer());
+        register(new KryoSerializer());
+        for (Serializer serializer : ServiceLoader.load(Serializer.class)) {
+            register(serializer);
+        }
+    }
+
+    private SerializerRegistry() {
+    }
+
+    private static void register(Serializer serializer) {
+        int index = serializer.getId() & 0xFF;
+        if (SERIALIZERS[index] != null) {
+            throw new IllegalStateException("serializer id " + serializer.getId() + " repeat: " + serializer.getName());
+        }
+        SERIALIZERS[index] = serializer;
+        SERIALIZER_NAME_MAP.put(serializer.getName(), serializer);
+        log.info("SerializerRegistry.register id={} name={}", serializer.getId(), serializer.getName());
+    }
+
+    /**
+     * 按协议头中的id获取
+     *
+     * @param id
+     * @return 不存在返回null
+     */
+    public static Serializer getSerializer(byte id) {
+        return SERIALIZERS[id & 0xFF];
+    }
+
+    /**
+     * 按配置名称获取
+     *
+     * @param name
+     * @return
+     */
+    public static Serializer getSerializer(String name) {
+        Serializer serializer = SERIALIZER_NAME_MAP.get(name);
+        if (serializer == null) {
+            throw new IllegalArgumentException("unknown serializer " + name);
+        }
+        return serializer;
+    }
+}
@@ -1,26 +1,28 @@
 package shier.rpc.spring;
 
 import com.alibaba.fastjson.JSON;
+import io.netty.channel.EventLoopGroup;
+import io.netty.util.concurrent.DefaultThreadFactory;
 import lombok.extern.slf4j.Slf4j;
-import org.I0Itec.zkclient.IZkDataListener;
-import org.I0Itec.zkclient.ZkClient;
-import org.I0Itec.zkclient.serialize.SerializableSerializer;
-import org.apache.zookeeper.CreateMode;
-import org.apache.zookeeper.data.Stat;
-import shier.rpc.monitor.Monitor;
-import shier.rpc.monitor.Report;
+import shier.rpc.monitor.MetricsHttpServer;
+import shier.rpc.monitor.MetricsReporter;
+import shier.rpc.netty.NettyTransport;
 import shier.rpc.netty.RpcNettyClient;
+import shier.rpc.registry.NotifyListener;
+import shier.rpc.registry.Registry;
+import shier.rpc.registry.RegistrySnapshot;
+import shier.rpc.registry.ZookeeperRegistry;
+import shier.rpc.retry.RetryBudget;
 
 import javax.annotation.PostConstruct;
-import java.io.IOException;
-import java.io.OutputStream;
-import java.net.HttpURLConnection;
-import java.net.URL;
+import javax.annotation.PreDestroy;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
-import java.util.stream.Collectors;
 
 /**
  * @author liangliang.wei
@@ -34,9 +36,30 @@ public class RpcConfigBean {
 
     public static Integer RPC_DECODER_MAX_MAX_FRAME_LENGTH = Integer.MAX_VALUE;
 
-    private static final String ZK_PATH = "/rpcService_";
+    /**
+     * 不小于该长度的byte[]参数和结果以附件形式传输, 不经过序列化
+     */
+    public static Integer ATTACHMENT_THRESHOLD = 8 * 1024;
+
+    /**
+     * 消费者初始化时等待连接池建立的最长时间(毫秒)
+     */
+    public static Integer WARM_UP_TIMEOUT = 3000;
+
+    /**
+     * 注册方式: 每个服务一个持久节点, 数据为序列化的地址列表
+     */
+    public static final String REGISTRY_LIST = ZookeeperRegistry.MODE_LIST;
 
-    private static final String CENTER = "center";
+    /**
+     * 注册方式: 每个服务提供者一个临时子节点, 会话失效后自动删除, 消费者监听子节点变化
+     */
+    public static final String REGISTRY_EPHEMERAL = ZookeeperRegistry.MODE_EPHEMERAL;
+
+    /**
+     * 后台连接注册中心失败后的重试间隔(毫秒)
+     */
+    public static Integer REGISTRY_RETRY_INTERVAL = 5000;
 
     private String zookeeperAddress;
 
@@ -46,50 +69,316 @@ public class RpcConfigBean {
 
     private String centerAddress;
 
-    private ZkClient zkClient;
-    private Map<String, RpcNettyClient> rpcNettyClientMap = new HashMap<>();
+    /**
+     * 供本地采集程序拉取统计的HTTP端口, 开启上报时生效; 为空时不开启
+     */
+    private Integer metricsPort;
+
+    private MetricsReporter metricsReporter;
+
+    private MetricsHttpServer metricsHttpServer;
+
+    /**
+     * 上报单独使用一个线程, 推送超时不影响快照保存等其他定时任务
+     */
+    private ScheduledExecutorService reportExecutor;
+
+    /**
+     * 每个服务提供者地址的连接数
+     */
+    private Integer connections = 1;
+
+    /**
+     * 连接选择方式 roundRobin / leastPending
+     */
+    private String connectionSelect = RpcNettyClient.SELECT_ROUND_ROBIN;
+
+    /**
+     * 所有客户端共享的IO线程数, 0为netty默认的cpu核数*2
+     */
+    private Integer ioThreads = 0;
+
+    /**
+     * 是否使用native epoll, 仅Linux可用, 不可用时退回NIO
+     */
+    private Boolean epoll = Boolean.FALSE;
+
+    /**
+     * 合并写出时每多少条消息flush一次, 客户端和服务端共用; 0为关闭, 每条消息单独flush
+     */
+    private Integer writeBatchSize = 0;
+
+    /**
+     * 服务提供者权重, key为地址 ip:port, 未配置的为 {@link RpcNettyClient#DEFAULT_WEIGHT}
+     */
+    private Map<String, Integer> providerWeights = new HashMap<>();
+
+    /**
+     * 是否为每个服务提供者开启熔断, 阈值见 {@link shier.rpc.netty.CircuitBreaker}
+     */
+    private Boolean circuitBreaker = Boolean.TRUE;
+
+    /**
+     * 客户端连接空闲多久(毫秒)后发送心跳, 0为不发送; 应小于服务端的idleTimeout
+     */
+    private Integer heartbeatInterval = 3000;
+
+    /**
+     * 心跳超时(毫秒), 超时后关闭连接并重连
+     */
+    private Integer heartbeatTimeout = 1000;
+
+    /**
+     * 重试和对冲请求数占正常请求数的最大比例, 所有消费者共用
+     */
+    private Double retryBudgetRatio = 0.1;
+
+    /**
+     * 每秒至少允许的重试和对冲数
+     */
+    private Integer retryBudgetMinPerSecond = 10;
+
+    private RetryBudget retryBudget;
+
+    private EventLoopGroup eventLoopGroup;
+
+    /**
+     * zookeeper注册方式, 未配置 registry 时使用
+     */
+    private String registryMode = REGISTRY_LIST;
+
+    /**
+     * 注册中心, 未配置时按 zookeeperAddress 创建 {@link ZookeeperRegistry}; 配置的注册中心由创建方关闭
+     */
+    private Registry registry;
+
+    private boolean ownRegistry;
+
+    /**
+     * 注册中心本地快照文件, 配置后消费者先按快照中的地址路由, 注册中心在后台连接和核对; 为空时不使用快照
+     */
+    private String snapshotFile;
+
+    private RegistrySnapshot registrySnapshot;
+
+    private volatile CompletableFuture<Registry> registryFuture;
+
+    /**
+     * 后台连接注册中心和查询服务提供者地址, 多个消费者的查询并行执行
+     */
+    private ExecutorService registryExecutor;
+    private Map<String, RpcNettyClient> rpcNettyClientMap = new ConcurrentHashMap<>();
+
+    /**
+     * 每个地址被多少个服务使用, 同一提供者地址上的多个服务共用一个客户端
+     */
+    private Map<String, Integer> clientRefCountMap = new HashMap<>();
 
     private ScheduledExecutorService singleThreadScheduledExecutor = Executors.newSingleThreadScheduledExecutor();
 
     @PostConstruct
     public void init() {
-        zkClient = new ZkClient(zookeeperAddress, 10000, 10000, new SerializableSerializer());
-        log.info("zkClient connected! address={}", zookeeperAddress);
+        if (snapshotFile != null && !"".equals(snapshotFile.trim())) {
+            registrySnapshot = new RegistrySnapshot(snapshotFile.trim(), singleThreadScheduledExecutor);
+            registrySnapshot.load();
+        }
+        registryExecutor = Executors.newFixedThreadPool(4, new DefaultThreadFactory("shier-rpc-registry", true));
+        if (registry != null) {
+            registryFuture = CompletableFuture.completedFuture(registry);
+        } else if (registrySnapshot != null) {
+            ownRegistry = true;
+            registryFuture = CompletableFuture.supplyAsync(this::connectRegistry, registryExecutor);
+        } else {
+            ownRegistry = true;
+            registryFuture = CompletableFuture.completedFuture(new ZookeeperRegistry(zookeeperAddress, registryMode));
+        }
+
+        eventLoopGroup = NettyTransport.newEventLoopGroup(ioThreads, epoll, "shier-rpc-client");
+        retryBudget = new RetryBudget(retryBudgetRatio, retryBudgetMinPerSecond);
 
         if (openReport) {
-            ReportHandler reportHandler = new ReportHandler();
-            singleThreadScheduledExecutor.scheduleAtFixedRate(reportHandler, reportRate, reportRate, TimeUnit.SECONDS);
+            metricsReporter = new MetricsReporter(this::reportCenterAddress);
+            reportExecutor = Executors.newSingleThreadScheduledExecutor(new DefaultThreadFactory("shier-rpc-report", true));
+            reportExecutor.scheduleAtFixedRate(metricsReporter, reportRate, reportRate, TimeUnit.SECONDS);
+            if (metricsPort != null) {
+                metricsHttpServer = new MetricsHttpServer(metricsPort, metricsReporter);
+                try {
+                    metricsHttpServer.start();
+                } catch (Exception e) {
+                    log.error("MetricsHttpServer start fail port={}", metricsPort, e);
+                }
+            }
         }
 
     }
 
     /**
-     * 注册服务消费者
+     * 后台连接zookeeper, 失败后一直重试, 期间消费者使用快照中的地址
+     *
+     * @return
+     */
+    private Registry connectRegistry() {
+        while (true) {
+            try {
+                return new ZookeeperRegistry(zookeeperAddress, registryMode);
+            } catch (Exception e) {
+                log.warn("zkClient connect fail address={}, retry after {}ms", zookeeperAddress, REGISTRY_RETRY_INTERVAL, e);
+            }
+            try {
+                Thread.sleep(REGISTRY_RETRY_INTERVAL);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("zkClient connect interrupted", e);
+            }
+        }
+    }
+
+    /**
+     * 已连接的注册中心, 后台连接未完成时等待
+     *
+     * @return
+     */
+    private Registry getRegistry() {
+        return registryFuture.join();
+    }
+
+    /**
+     * 关闭所有客户端连接和共享的IO线程
+     */
+    @PreDestroy
+    public void destroy() {
+        if (metricsHttpServer != null) {
+            metricsHttpServer.close();
+        }
+        if (reportExecutor != null) {
+            //推送最后一个周期, 在关闭注册中心之前执行
+            reportExecutor.execute(metricsReporter);
+            reportExecutor.shutdown();
+            try {
+                reportExecutor.awaitTermination(MetricsReporter.CONNECT_TIMEOUT + MetricsReporter.READ_TIMEOUT, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        synchronized (RpcConfigBean.class) {
+            for (RpcNettyClient rpcNettyClient : rpcNettyClientMap.values()) {
+                rpcNettyClient.disConnect();
+            }
+            rpcNettyClientMap.clear();
+            clientRefCountMap.clear();
+        }
+        if (eventLoopGroup != null) {
+            eventLoopGroup.shutdownGracefully();
+        }
+        if (registryExecutor != null) {
+            registryExecutor.shutdownNow();
+        }
+        if (registrySnapshot != null) {
+            registrySnapshot.save();
+        }
+        if (ownRegistry) {
+            Registry connected = registryFuture.getNow(null);
+            if (connected != null) {
+                connected.close();
+            }
+        }
+        singleThreadScheduledExecutor.shutdown();
+    }
+
+    /**
+     * 注册服务消费者, 不等待注册中心
+     * <p>
+     * 地址查询和连接预热在 registryExecutor 上执行, 多个消费者bean并行查询; 消费者首次调用前等待查询完成({@link RpcConsumerMethodInterceptor#setReady}).
+     * 配置了快照时先按快照路由, 注册中心在后台核对
      *
      * @param serviceName
      * @param rpcConsumerMethodInterceptor
      */
     public void registerConsumer(String serviceName, RpcConsumerMethodInterceptor rpcConsumerMethodInterceptor) {
-        String servicePath = ZK_PATH + serviceName;
-        if (!zkClient.exists(servicePath)) {
-            zkClient.create(servicePath, new ArrayList<>(), CreateMode.PERSISTENT);
+        RegistryListener registryListener = new RegistryListener(serviceName, rpcConsumerMethodInterceptor);
+        List<String> snapshotAddressList = registrySnapshot == null ? null : registrySnapshot.get(serviceName);
+        CompletableFuture<Void> subscribed = registryFuture.thenAcceptAsync(connected -> subscribe(connected, serviceName, registryListener), registryExecutor);
+        CompletableFuture<Void> ready;
+        if (snapshotAddressList != null && !snapshotAddressList.isEmpty()) {
+            synchronized (RpcConfigBean.class) {
+                registryListener.updateAddressList(snapshotAddressList);
+            }
+            log.info("registerConsumer serviceName={} snapshot address={}", serviceName, JSON.toJSONString(snapshotAddressList));
+            ready = CompletableFuture.runAsync(() -> awaitWarmUp(rpcConsumerMethodInterceptor), registryExecutor);
+        } else {
+            ready = subscribed.thenRunAsync(() -> awaitWarmUp(rpcConsumerMethodInterceptor), registryExecutor);
         }
+        subscribed.exceptionally(e -> {
+            log.error("registerConsumer subscribe fail serviceName={}", serviceName, e);
+            return null;
+        });
+        rpcConsumerMethodInterceptor.setReady(ready);
+    }
 
-        List<String> addressList = zkClient.readData(servicePath, new Stat());
+    /**
+     * 监听服务提供者地址并读取当前地址; 查询在锁外执行, 只在替换路由快照时持有锁
+     *
+     * @param registry
+     * @param serviceName
+     * @param registryListener
+     */
+    private void subscribe(Registry registry, String serviceName, RegistryListener registryListener) {
+        List<String> addressList = registry.subscribe(serviceName, registryListener);
         log.info("registerConsumer serviceName={} address={}", serviceName, JSON.toJSONString(addressList));
-        if (addressList != null && !addressList.isEmpty()) {
-            for (String address : addressList) {
-                RpcNettyClient rpcNettyClient = rpcNettyClientMap.get(address);
-                if (rpcNettyClient == null) {
-                    rpcNettyClient = new RpcNettyClient(address);
-                    rpcNettyClient.init();
-                    rpcNettyClientMap.put(address, rpcNettyClient);
-                }
-                rpcConsumerMethodInterceptor.getRpcNettyClientList().add(rpcNettyClient);
+        synchronized (RpcConfigBean.class) {
+            //查询返回前已收到变更通知, 通知中的地址更新, 不再用查询结果覆盖
+            if (!registryListener.notified) {
+                registryListener.updateAddressList(addressList);
+            }
+        }
+    }
+
+    /**
+     * 并行等待消费者的所有连接建立
+     *
+     * @param rpcConsumerMethodInterceptor
+     */
+    private static void awaitWarmUp(RpcConsumerMethodInterceptor rpcConsumerMethodInterceptor) {
+        long deadline = System.currentTimeMillis() + WARM_UP_TIMEOUT;
+        for (RpcNettyClient rpcNettyClient : rpcConsumerMethodInterceptor.getRpcNettyClientList()) {
+            rpcNettyClient.awaitWarmUp(deadline - System.currentTimeMillis());
+        }
+    }
+
+    /**
+     * 获取地址对应的客户端并增加引用计数, 不存在时创建并发起连接, 不等待预热; 调用方持有 RpcConfigBean.class 锁
+     *
+     * @param address
+     * @return
+     */
+    private RpcNettyClient acquireClient(String address) {
+        RpcNettyClient rpcNettyClient = rpcNettyClientMap.get(address);
+        if (rpcNettyClient == null) {
+            rpcNettyClient = new RpcNettyClient(address, connections, connectionSelect, eventLoopGroup)
+                    .setWriteBatchSize(writeBatchSize)
+                    .setWeight(providerWeights.getOrDefault(address, RpcNettyClient.DEFAULT_WEIGHT))
+                    .setCircuitBreakerEnabled(Boolean.TRUE.equals(circuitBreaker))
+                    .setHeartbeat(heartbeatInterval, heartbeatTimeout);
+            rpcNettyClient.connect();
+            rpcNettyClientMap.put(address, rpcNettyClient);
+        }
+        clientRefCountMap.merge(address, 1, Integer::sum);
+        return rpcNettyClient;
+    }
+
+    /**
+     * 减少引用计数, 没有服务再使用该地址时断开连接; 调用方持有 RpcConfigBean.class 锁
+     *
+     * @param address
+     */
+    private void releaseClient(String address) {
+        Integer refCount = clientRefCountMap.computeIfPresent(address, (key, count) -> count > 1 ? count - 1 : null);
+        if (refCount == null) {
+            RpcNettyClient rpcNettyClient = rpcNettyClientMap.remove(address);
+            if (rpcNettyClient != null) {
+                rpcNettyClient.disConnect();
             }
         }
-        //监听消费的服务变化
-        zkClient.subscribeDataChanges(servicePath, new RpcZkListener(rpcConsumerMethodInterceptor, serviceName, addressList));
     }
 
     /**
@@ -99,18 +388,7 @@ public class RpcConfigBean {
      * @param address
      */
     public void registerProvider(String serviceName, String address) {
-        String servicePath = ZK_PATH + serviceName;
-        if (zkClient.exists(servicePath)) {
-            List<String> addressList = zkClient.readData(servicePath, new Stat());
-            if (!addressList.contains(address)) {
-                addressList.add(address);
-                zkClient.writeData(servicePath, addressList);
-            }
-        } else {
-            List<String> addressList = new ArrayList<>();
-            addressList.add(address);
-            zkClient.create(servicePath, addressList, CreateMode.PERSISTENT);//创建节点
-        }
+        getRegistry().register(serviceName, address);
         log.info("registerProvider serviceName={} address={}", serviceName, address);
     }
 
@@ -121,10 +399,7 @@ public class RpcConfigBean {
      * @param address
      */
     public void cancelProvider(String serviceName, String address) {
-        String servicePath = ZK_PATH + serviceName;
-        List<String> addressList = zkClient.readData(servicePath, new Stat());
-        addressList.remove(address);
-        zkClient.writeData(servicePath, addressList);
+        getRegistry().unregister(serviceName, address);
         log.info("cancelProvider serviceName={} address={}", serviceName, address);
     }
 
@@ -134,12 +409,7 @@ public class RpcConfigBean {
      * @param address
      */
     public void registerCenter(String address) {
-        String centerPath = ZK_PATH + CENTER;
-        if (zkClient.exists(centerPath)) {
-            zkClient.writeData(centerPath, address);
-        } else {
-            zkClient.create(centerPath, address, CreateMode.PERSISTENT);//创建节点
-        }
+        getRegistry().registerCenter(address);
     }
 
 
@@ -147,183 +417,217 @@ public class RpcConfigBean {
      * 注销服务监控中心
      */
     public void cancelCenter() {
-        String centerPath = ZK_PATH + CENTER;
-        if (zkClient.exists(centerPath)) {
-            zkClient.writeData(centerPath, null);
-        }
+        getRegistry().cancelCenter();
     }
 
     public String getCenterAddress() {
         if (centerAddress != null && !"".equals(centerAddress)) {
             return centerAddress;
         }
+        return getRegistry().getCenterAddress();
+    }
 
-        String centerPath = ZK_PATH + CENTER;
-        if (zkClient.exists(centerPath)) {
-            centerAddress = zkClient.readData(centerPath, new Stat());
-            log.info("centerAddress:{}", centerAddress);
-            //监听节点变化
-            zkClient.subscribeDataChanges(centerPath, new IZkDataListener() {
-                @Override
-                public void handleDataChange(String s, Object o) throws Exception {
-                    centerAddress = (String) o;
-                    log.info("centerAddress change:{}", centerAddress);
-                }
-
-                @Override
-                public void handleDataDeleted(String s) throws Exception {
-                    centerAddress = null;
-                }
-            });
+    /**
+     * 上报使用的监控中心地址, 注册中心还在后台连接时返回null, 不阻塞上报线程
+     *
+     * @return
+     */
+    private String reportCenterAddress() {
+        if (centerAddress != null && !"".equals(centerAddress)) {
             return centerAddress;
-        } else {
-            return null;
         }
+        Registry connected = registryFuture.getNow(null);
+        return connected != null ? connected.getCenterAddress() : null;
     }
 
-    public void setZookeeperAddress(String zookeeperAddress) {
-        this.zookeeperAddress = zookeeperAddress;
+    /**
+     * 运行时调整每个服务提供者地址的连接数
+     *
+     * @param connections
+     */
+    public void resizeConnections(int connections) {
+        synchronized (RpcConfigBean.class) {
+            this.connections = connections;
+            for (RpcNettyClient rpcNettyClient : rpcNettyClientMap.values()) {
+                rpcNettyClient.resize(connections);
+            }
+        }
     }
 
-    public void setOpenReport(Boolean openReport) {
-        this.openReport = openReport;
+    public void setConnections(Integer connections) {
+        this.connections = connections;
     }
 
-    public Boolean getOpenReport() {
-        return openReport;
+    public void setConnectionSelect(String connectionSelect) {
+        this.connectionSelect = connectionSelect;
     }
 
-    private class RpcZkListener implements IZkDataListener {
+    public void setIoThreads(Integer ioThreads) {
+        this.ioThreads = ioThreads;
+    }
 
-        private RpcConsumerMethodInterceptor rpcConsumerMethodInterceptor;
+    public void setEpoll(Boolean epoll) {
+        this.epoll = epoll;
+    }
 
-        private String serviceName;
+    public Boolean getEpoll() {
+        return epoll;
+    }
+
+    public void setWriteBatchSize(Integer writeBatchSize) {
+        this.writeBatchSize = writeBatchSize;
+    }
 
-        private List<String> addressList;
+    public Integer getWriteBatchSize() {
+        return writeBatchSize;
+    }
 
-        public RpcZkListener(RpcConsumerMethodInterceptor rpcConsumerMethodInterceptor, String serviceName, List<String> addressList) {
-            this.rpcConsumerMethodInterceptor = rpcConsumerMethodInterceptor;
-            this.serviceName = serviceName;
-            this.addressList = addressList;
+    public void setProviderWeights(Map<String, Integer> providerWeights) {
+        this.providerWeights = providerWeights;
+    }
+
+    /**
+     * 运行时调整服务提供者权重
+     *
+     * @param address
+     * @param weight
+     */
+    public void setProviderWeight(String address, int weight) {
+        synchronized (RpcConfigBean.class) {
+            providerWeights.put(address, weight);
+            RpcNettyClient rpcNettyClient = rpcNettyClientMap.get(address);
+            if (rpcNettyClient != null) {
+                rpcNettyClient.setWeight(weight);
+            }
         }
+    }
 
-        @Override
-        public void handleDataChange(String s, Object o) throws Exception {
+    public void setCircuitBreaker(Boolean circuitBreaker) {
+        this.circuitBreaker = circuitBreaker;
+    }
 
-            synchronized (RpcConfigBean.class) {
-                List<String> newAddressList = (List<String>) o;
-                log.info("RpcZkListener path:{} change:{}", s, JSON.toJSONString(newAddressList));
-                if (newAddressList == null) {
-                    newAddressList = new ArrayList<>();
-                }
+    public void setHeartbeatInterval(Integer heartbeatInterval) {
+        this.heartbeatInterval = heartbeatInterval;
+    }
 
-                if (addressList == null) {
-                    addressList = new ArrayList<>();
-                }
+    public void setHeartbeatTimeout(Integer heartbeatTimeout) {
+        this.heartbeatTimeout = heartbeatTimeout;
+    }
 
-                for (int i = addressList.size() - 1; i >= 0; i--) {
-                    String address = addressList.get(i);
-                    if (!newAddressList.contains(address)) { //有服务提供者下线
-                        addressList.remove(i);
-                        RpcNettyClient oldClient = rpcNettyClientMap.get(address);
-                        rpcNettyClientMap.remove(address);
-                        List<RpcNettyClient> rpcNettyClientList = rpcConsumerMethodInterceptor.getRpcNettyClientList().stream()
-                                .filter(rpcNettyClient -> !rpcNettyClient.getServiceAddress().equals(address)).collect(Collectors.toList());
-                        rpcConsumerMethodInterceptor.setRpcNettyClientList(rpcNettyClientList);
-                        if (oldClient != null) {
-                            oldClient.disConnect();
-                        }
-
-                    }
-                }
+    public void setRetryBudgetRatio(Double retryBudgetRatio) {
+        this.retryBudgetRatio = retryBudgetRatio;
+    }
 
-                for (String address : newAddressList) {
-                    if (!addressList.contains(address)) { //有新的服务提供者
-                        addressList.add(address);
-                        RpcNettyClient rpcNettyClient = rpcNettyClientMap.get(address);
-                        if (rpcNettyClient == null) {
-                            rpcNettyClient = new RpcNettyClient(address);
-                            rpcNettyClient.init();
-                            rpcNettyClientMap.put(address, rpcNettyClient);
-                        }
-                        rpcConsumerMethodInterceptor.getRpcNettyClientList().add(rpcNettyClient);
-                    }
-                }
-            }
+    public void setRetryBudgetMinPerSecond(Integer retryBudgetMinPerSecond) {
+        this.retryBudgetMinPerSecond = retryBudgetMinPerSecond;
+    }
 
+    public RetryBudget getRetryBudget() {
+        return retryBudget;
+    }
 
-        }
+    public void setRegistryMode(String registryMode) {
+        this.registryMode = registryMode;
+    }
 
-        @Override
-        public void handleDataDeleted(String s) throws Exception {
+    public void setRegistry(Registry registry) {
+        this.registry = registry;
+    }
 
-        }
+    public void setSnapshotFile(String snapshotFile) {
+        this.snapshotFile = snapshotFile;
     }
 
-    private class ReportHandler implements Runnable {
+    public void setZookeeperAddress(String zookeeperAddress) {
+        this.zookeeperAddress = zookeeperAddress;
+    }
 
+    public void setOpenReport(Boolean openReport) {
+        this.openReport = openReport;
+    }
 
-        @Override
-        public void run() {
+    public Boolean getOpenReport() {
+        return openReport;
+    }
 
-            try {
-                Map<String, Report> reportMap = Monitor.reportMap;
-                Monitor.reportMap = new HashMap<>();
+    public void setReportRate(Integer reportRate) {
+        this.reportRate = reportRate;
+    }
 
-                String centerAddress = getCenterAddress();
-                if (centerAddress == null || "".equals(centerAddress) || reportMap.size() == 0) {
-                    return;
-                }
+    public void setCenterAddress(String centerAddress) {
+        this.centerAddress = centerAddress;
+    }
 
-                Date now = new Date();
-                for (Map.Entry<String, Report> entry : reportMap.entrySet()) {
-                    entry.getValue().setEndTime(now);
-                }
+    public void setMetricsPort(Integer metricsPort) {
+        this.metricsPort = metricsPort;
+    }
 
-                this.postJson(centerAddress + "/report", JSON.toJSONString(reportMap));
-            } catch (Exception e) {
-                log.error("ReportHandler", e);
-            }
+    public MetricsReporter getMetricsReporter() {
+        return metricsReporter;
+    }
+
+    /**
+     * 监听服务提供者地址变化, 生成新的路由快照整体替换消费者的提供者列表, 调用线程读取时不需要加锁
+     */
+    private class RegistryListener implements NotifyListener {
+
+        private String serviceName;
+
+        private RpcConsumerMethodInterceptor rpcConsumerMethodInterceptor;
+
+        private Set<String> addressSet = new HashSet<>();
 
+        /**
+         * 是否已收到注册中心的变更通知, 在 RpcConfigBean.class 锁内读写
+         */
+        private boolean notified;
+
+        public RegistryListener(String serviceName, RpcConsumerMethodInterceptor rpcConsumerMethodInterceptor) {
+            this.serviceName = serviceName;
+            this.rpcConsumerMethodInterceptor = rpcConsumerMethodInterceptor;
         }
 
-        private void postJson(String url, String json) {
+        @Override
+        public void notify(String serviceName, List<String> addressList) {
+            synchronized (RpcConfigBean.class) {
+                notified = true;
+                updateAddressList(addressList);
+            }
+        }
 
-            HttpURLConnection conn = null;
-            OutputStream outputStream = null;
-            try {
-                URL realUrl = new URL(url);
-                // 打开和URL之间的连接
-                conn = (HttpURLConnection) realUrl.openConnection();
-                conn.setReadTimeout(3000);
-                conn.setConnectTimeout(1000);
-                conn.setRequestMethod("POST");
-                conn.setDoOutput(true);
-                conn.setDoInput(true);
-                conn.setUseCaches(false);
-                conn.setRequestProperty("Content-type", "application/json;chartset=utf-8");
-                conn.connect();
-
-                outputStream = conn.getOutputStream();
-                outputStream.write(json.getBytes());
-                outputStream.flush();
-                int code = conn.getResponseCode();
+        /**
+         * 与当前地址比较, 先发布新快照再断开下线的提供者; 调用方持有 RpcConfigBean.class 锁
+         *
+         * @param newAddressList
+         */
+        private void updateAddressList(List<String> newAddressList) {
+            Set<String> newAddressSet = newAddressList == null ? new HashSet<>() : new HashSet<>(newAddressList);
+            if (newAddressSet.equals(addressSet)) {
+                return;
+            }
 
-            } catch (Exception e) {
-                log.error("ReportHandler", e);
-            } finally {
-                if (conn != null) {
-                    conn.disconnect();
+            List<RpcNettyClient> rpcNettyClientList = new ArrayList<>();
+            for (RpcNettyClient rpcNettyClient : rpcConsumerMethodInterceptor.getRpcNettyClientList()) {
+                if (newAddressSet.contains(rpcNettyClient.getServiceAddress())) {
+                    rpcNettyClientList.add(rpcNettyClient);
                 }
-
-                if (outputStream != null) {
-                    try {
-                        outputStream.close();
-                    } catch (IOException e) {
-                    }
+            }
+            for (String address : newAddressSet) {
+                if (!addressSet.contains(address)) { //有新的服务提供者
+                    rpcNettyClientList.add(acquireClient(address));
                 }
             }
+            rpcConsumerMethodInterceptor.setRpcNettyClientList(Collections.unmodifiableList(rpcNettyClientList));
 
+            for (String address : addressSet) {
+                if (!newAddressSet.contains(address)) { //有服务提供者下线
+                    releaseClient(address);
+                }
+            }
+            addressSet = newAddressSet;
+            if (registrySnapshot != null) {
+                registrySnapshot.update(serviceName, newAddressSet);
+            }
         }
 
     }
@@ -3,9 +3,14 @@ package shier.rpc.spring;
 import net.sf.cglib.proxy.Enhancer;
 import org.springframework.beans.factory.FactoryBean;
 import org.springframework.beans.factory.annotation.Autowired;
+import shier.rpc.loadbalance.LoadBalancerRegistry;
+import shier.rpc.proxy.RpcStubGenerator;
+import shier.rpc.serialize.SerializerRegistry;
 import shier.rpc.utils.NameUtils;
 
 import javax.annotation.PostConstruct;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * @author liangliang.wei
@@ -14,16 +19,37 @@ import javax.annotation.PostConstruct;
  **/
 public class RpcConsumerFactoryBean implements FactoryBean {
 
+    /**
+     * cglib动态代理, 调用经过MethodInterceptor
+     */
+    public static final String PROXY_CGLIB = "cglib";
+
+    /**
+     * 启动时为接口生成存根类, 方法下标为常量
+     */
+    public static final String PROXY_STUB = "stub";
+
     private String interfaceName;
 
     private String version;
 
-    private Class objectType;
+    private Class<?> objectType;
 
     private Object bean;
 
     private Long timeout = 5000L;
 
+    private String serializer = SerializerRegistry.DEFAULT;
+
+    private List<RpcMethodConfig> methodConfigList = new ArrayList<>();
+
+    private String proxyType = PROXY_CGLIB;
+
+    /**
+     * 负载均衡策略 random/leastActive/p2c/weightedRoundRobin/consistentHash
+     */
+    private String loadBalance = LoadBalancerRegistry.DEFAULT;
+
     @Autowired
     private RpcConfigBean rpcConfigBean;
 
@@ -38,9 +64,18 @@ public class RpcConsumerFactoryBean implements FactoryBean {
         }
 
         this.objectType = Class.forName(interfaceName);
+        RpcConsumerMethodInterceptor interceptor = new RpcConsumerMethodInterceptor(objectType, NameUtils.buildServiceName(interfaceName, version), rpcConfigBean, timeout)
+                .setSerializer(serializer)
+                .setLoadBalance(loadBalance)
+                .setMethodConfigList(methodConfigList);
+        interceptor.init();
+        if (PROXY_STUB.equals(proxyType)) {
+            this.bean = RpcStubGenerator.newStub(objectType, interceptor);
+            return;
+        }
         Enhancer enhancer = new Enhancer();
         enhancer.setSuperclass(objectType);
-        enhancer.setCallback(new RpcConsumerMethodInterceptor(NameUtils.buildServiceName(interfaceName, version), rpcConfigBean, timeout));
+        enhancer.setCallback(interceptor);
         this.bean = enhancer.create();
     }
 
@@ -76,4 +111,20 @@ public class RpcConsumerFactoryBean implements FactoryBean {
     public void setTimeout(Long timeout) {
         this.timeout = timeout;
     }
+
+    public void setSerializer(String serializer) {
+        this.serializer = serializer;
+    }
+
+    public void setLoadBalance(String loadBalance) {
+        this.loadBalance = loadBalance;
+    }
+
+    public void setProxyType(String proxyType) {
+        this.proxyType = proxyType;
+    }
+
+    public void setMethodConfigList(List<RpcMethodConfig> methodConfigList) {
+        this.methodConfigList = methodConfigList;
+    }
 }
@@ -1,68 +1,571 @@
 package shier.rpc.spring;
 
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.util.Timeout;
+import lombok.extern.slf4j.Slf4j;
 import net.sf.cglib.proxy.MethodInterceptor;
 import net.sf.cglib.proxy.MethodProxy;
+import shier.rpc.cache.CacheRegistry;
+import shier.rpc.cache.ResultCache;
+import shier.rpc.context.RpcContext;
 import shier.rpc.dto.RpcRequestDTO;
 import shier.rpc.exception.ProviderNotFindException;
+import shier.rpc.loadbalance.LoadBalancer;
+import shier.rpc.loadbalance.LoadBalancerRegistry;
+import shier.rpc.monitor.MethodMetrics;
 import shier.rpc.monitor.Monitor;
 import shier.rpc.netty.RpcNettyClient;
+import shier.rpc.protocol.MethodIdRegistry;
+import shier.rpc.proxy.RpcInvoker;
+import shier.rpc.proxy.RpcStubGenerator;
+import shier.rpc.retry.LatencyWindow;
+import shier.rpc.retry.RetryBudget;
+import shier.rpc.serialize.SerializerRegistry;
 import shier.rpc.utils.NameUtils;
 
 import java.lang.reflect.Method;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
-import java.util.UUID;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
  * @author liangliang.wei
  * @description
  * @create 2017-12-01 下午4:06
  **/
-public class RpcConsumerMethodInterceptor implements MethodInterceptor {
+@Slf4j
+public class RpcConsumerMethodInterceptor implements MethodInterceptor, RpcInvoker {
+
+    private Class<?> interfaceClass;
 
     private String serviceName;
 
     private Long timeout;
 
+    private String serializer = SerializerRegistry.DEFAULT;
+
+    private List<RpcMethodConfig> methodConfigList = new ArrayList<>();
+
+    private LoadBalancer loadBalancer = LoadBalancerRegistry.newLoadBalancer(LoadBalancerRegistry.DEFAULT);
+
     private RpcConfigBean rpcConfigBean;
 
-    private List<RpcNettyClient> rpcNettyClientList = new ArrayList<>();
+    /**
+     * 服务提供者的路由快照, 不可修改, 变化时整体替换
+     */
+    private volatile List<RpcNettyClient> rpcNettyClientList = Collections.emptyList();
+
+    /**
+     * 注册中心查询和连接预热完成, 首次调用前等待
+     */
+    private volatile CompletableFuture<?> ready = CompletableFuture.completedFuture(null);
+
+    /**
+     * 从路由快照中过滤出的可用提供者, 快照或可用状态版本变化时重新计算
+     */
+    private volatile AvailableClients availableClients = new AvailableClients(Collections.emptyList(), -1, Collections.emptyList());
+
+    private Map<Method, ConsumerMethod> consumerMethodMap = new HashMap<>();
+
+    /**
+     * 按 {@link RpcStubGenerator#getStubMethods(Class)} 的下标排列, 供生成的存根调用
+     */
+    private ConsumerMethod[] consumerMethods;
+
+    private static final Map<Class<?>, Object> PRIMITIVE_DEFAULT_MAP = new HashMap<>();
 
-    public RpcConsumerMethodInterceptor(String serviceName, RpcConfigBean rpcConfigBean, Long timeout) {
+    private static final byte[] EMPTY_BYTES = new byte[0];
+
+    static {
+        PRIMITIVE_DEFAULT_MAP.put(boolean.class, false);
+        PRIMITIVE_DEFAULT_MAP.put(byte.class, (byte) 0);
+        PRIMITIVE_DEFAULT_MAP.put(short.class, (short) 0);
+        PRIMITIVE_DEFAULT_MAP.put(char.class, (char) 0);
+        PRIMITIVE_DEFAULT_MAP.put(int.class, 0);
+        PRIMITIVE_DEFAULT_MAP.put(long.class, 0L);
+        PRIMITIVE_DEFAULT_MAP.put(float.class, 0F);
+        PRIMITIVE_DEFAULT_MAP.put(double.class, 0D);
+    }
+
+    public RpcConsumerMethodInterceptor(Class<?> interfaceClass, String serviceName, RpcConfigBean rpcConfigBean, Long timeout) {
+        this.interfaceClass = interfaceClass;
         this.serviceName = serviceName;
         this.rpcConfigBean = rpcConfigBean;
         this.timeout = timeout;
+    }
+
+    /**
+     * 预先计算方法信息并注册消费者
+     */
+    public void init() {
+        Map<String, RpcMethodConfig> methodConfigMap = new HashMap<>();
+        for (RpcMethodConfig methodConfig : methodConfigList) {
+            methodConfigMap.put(methodConfig.getName(), methodConfig);
+        }
+
+        Method[] stubMethods = RpcStubGenerator.getStubMethods(interfaceClass);
+        consumerMethods = new ConsumerMethod[stubMethods.length];
+        Map<String, ConsumerMethod> signatureMap = new HashMap<>();
+        for (int i = 0; i < stubMethods.length; i++) {
+            Method method = stubMethods[i];
+            String methodName = NameUtils.buildMethodName(method);
+            RpcMethodConfig methodConfig = methodConfigMap.get(method.getName());
+            String methodSerializer = methodConfig != null && methodConfig.getSerializer() != null ? methodConfig.getSerializer() : serializer;
+
+            ConsumerMethod consumerMethod = new ConsumerMethod();
+            consumerMethod.methodId = MethodIdRegistry.register(NameUtils.buildServiceMethodName(serviceName, methodName));
+            consumerMethod.methodName = methodName;
+            consumerMethod.serializerId = SerializerRegistry.getSerializer(methodSerializer).getId();
+            consumerMethod.returnType = method.getReturnType();
+            consumerMethod.hashArgument = methodConfig != null && methodConfig.getHashArgument() != null ? methodConfig.getHashArgument() : 0;
+            consumerMethod.metrics = Monitor.getMetrics(Monitor.CONSUMER, serviceName, methodName);
+            if (methodConfig != null) {
+                consumerMethod.retries = methodConfig.getRetries() != null ? methodConfig.getRetries() : 0;
+                if (methodConfig.getHedgePercentile() != null || methodConfig.getHedgeDelay() != null) {
+                    consumerMethod.hedgeWindow = new LatencyWindow(methodConfig.getHedgePercentile(), methodConfig.getHedgeDelay());
+                }
+                if (methodConfig.getCacheSize() != null && methodConfig.getCacheSize() > 0) {
+                    long ttl = methodConfig.getCacheTtl() != null ? methodConfig.getCacheTtl() : ResultCache.DEFAULT_TTL;
+                    consumerMethod.cache = new ResultCache(NameUtils.buildServiceMethodName(serviceName, methodName), methodConfig.getCacheSize(), ttl);
+                    CacheRegistry.register(consumerMethod.cache);
+                }
+            }
+            consumerMethods[i] = consumerMethod;
+            signatureMap.put(method.getName() + Arrays.toString(method.getParameterTypes()), consumerMethod);
+        }
+        //cglib代理按Method查找, 多个父接口声明的同一方法指向同一个ConsumerMethod
+        for (Method method : interfaceClass.getMethods()) {
+            ConsumerMethod consumerMethod = signatureMap.get(method.getName() + Arrays.toString(method.getParameterTypes()));
+            if (consumerMethod != null) {
+                consumerMethodMap.put(method, consumerMethod);
+            }
+        }
         rpcConfigBean.registerConsumer(serviceName, this);
     }
 
     @Override
     public Object intercept(Object obj, Method method, Object[] args, MethodProxy proxy) throws Throwable {
 
+        ConsumerMethod consumerMethod = consumerMethodMap.get(method);
+        if (consumerMethod == null) { //Object中的方法本地执行
+            return proxy.invokeSuper(obj, args);
+        }
+        return invoke(consumerMethod, args);
+    }
+
+    @Override
+    public Object invoke(int methodIndex, Object[] args) throws Throwable {
+        return invoke(consumerMethods[methodIndex], args);
+    }
+
+    /**
+     * 发起远程调用, cglib代理和生成的存根共用
+     *
+     * @param consumerMethod
+     * @param args
+     * @return
+     * @throws Throwable
+     */
+    private Object invoke(ConsumerMethod consumerMethod, Object[] args) throws Throwable {
         RpcRequestDTO rpcRequestDTO = new RpcRequestDTO();
-        rpcRequestDTO.setRequestId(UUID.randomUUID().toString().substring(0, 16));
+        rpcRequestDTO.setMethodId(consumerMethod.methodId);
+        rpcRequestDTO.setSerializerId(consumerMethod.serializerId);
         rpcRequestDTO.setServiceName(serviceName);
-        rpcRequestDTO.setMethodName(NameUtils.buildMethodName(method));
+        rpcRequestDTO.setMethodName(consumerMethod.methodName);
         rpcRequestDTO.setParams(args);
+        if (args != null && consumerMethod.hashArgument < args.length) {
+            rpcRequestDTO.setHashKey(args[consumerMethod.hashArgument]);
+        }
+
+        Class<?> returnType = consumerMethod.returnType;
+        ResultCache.Key cacheKey = null;
+        long cacheGeneration = 0;
+        if (consumerMethod.cache != null && (cacheKey = buildCacheKey(consumerMethod, args)) != null) {
+            ResultCache.Hit hit = consumerMethod.cache.get(cacheKey);
+            if (hit != null) { //命中缓存, 不发起调用
+                return cachedResult(returnType, hit.getValue());
+            }
+            cacheGeneration = consumerMethod.cache.getGeneration();
+        }
+
+        if (isFutureType(returnType) || RpcContext.isAsync()) {
+            CompletableFuture<Object> future = invokeAsync(consumerMethod, rpcRequestDTO);
+            if (cacheKey != null) {
+                ResultCache.Key key = cacheKey;
+                long generation = cacheGeneration;
+                future.thenAccept(value -> consumerMethod.cache.put(key, value, generation));
+            }
+            if (isFutureType(returnType)) { //接口声明为异步方法
+                return future;
+            }
+            RpcContext.setFuture(future); //通过RpcContext发起的异步调用
+            return returnType.isPrimitive() ? PRIMITIVE_DEFAULT_MAP.get(returnType) : null;
+        }
 
-        Monitor monitor = Monitor.newStart(rpcRequestDTO.getServiceName(), rpcRequestDTO.getMethodName());//开启监控
+        long start = System.nanoTime();
+        boolean success = false;
         try {
-            if (rpcNettyClientList.isEmpty()) {
-                throw new ProviderNotFindException(serviceName + " have no provider !");
-            }
-            List<RpcNettyClient> list = rpcNettyClientList;
-            int size = list.size();
-            int index = (int) (Math.random() * size); // 随机负载
-            Object result = list.get(index).sendRpcRequest(rpcRequestDTO, timeout);
-            monitor.end(); //标记调用成功
+            Object result;
+            if (consumerMethod.hasPolicy()) { //重试和对冲统一走异步流程, 调用线程等待最终结果
+                try {
+                    result = new PolicyCall(consumerMethod, rpcRequestDTO).start().get();
+                } catch (ExecutionException e) {
+                    throw e.getCause();
+                }
+            } else {
+                result = selectClient(rpcRequestDTO).sendRpcRequest(rpcRequestDTO, timeout);
+            }
+            success = true; //标记调用成功
+            if (cacheKey != null) {
+                consumerMethod.cache.put(cacheKey, result, cacheGeneration);
+            }
             return result;
         } finally {
             if (rpcConfigBean.getOpenReport()) {
-                monitor.commit(); //提交监控
+                consumerMethod.metrics.record(System.nanoTime() - start, success); //记录监控
             }
         }
 
     }
 
+    /**
+     * 缓存的key: 方法id + 按该方法的序列化方式序列化后的参数
+     *
+     * @param consumerMethod
+     * @param args
+     * @return 参数无法序列化时返回null, 不使用缓存
+     */
+    private static ResultCache.Key buildCacheKey(ConsumerMethod consumerMethod, Object[] args) {
+        if (args == null || args.length == 0) {
+            return ResultCache.newKey(consumerMethod.methodId, EMPTY_BYTES);
+        }
+        ByteBuf buf = Unpooled.buffer(64);
+        try {
+            SerializerRegistry.getSerializer(consumerMethod.serializerId).serialize(args, buf);
+            byte[] bytes = new byte[buf.readableBytes()];
+            buf.readBytes(bytes);
+            return ResultCache.newKey(consumerMethod.methodId, bytes);
+        } catch (Exception e) {
+            return null;
+        } finally {
+            buf.release();
+        }
+    }
+
+    /**
+     * 按调用方式返回缓存的结果
+     *
+     * @param returnType
+     * @param value
+     * @return
+     */
+    private static Object cachedResult(Class<?> returnType, Object value) {
+        if (isFutureType(returnType)) {
+            return CompletableFuture.completedFuture(value);
+        }
+        if (RpcContext.isAsync()) {
+            RpcContext.setFuture(CompletableFuture.completedFuture(value));
+            return returnType.isPrimitive() ? PRIMITIVE_DEFAULT_MAP.get(returnType) : null;
+        }
+        return value;
+    }
+
+    /**
+     * 异步调用, 立即返回future
+     *
+     * @param consumerMethod
+     * @param rpcRequestDTO
+     * @return
+     */
+    private CompletableFuture<Object> invokeAsync(ConsumerMethod consumerMethod, RpcRequestDTO rpcRequestDTO) {
+        long start = System.nanoTime();
+        CompletableFuture<Object> future;
+        try {
+            future = consumerMethod.hasPolicy() ? new PolicyCall(consumerMethod, rpcRequestDTO).start()
+                    : selectClient(rpcRequestDTO).sendRpcRequestAsync(rpcRequestDTO, timeout);
+        } catch (Throwable e) {
+            future = new CompletableFuture<>();
+            future.completeExceptionally(e);
+        }
+        if (rpcConfigBean.getOpenReport()) {
+            future.whenComplete((result, e) -> consumerMethod.metrics.record(System.nanoTime() - start, e == null)); //记录监控
+        }
+        return future;
+    }
+
+    private RpcNettyClient selectClient(RpcRequestDTO rpcRequestDTO) throws ProviderNotFindException {
+        if (!ready.isDone()) {
+            awaitReady();
+        }
+        List<RpcNettyClient> list = rpcNettyClientList;
+        if (list.isEmpty()) {
+            throw new ProviderNotFindException(serviceName + " have no provider !");
+        }
+        return loadBalancer.select(getAvailableClients(list), rpcRequestDTO);
+    }
+
+    /**
+     * 等待注册中心查询完成, 最多等待一次调用的超时时间; 查询失败或超时时按当前路由快照继续
+     */
+    private void awaitReady() {
+        try {
+            ready.get(timeout, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | TimeoutException e) {
+            log.warn("RpcConsumerMethodInterceptor serviceName={} registry not ready {}", serviceName, e.toString());
+        }
+    }
+
+    /**
+     * 选择一个还没有尝试过的提供者
+     *
+     * @param rpcRequestDTO
+     * @param tried         已经尝试过的提供者
+     * @return 没有其他可用提供者时返回null
+     */
+    private RpcNettyClient selectOtherClient(RpcRequestDTO rpcRequestDTO, List<RpcNettyClient> tried) {
+        List<RpcNettyClient> list = rpcNettyClientList;
+        //与普通调用使用同一个快照, 由负载均衡跳过已尝试的提供者, 不新建列表
+        return list.isEmpty() ? null : loadBalancer.select(getAvailableClients(list), rpcRequestDTO, tried);
+    }
+
+    /**
+     * 去掉熔断中和没有可用连接的提供者; 全部不可用时返回原列表, 由连接失败快速报错
+     *
+     * @param list 当前路由快照
+     * @return
+     */
+    private List<RpcNettyClient> getAvailableClients(List<RpcNettyClient> list) {
+        AvailableClients cached = availableClients;
+        int version = RpcNettyClient.getRoutingVersion();
+        if (cached.source == list && cached.version == version) {
+            return cached.clients;
+        }
+        List<RpcNettyClient> available = new ArrayList<>(list.size());
+        for (RpcNettyClient client : list) {
+            if (client.isAvailable()) {
+                available.add(client);
+            }
+        }
+        List<RpcNettyClient> clients = available.isEmpty() || available.size() == list.size() ? list : Collections.unmodifiableList(available);
+        availableClients = new AvailableClients(list, version, clients);
+        return clients;
+    }
+
+    private static boolean isFutureType(Class<?> returnType) {
+        return returnType == CompletableFuture.class || returnType == CompletionStage.class || returnType == Future.class;
+    }
+
+    /**
+     * 配置了重试或对冲的一次调用
+     * <p>
+     * 所有尝试共用调用方的超时时间, 每次尝试发往不同的提供者, 取第一个成功的结果;
+     * 业务异常直接返回, 只有服务提供者不可用时才重试. 重试和对冲都要先从 {@link RetryBudget} 取得令牌
+     */
+    private class PolicyCall {
+
+        private final ConsumerMethod consumerMethod;
+
+        private final RpcRequestDTO rpcRequestDTO;
+
+        private final long deadline;
+
+        private final CompletableFuture<Object> result = new CompletableFuture<>();
+
+        private final List<RpcNettyClient> tried = new ArrayList<>(2);
+
+        private final RetryBudget retryBudget = rpcConfigBean.getRetryBudget();
+
+        private int retriesLeft;
+
+        private int outstanding;
+
+        private Throwable lastError;
+
+        private Timeout hedgeTimeout;
+
+        PolicyCall(ConsumerMethod consumerMethod, RpcRequestDTO rpcRequestDTO) {
+            this.consumerMethod = consumerMethod;
+            this.rpcRequestDTO = rpcRequestDTO;
+            this.deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+            this.retriesLeft = consumerMethod.retries;
+        }
+
+        /**
+         * 发起第一次尝试, 需要时安排对冲
+         *
+         * @return
+         * @throws ProviderNotFindException
+         */
+        CompletableFuture<Object> start() throws ProviderNotFindException {
+            retryBudget.deposit();
+            RpcNettyClient client = selectClient(rpcRequestDTO);
+            synchronized (this) {
+                send(client);
+                if (consumerMethod.hedgeWindow != null && !result.isDone()) {
+                    long delay = consumerMethod.hedgeWindow.getDelayMillis();
+                    if (delay >= 0 && TimeUnit.MILLISECONDS.toNanos(delay) < deadline - System.nanoTime()) {
+                        hedgeTimeout = RpcNettyClient.schedule(this::hedge, delay);
+                    }
+                }
+            }
+            return result;
+        }
+
+        /**
+         * 等待超过分位值仍未返回, 向另一个提供者发出对冲请求
+         */
+        private synchronized void hedge() {
+            if (result.isDone() || outstanding == 0) {
+                return;
+            }
+            RpcNettyClient client = selectOtherClient(rpcRequestDTO, tried);
+            if (client != null && retryBudget.tryWithdraw()) {
+                send(client);
+            }
+        }
+
+        /**
+         * 发送一次尝试, 每次使用新的请求对象, 避免并发发送时相互覆盖requestId和timeout
+         *
+         * @param client
+         */
+        private void send(RpcNettyClient client) {
+            tried.add(client);
+            outstanding++;
+            long remaining = TimeUnit.NANOSECONDS.toMillis(deadline - System.nanoTime());
+            long start = System.nanoTime();
+            CompletableFuture<Object> future;
+            try {
+                future = client.sendRpcRequestAsync(copyRequest(rpcRequestDTO), Math.max(1, remaining));
+            } catch (Throwable e) {
+                future = new CompletableFuture<>();
+                future.completeExceptionally(e);
+            }
+            future.whenComplete((value, e) -> onComplete(value, e, System.nanoTime() - start));
+        }
+
+        private synchronized void onComplete(Object value, Throwable e, long latencyNanos) {
+            outstanding--;
+            if (result.isDone()) {
+                return;
+            }
+            if (e == null) {
+                if (consumerMethod.hedgeWindow != null) {
+                    consumerMethod.hedgeWindow.record(latencyNanos);
+                }
+                complete(value, null);
+                return;
+            }
+            Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+            if (!RpcNettyClient.isProviderFailure(cause)) { //业务异常不重试
+                complete(null, cause);
+                return;
+            }
+            lastError = cause;
+            if (retriesLeft > 0 && deadline - System.nanoTime() > 0) {
+                RpcNettyClient client = selectOtherClient(rpcRequestDTO, tried);
+                if (client != null && retryBudget.tryWithdraw()) {
+                    retriesLeft--;
+                    send(client);
+                    return;
+                }
+            }
+            if (outstanding == 0) {
+                complete(null, lastError);
+            }
+        }
+
+        private void complete(Object value, Throwable e) {
+            if (hedgeTimeout != null) {
+                hedgeTimeout.cancel();
+            }
+            if (e == null) {
+                result.complete(value);
+            } else {
+                result.completeExceptionally(e);
+            }
+        }
+    }
+
+    private static RpcRequestDTO copyRequest(RpcRequestDTO rpcRequestDTO) {
+        RpcRequestDTO copy = new RpcRequestDTO();
+        copy.setMethodId(rpcRequestDTO.getMethodId());
+        copy.setSerializerId(rpcRequestDTO.getSerializerId());
+        copy.setServiceName(rpcRequestDTO.getServiceName());
+        copy.setMethodName(rpcRequestDTO.getMethodName());
+        copy.setParams(rpcRequestDTO.getParams());
+        copy.setHashKey(rpcRequestDTO.getHashKey());
+        return copy;
+    }
+
+    /**
+     * 可用提供者的缓存, 整体替换
+     */
+    private static class AvailableClients {
+
+        private final List<RpcNettyClient> source;
+
+        private final int version;
+
+        private final List<RpcNettyClient> clients;
+
+        AvailableClients(List<RpcNettyClient> source, int version, List<RpcNettyClient> clients) {
+            this.source = source;
+            this.version = version;
+            this.clients = clients;
+        }
+    }
+
+    /**
+     * 预先计算的方法信息
+     */
+    private static class ConsumerMethod {
+
+        private int methodId;
+
+        private String methodName;
+
+        private byte serializerId;
+
+        private Class<?> returnType;
+
+        private int hashArgument;
+
+        private MethodMetrics metrics;
+
+        /**
+         * 服务提供者不可用时在其他提供者上重试的次数
+         */
+        private int retries;
+
+        /**
+         * 开启对冲时的响应时间统计, 未开启时为null
+         */
+        private LatencyWindow hedgeWindow;
+
+        /**
+         * 结果缓存, 未开启时为null
+         */
+        private ResultCache cache;
+
+        private boolean hasPolicy() {
+            return retries > 0 || hedgeWindow != null;
+        }
+    }
+
     public String getServiceName() {
         return serviceName;
     }
@@ -72,12 +575,40 @@ public class RpcConsumerMethodInterceptor implements MethodInterceptor {
         return this;
     }
 
+    public RpcConsumerMethodInterceptor setSerializer(String serializer) {
+        this.serializer = serializer;
+        return this;
+    }
+
+    public RpcConsumerMethodInterceptor setLoadBalance(String loadBalance) {
+        this.loadBalancer = LoadBalancerRegistry.newLoadBalancer(loadBalance);
+        this.loadBalancer.updateProviders(rpcNettyClientList);
+        return this;
+    }
+
+    public RpcConsumerMethodInterceptor setMethodConfigList(List<RpcMethodConfig> methodConfigList) {
+        this.methodConfigList = methodConfigList;
+        return this;
+    }
+
+    public RpcConsumerMethodInterceptor setReady(CompletableFuture<?> ready) {
+        this.ready = ready;
+        return this;
+    }
+
     public List<RpcNettyClient> getRpcNettyClientList() {
         return rpcNettyClientList;
     }
 
+    /**
+     * 替换路由快照, 传入的列表之后不能再修改
+     *
+     * @param rpcNettyClientList
+     * @return
+     */
     public RpcConsumerMethodInterceptor setRpcNettyClientList(List<RpcNettyClient> rpcNettyClientList) {
         this.rpcNettyClientList = rpcNettyClientList;
+        loadBalancer.updateProviders(rpcNettyClientList);
         return this;
     }
 }
@@ -0,0 +1,55 @@
+package shier.rpc.spring;
+
+import lombok.Data;
+
+/**
+ * 消费端方法级配置, 未配置的项使用 {@link RpcConsumerFactoryBean} 上的配置
+ *
+ * @author liangliang.wei
+ * @description
+ * @create 2017-12-14 下午4:10
+ **/
+@Data
+public class RpcMethodConfig {
+
+    /**
+     * 方法名, 重载方法共用同一配置
+     */
+    private String name;
+
+    /**
+     * 序列化方式, 如 hessian/kryo
+     */
+    private String serializer;
+
+    /**
+     * 一致性哈希负载均衡使用第几个参数, 从0开始, 默认第一个参数
+     */
+    private Integer hashArgument;
+
+    /**
+     * 因服务提供者不可用(超时, 连接失败, 繁忙)失败后在其他提供者上重试的次数, 只能用于幂等方法; 默认0
+     */
+    private Integer retries;
+
+    /**
+     * 对冲: 调用超过该方法最近响应时间的第几百分位(如95)仍未返回时, 向另一个提供者再发一次, 取先返回的结果; 只能用于幂等方法
+     */
+    private Double hedgePercentile;
+
+    /**
+     * 对冲的最短等待时间(毫秒); 只配置该项时固定等待该时间后对冲
+     */
+    private Long hedgeDelay;
+
+    /**
+     * 结果缓存的最大条数, 大于0时开启; 只能用于只读方法, 相同参数(按序列化结果比较)直接返回缓存的结果
+     */
+    private Integer cacheSize;
+
+    /**
+     * 缓存写入后多久过期(毫秒), 默认 {@link shier.rpc.cache.ResultCache#DEFAULT_TTL}; 不大于0时只按容量淘汰和服务端通知失效
+     */
+    private Long cacheTtl;
+
+}
@@ -1,31 +1,47 @@
 package shier.rpc.spring;
 
 import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.PooledByteBufAllocator;
 import io.netty.channel.*;
-import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.group.ChannelGroup;
+import io.netty.channel.group.DefaultChannelGroup;
 import io.netty.channel.socket.SocketChannel;
-import io.netty.channel.socket.nio.NioServerSocketChannel;
-import io.netty.handler.codec.LengthFieldBasedFrameDecoder;
-import io.netty.handler.codec.LengthFieldPrepender;
+import io.netty.handler.timeout.IdleStateEvent;
+import io.netty.handler.timeout.IdleStateHandler;
+import io.netty.util.concurrent.GlobalEventExecutor;
 import lombok.extern.slf4j.Slf4j;
+import net.sf.cglib.reflect.FastClass;
+import net.sf.cglib.reflect.FastMethod;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import shier.rpc.annotation.RpcNonBlocking;
 import shier.rpc.dto.RpcRequestDTO;
 import shier.rpc.dto.RpcResponseDTO;
 import shier.rpc.exception.MethodRepeatException;
 import shier.rpc.exception.ProviderNotFindException;
-import shier.rpc.netty.HessianObjectDecoder;
-import shier.rpc.netty.HessianObjectEncoder;
+import shier.rpc.monitor.MethodMetrics;
+import shier.rpc.monitor.Monitor;
+import shier.rpc.netty.BoundedExecutor;
+import shier.rpc.netty.NettyTransport;
+import shier.rpc.netty.RpcProtocolDecoder;
+import shier.rpc.netty.RpcProtocolEncoder;
+import shier.rpc.netty.WriteQueue;
+import shier.rpc.serialize.HessianSerializer;
+import shier.rpc.serialize.SerializerRegistry;
 import shier.rpc.utils.NameUtils;
+import shier.rpc.utils.VirtualThreads;
 
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
+import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.net.InetAddress;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.util.*;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * @author liangliang.wei
@@ -50,22 +66,105 @@ public class RpcProviderBean implements Runnable {
 
     private Map<String, Object> serviceMap = new HashMap<>();
 
-    private Map<String, Method> serviceMethodMap = new HashMap<>();
+    private Map<String, ProviderMethod> serviceMethodMap = new HashMap<>();
 
     private Integer corePoolSize = 200;
 
-    private Integer maxPoolSize = 800;
+    /**
+     * 默认与corePoolSize一致, 队列满后直接返回繁忙, 不再扩充线程
+     */
+    private Integer maxPoolSize = 200;
 
     private Integer keepAliveSeconds = 3000;
 
-    private Integer queueCapacity = 50;
+    /**
+     * 每个线程池的队列长度, 满后新请求直接返回繁忙响应
+     */
+    private Integer queueCapacity = 1024;
+
+    /**
+     * 积压达到queueCapacity(虚拟线程模式为最大并发数)的该比例时暂停连接读取
+     */
+    private Double highWatermark = 0.8;
+
+    /**
+     * 积压回落到该比例时恢复连接读取
+     */
+    private Double lowWatermark = 0.5;
+
+    /**
+     * 隔离线程池, key为接口名或 接口名#方法名, value为线程数(虚拟线程模式为最大并发数); 未配置的方法使用默认线程池
+     */
+    private Map<String, Integer> isolatedPools = new HashMap<>();
+
+    /**
+     * 直接在IO线程中执行的方法, key为接口名或 接口名#方法名, 与 {@link RpcNonBlocking} 效果相同
+     */
+    private Set<String> nonBlockingMethods = new HashSet<>();
 
     private ThreadPoolTaskExecutor taskExecutor;
 
+    /**
+     * 执行方式: 线程池 / 每个请求一个虚拟线程, 虚拟线程需要JDK 21, 不支持时退回线程池
+     */
+    private String executionMode = EXECUTION_POOL;
+
+    /**
+     * 虚拟线程模式下默认的最大并发数, 超过时返回繁忙
+     */
+    private Integer maxConcurrency = 10000;
+
+    private ExecutorService virtualThreadExecutor;
+
+    /**
+     * 因调用方已超时而丢弃的请求数
+     */
+    private final LongAdder expiredCount = new LongAdder();
+
+    private BoundedExecutor defaultExecutor;
+
+    private Map<String, BoundedExecutor> isolatedExecutorMap = new HashMap<>();
+
+    /**
+     * 响应的序列化方式, 为空时与请求一致
+     */
+    private String serializer;
+
+    private byte serializerId;
+
     public static final String HEALTH = "health";
 
+    /**
+     * 熔断探测使用的health方法名, 与普通调用一样经过业务线程池, 繁忙或排队超时时探测失败
+     */
+    public static final String PROBE = "probe";
+
     public static final String OK = "ok";
 
+    /**
+     * 握手中方法id的上限, 方法表按客户端给出的id分配, 超过时视为非法握手关闭连接
+     */
+    public static int MAX_METHOD_ID = 65536;
+
+    public static final String EXECUTION_POOL = "pool";
+
+    public static final String EXECUTION_VIRTUAL = "virtual";
+
+    /**
+     * IO线程数, 0为netty默认的cpu核数*2; 是否使用epoll与RpcConfigBean一致
+     */
+    private Integer ioThreads = 0;
+
+    /**
+     * 连接多久(毫秒)没有收到任何数据后关闭, 0为不关闭; 应大于消费者的心跳间隔
+     */
+    private Integer idleTimeout = 10000;
+
+    /**
+     * 所有消费者连接, 用于推送缓存失效通知, 连接关闭后自动移除
+     */
+    private final ChannelGroup consumerChannels = new DefaultChannelGroup(GlobalEventExecutor.INSTANCE);
+
     private EventLoopGroup bossGroup;
     private EventLoopGroup workerGroup;
 
@@ -75,8 +174,27 @@ public class RpcProviderBean implements Runnable {
             address = InetAddress.getLocalHost().getHostAddress();
         }
 
+        if (serializer != null && !"".equals(serializer.trim())) {
+            serializerId = SerializerRegistry.getSerializer(serializer.trim()).getId();
+        }
+
+        if (EXECUTION_VIRTUAL.equals(executionMode)) {
+            if (VirtualThreads.isAvailable()) {
+                virtualThreadExecutor = VirtualThreads.newVirtualThreadPerTaskExecutor("shier-rpc-vt-");
+            } else {
+                log.warn("RpcProviderBean virtual threads not available on java {}, use thread pool", System.getProperty("java.version"));
+            }
+        }
+
         // 初始化线程池
-        if (taskExecutor == null) {
+        if (virtualThreadExecutor != null) {
+            defaultExecutor = new BoundedExecutor("shier-rpc-vt", virtualThreadExecutor, maxConcurrency,
+                    watermark(maxConcurrency, highWatermark), watermark(maxConcurrency, lowWatermark));
+            for (Map.Entry<String, Integer> entry : isolatedPools.entrySet()) {
+                isolatedExecutorMap.put(entry.getKey(), new BoundedExecutor("shier-rpc-vt-" + entry.getKey(), virtualThreadExecutor,
+                        entry.getValue(), watermark(entry.getValue(), highWatermark), watermark(entry.getValue(), lowWatermark)));
+            }
+        } else if (taskExecutor == null) {
             taskExecutor = new ThreadPoolTaskExecutor();
             taskExecutor.setThreadNamePrefix("shier-rpc");
             taskExecutor.setCorePoolSize(corePoolSize);
@@ -86,20 +204,35 @@ public class RpcProviderBean implements Runnable {
             taskExecutor.setWaitForTasksToCompleteOnShutdown(true);
             taskExecutor.initialize();
         }
+        if (virtualThreadExecutor == null) {
+            defaultExecutor = new BoundedExecutor("shier-rpc", taskExecutor.getThreadPoolExecutor(),
+                    watermark(queueCapacity, highWatermark), watermark(queueCapacity, lowWatermark));
+            for (Map.Entry<String, Integer> entry : isolatedPools.entrySet()) {
+                isolatedExecutorMap.put(entry.getKey(), new BoundedExecutor("shier-rpc-" + entry.getKey(), entry.getValue(),
+                        queueCapacity, watermark(queueCapacity, highWatermark), watermark(queueCapacity, lowWatermark)));
+            }
+        }
 
-        //服务方法映射
+        //服务方法映射, 心跳在IO线程中直接应答, 不受业务线程池排队影响; 熔断探测经过业务线程池, 反映真实的处理能力
+        serviceMethodMap.put(NameUtils.buildServiceMethodName(HEALTH, HEALTH), new ProviderMethod(null, null, defaultExecutor, true, null));
+        serviceMethodMap.put(NameUtils.buildServiceMethodName(HEALTH, PROBE), new ProviderMethod(null, null, defaultExecutor, false, null));
+        boolean openReport = Boolean.TRUE.equals(rpcConfigBean.getOpenReport());
         for (Object service : serviceList) {
             Class<?>[] interfaces = service.getClass().getInterfaces();
             for (Class clazz : interfaces) {
                 String serviceName = NameUtils.buildServiceName(clazz.getName(), version);
                 serviceMap.put(serviceName, service);
+                //按接口生成调用类, 调用时按方法下标分发, 不走反射
+                FastClass fastClass = FastClass.create(clazz);
                 for (Method method : clazz.getMethods()) {
                     String methodName = NameUtils.buildMethodName(method);
                     String serviceMethodName = NameUtils.buildServiceMethodName(serviceName, methodName);
                     if (serviceMethodMap.containsKey(serviceMethodName)) {
                         throw new MethodRepeatException(serviceName + " have repeat method " + methodName);
                     }
-                    serviceMethodMap.put(serviceMethodName, method);
+                    serviceMethodMap.put(serviceMethodName, new ProviderMethod(service, fastClass.getMethod(method),
+                            selectExecutor(clazz, method), isNonBlocking(service, clazz, method),
+                            openReport ? Monitor.getMetrics(Monitor.PROVIDER, serviceName, methodName) : null));
                 }
             }
         }
@@ -107,27 +240,72 @@ public class RpcProviderBean implements Runnable {
         new Thread(this).start();
     }
 
+    /**
+     * 方法使用的线程池, 方法级配置优先于接口级配置
+     *
+     * @param clazz
+     * @param method
+     * @return
+     */
+    private BoundedExecutor selectExecutor(Class<?> clazz, Method method) {
+        BoundedExecutor executor = isolatedExecutorMap.get(clazz.getName() + "#" + method.getName());
+        if (executor == null) {
+            executor = isolatedExecutorMap.get(clazz.getName());
+        }
+        return executor != null ? executor : defaultExecutor;
+    }
+
+    /**
+     * 方法是否在IO线程中执行, 配置或接口, 实现类上的 {@link RpcNonBlocking}
+     *
+     * @param service
+     * @param clazz
+     * @param method
+     * @return
+     */
+    private boolean isNonBlocking(Object service, Class<?> clazz, Method method) {
+        if (nonBlockingMethods.contains(clazz.getName() + "#" + method.getName()) || nonBlockingMethods.contains(clazz.getName())) {
+            return true;
+        }
+        if (method.isAnnotationPresent(RpcNonBlocking.class) || clazz.isAnnotationPresent(RpcNonBlocking.class)
+                || service.getClass().isAnnotationPresent(RpcNonBlocking.class)) {
+            return true;
+        }
+        try {
+            return service.getClass().getMethod(method.getName(), method.getParameterTypes()).isAnnotationPresent(RpcNonBlocking.class);
+        } catch (NoSuchMethodException e) {
+            return false;
+        }
+    }
+
+    private int watermark(int capacity, Double ratio) {
+        return ratio == null || ratio <= 0 ? 0 : (int) Math.max(1, capacity * ratio);
+    }
+
     @Override
     public void run() {
         //启动netty服务端
-        bossGroup = new NioEventLoopGroup();
-        workerGroup = new NioEventLoopGroup();
+        boolean epoll = Boolean.TRUE.equals(rpcConfigBean.getEpoll());
+        bossGroup = NettyTransport.newEventLoopGroup(1, epoll, "shier-rpc-boss");
+        workerGroup = NettyTransport.newEventLoopGroup(ioThreads, epoll, "shier-rpc-worker");
         try {
             ServerBootstrap b = new ServerBootstrap();
             b.group(bossGroup, workerGroup)
-                    .channel(NioServerSocketChannel.class)
+                    .channel(NettyTransport.serverSocketChannelClass(workerGroup))
                     .childHandler(new ChannelInitializer<SocketChannel>() {
                         @Override
                         public void initChannel(SocketChannel ch) throws Exception {
-                            ch.pipeline().addLast(new LengthFieldBasedFrameDecoder(RpcConfigBean.RPC_DECODER_MAX_MAX_FRAME_LENGTH, 0, 4, 0, 4));
-                            ch.pipeline().addLast(new LengthFieldPrepender(4));
-                            ch.pipeline().addLast(new HessianObjectEncoder());
-                            ch.pipeline().addLast(new HessianObjectDecoder(Integer.MAX_VALUE));
+                            if (idleTimeout != null && idleTimeout > 0) {
+                                ch.pipeline().addLast(new IdleStateHandler(idleTimeout, 0, 0, TimeUnit.MILLISECONDS));
+                            }
+                            ch.pipeline().addLast(new RpcProtocolDecoder(RpcConfigBean.RPC_DECODER_MAX_MAX_FRAME_LENGTH));
+                            ch.pipeline().addLast(new RpcProtocolEncoder());
                             ch.pipeline().addLast(new ProviderServerHandler());
                         }
                     })
                     .option(ChannelOption.SO_BACKLOG, 128)
-                    .childOption(ChannelOption.SO_KEEPALIVE, true);
+                    .childOption(ChannelOption.SO_KEEPALIVE, true)
+                    .childOption(ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT);
             log.info("RpcProviderBean start!");
             registerProvider();
             ChannelFuture f = b.bind(port).sync();
@@ -151,6 +329,12 @@ public class RpcProviderBean implements Runnable {
         if (taskExecutor != null) {
             taskExecutor.shutdown();
         }
+        for (BoundedExecutor executor : isolatedExecutorMap.values()) {
+            executor.shutdown();
+        }
+        if (virtualThreadExecutor != null) {
+            virtualThreadExecutor.shutdown();
+        }
         if (bossGroup != null) {
             bossGroup.shutdownGracefully();
         }
@@ -212,26 +396,112 @@ public class RpcProviderBean implements Runnable {
         this.queueCapacity = queueCapacity;
     }
 
+    public void setHighWatermark(Double highWatermark) {
+        this.highWatermark = highWatermark;
+    }
+
+    public void setLowWatermark(Double lowWatermark) {
+        this.lowWatermark = lowWatermark;
+    }
+
+    public long getExpiredCount() {
+        return expiredCount.sum();
+    }
+
+    public void setExecutionMode(String executionMode) {
+        this.executionMode = executionMode;
+    }
+
+    public void setMaxConcurrency(Integer maxConcurrency) {
+        this.maxConcurrency = maxConcurrency;
+    }
+
+    public void setNonBlockingMethods(Set<String> nonBlockingMethods) {
+        this.nonBlockingMethods = nonBlockingMethods;
+    }
+
+    public void setIsolatedPools(Map<String, Integer> isolatedPools) {
+        this.isolatedPools = isolatedPools;
+    }
+
+    public void setIoThreads(Integer ioThreads) {
+        this.ioThreads = ioThreads;
+    }
+
+    public void setIdleTimeout(Integer idleTimeout) {
+        this.idleTimeout = idleTimeout;
+    }
+
+    public void setSerializer(String serializer) {
+        this.serializer = serializer;
+    }
+
     private class ProviderServerHandler extends ChannelInboundHandlerAdapter {
 
         private Channel channel;
 
+        /**
+         * 客户端方法id -> 服务方法, 只在IO线程中访问
+         */
+        private ProviderMethod[] methodTable = new ProviderMethod[0];
+
+        private String[] methodNames = new String[0];
+
+        /**
+         * 开启合并写出时的写出队列, 业务线程的响应由IO线程统一写出
+         */
+        private WriteQueue writeQueue;
+
+        /**
+         * 正在处理本连接的读取, 只在IO线程中访问
+         */
+        private boolean reading;
+
+        /**
+         * 本次读取中写出但未flush的响应, 只在IO线程中访问
+         */
+        private boolean flushPending;
+
         @Override
         public void channelRead(ChannelHandlerContext ctx, Object msg) {
+            reading = true;
             RpcRequestDTO rpcRequestDTO = (RpcRequestDTO) msg;
+            if (rpcRequestDTO.isHandshake()) {
+                if (!handshake(rpcRequestDTO)) {
+                    log.warn("ProviderServerHandler invalid handshake from={} channel={}, close", rpcRequestDTO.getMethodId(), ctx.channel());
+                    ctx.close();
+                }
+                return;
+            }
             try {
                 invoke(rpcRequestDTO);
             } catch (Exception e) {
                 log.error("ProviderServerHandler.invoke", e);
-                this.returnError(rpcRequestDTO.getRequestId(), e);
+                this.returnError(rpcRequestDTO, e);
             }
 
         }
 
         public void channelReadComplete(ChannelHandlerContext ctx) {
+            reading = false;
+            if (flushPending) {
+                flushPending = false;
+                ctx.flush();
+            }
             ctx.fireChannelReadComplete();
         }
 
+        @Override
+        public void userEventTriggered(ChannelHandlerContext ctx, Object evt) throws Exception {
+            if (evt instanceof IdleStateEvent) {
+                //消费者的心跳也停了, 连接已不可用
+                log.warn("ProviderServerHandler close idle channel {} idleTimeout={}ms", ctx.channel().remoteAddress(), idleTimeout);
+                ctx.close();
+            } else {
+                ctx.fireUserEventTriggered(evt);
+            }
+        }
+
         @Override
         public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) {
             log.error("ProviderServerHandler.exceptionCaught", cause);
@@ -241,69 +511,241 @@ public class RpcProviderBean implements Runnable {
         @Override
         public void channelActive(ChannelHandlerContext ctx) {
             this.channel = ctx.channel();
+            consumerChannels.add(ctx.channel());
+            Integer writeBatchSize = rpcConfigBean.getWriteBatchSize();
+            if (writeBatchSize != null && writeBatchSize > 0) {
+                writeQueue = new WriteQueue(ctx.channel(), writeBatchSize);
+            }
         }
 
-        private void invoke(RpcRequestDTO rpcRequestDTO) {
+        /**
+         * 方法握手, 建立客户端方法id到服务方法的映射
+         *
+         * @param rpcRequestDTO
+         * @return 起始id或方法名不合法时返回false, 不修改方法表
+         */
+        private boolean handshake(RpcRequestDTO rpcRequestDTO) {
+            int from = rpcRequestDTO.getMethodId();
+            Object[] names = rpcRequestDTO.getParams();
+            //方法表按对端给出的id分配, 先校验范围, 避免畸形握手导致越界或大量分配
+            if (from < 0 || names == null || names.length > MAX_METHOD_ID - from) {
+                return false;
+            }
+            for (Object name : names) {
+                if (!(name instanceof String)) {
+                    return false;
+                }
+            }
+            int size = Math.max(methodTable.length, from + names.length);
+            ProviderMethod[] table = Arrays.copyOf(methodTable, size);
+            String[] nameTable = Arrays.copyOf(methodNames, size);
+            for (int i = 0; i < names.length; i++) {
+                nameTable[from + i] = (String) names[i];
+                table[from + i] = serviceMethodMap.get(names[i]); //本服务没有的方法为null
+            }
+            methodTable = table;
+            methodNames = nameTable;
+            log.debug("ProviderServerHandler.handshake from={} names={}", from, names);
+            return true;
+        }
 
-            taskExecutor.execute(() -> {
-                //处理服务调用
-                Object service = serviceMap.get(rpcRequestDTO.getServiceName());
-                if (service == null) {
-                    //处理健康检查
-                    if (HEALTH.equals(rpcRequestDTO.getServiceName()) && HEALTH.equals(rpcRequestDTO.getMethodName())) {
-                        this.returnResponse(rpcRequestDTO.getRequestId(), OK);
-                        return;
-                    }
+        private void invoke(RpcRequestDTO rpcRequestDTO) throws ProviderNotFindException {
+            int methodId = rpcRequestDTO.getMethodId();
+            ProviderMethod providerMethod = methodId >= 0 && methodId < methodTable.length ? methodTable[methodId] : null;
+            if (providerMethod == null) {
+                String methodName = methodId >= 0 && methodId < methodNames.length ? methodNames[methodId] : String.valueOf(methodId);
+                throw new ProviderNotFindException(methodName + " can't find provider ");
+            }
 
-                    this.returnError(rpcRequestDTO.getRequestId(), new ProviderNotFindException(rpcRequestDTO.getServiceName() + " can't find provider "));
+            long start = System.nanoTime();
+            Runnable task = () -> {
+                //排队期间调用方已超时放弃, 不再执行也不返回
+                if (rpcRequestDTO.getDeadline() != 0 && System.nanoTime() - rpcRequestDTO.getDeadline() > 0) {
+                    expiredCount.increment();
+                    providerMethod.record(start, false);
+                    log.debug("ProviderServerHandler drop expired requestId={} timeout={}", rpcRequestDTO.getRequestId(), rpcRequestDTO.getTimeout());
                     return;
                 }
 
-                Method method = serviceMethodMap.get(NameUtils.buildServiceMethodName(rpcRequestDTO.getServiceName(), rpcRequestDTO.getMethodName()));
-                if (method == null) {
-                    this.returnError(rpcRequestDTO.getRequestId(), new ProviderNotFindException(rpcRequestDTO.getServiceName() + " can't find method " + rpcRequestDTO.getMethodName()));
+                //处理健康检查
+                if (providerMethod.fastMethod == null) {
+                    this.returnResponse(rpcRequestDTO, OK);
                     return;
                 }
 
+                //处理服务调用
                 try {
-                    Object result = method.invoke(service, rpcRequestDTO.getParams());
-                    this.returnResponse(rpcRequestDTO.getRequestId(), result);
+                    Object result = providerMethod.fastMethod.invoke(providerMethod.service, rpcRequestDTO.getParams());
+                    if (result instanceof CompletionStage) { //异步实现, 完成后再返回结果
+                        ((CompletionStage<?>) result).whenComplete((value, e) -> {
+                            providerMethod.record(start, e == null);
+                            if (e == null) {
+                                this.returnResponse(rpcRequestDTO, value);
+                            } else {
+                                this.returnError(rpcRequestDTO, e instanceof CompletionException && e.getCause() != null ? e.getCause() : e);
+                            }
+                        });
+                        return;
+                    }
+                    providerMethod.record(start, true);
+                    this.returnResponse(rpcRequestDTO, result);
+                } catch (InvocationTargetException e) {
+                    //业务异常直接返回给调用方
+                    providerMethod.record(start, false);
+                    this.returnError(rpcRequestDTO, e.getTargetException());
                 } catch (Exception e) {
                     log.error("", e);
-                    this.returnError(rpcRequestDTO.getRequestId(), e);
+                    providerMethod.record(start, false);
+                    this.returnError(rpcRequestDTO, e);
                 }
-            });
+            };
+            //不阻塞的方法直接在IO线程执行, 省去两次线程切换
+            if (providerMethod.nonBlocking) {
+                task.run();
+                return;
+            }
+            //队列已满时在IO线程直接返回繁忙, 不执行请求
+            if (!providerMethod.executor.execute(channel, task)) {
+                providerMethod.record(start, false);
+                this.returnBusy(rpcRequestDTO);
+            }
         }
 
         /**
          * 返回调用结果
          *
-         * @param requestId
+         * @param rpcRequestDTO
          * @param object
          */
-        private void returnResponse(String requestId, Object object) {
+        private void returnResponse(RpcRequestDTO rpcRequestDTO, Object object) {
             RpcResponseDTO rpcResponseDTO = new RpcResponseDTO();
-            rpcResponseDTO.setRequestId(requestId);
+            rpcResponseDTO.setRequestId(rpcRequestDTO.getRequestId());
+            rpcResponseDTO.setSerializerId(responseSerializerId(rpcRequestDTO));
             rpcResponseDTO.setResult(object);
-            channel.writeAndFlush(rpcResponseDTO);
+            writeAndFlush(rpcResponseDTO);
         }
 
         /**
          * 调用出错返回异常
          *
-         * @param requestId
+         * @param rpcRequestDTO
          * @param e
          */
-        private void returnError(String requestId, Exception e) {
+        private void returnError(RpcRequestDTO rpcRequestDTO, Throwable e) {
             RpcResponseDTO rpcResponseDTO = new RpcResponseDTO();
-            rpcResponseDTO.setRequestId(requestId);
+            rpcResponseDTO.setRequestId(rpcRequestDTO.getRequestId());
+            rpcResponseDTO.setSerializerId(responseSerializerId(rpcRequestDTO));
             rpcResponseDTO.setHasError(true);
             rpcResponseDTO.setThrowable(e);
-            channel.writeAndFlush(rpcResponseDTO);
+            writeAndFlush(rpcResponseDTO);
+        }
+
+        /**
+         * 线程池已满返回繁忙
+         *
+         * @param rpcRequestDTO
+         */
+        private void returnBusy(RpcRequestDTO rpcRequestDTO) {
+            RpcResponseDTO rpcResponseDTO = new RpcResponseDTO();
+            rpcResponseDTO.setRequestId(rpcRequestDTO.getRequestId());
+            rpcResponseDTO.setSerializerId(responseSerializerId(rpcRequestDTO));
+            rpcResponseDTO.setHasError(true);
+            rpcResponseDTO.setBusy(true);
+            writeAndFlush(rpcResponseDTO);
+        }
+
+        private void writeAndFlush(RpcResponseDTO rpcResponseDTO) {
+            if (writeQueue != null) {
+                writeQueue.write(rpcResponseDTO);
+            } else if (reading && channel.eventLoop().inEventLoop()) {
+                //读取过程中在IO线程产生的响应在本次读取结束时一起flush
+                channel.write(rpcResponseDTO);
+                flushPending = true;
+            } else {
+                channel.writeAndFlush(rpcResponseDTO);
+            }
         }
 
     }
 
+    /**
+     * 通知所有消费者清空指定方法的结果缓存, 在数据变化后调用
+     *
+     * @param interfaceClass 服务接口
+     * @param methodNames    方法名, 重载方法一起失效; 为空时整个接口的方法都失效
+     */
+    public void invalidateCache(Class<?> interfaceClass, String... methodNames) {
+        String serviceName = NameUtils.buildServiceName(interfaceClass.getName(), version);
+        Set<String> names = new HashSet<>(Arrays.asList(methodNames));
+        List<String> serviceMethodNames = new ArrayList<>();
+        for (Method method : interfaceClass.getMethods()) {
+            if (names.isEmpty() || names.contains(method.getName())) {
+                serviceMethodNames.add(NameUtils.buildServiceMethodName(serviceName, NameUtils.buildMethodName(method)));
+            }
+        }
+        if (serviceMethodNames.isEmpty()) {
+            return;
+        }
+        RpcResponseDTO rpcResponseDTO = new RpcResponseDTO();
+        rpcResponseDTO.setSerializerId(HessianSerializer.ID);
+        rpcResponseDTO.setInvalidate(true);
+        rpcResponseDTO.setResult(serviceMethodNames.toArray(new String[0]));
+        consumerChannels.writeAndFlush(rpcResponseDTO);
+        log.info("RpcProviderBean.invalidateCache {} channels={}", serviceMethodNames, consumerChannels.size());
+    }
+
+    /**
+     * 响应的序列化方式, 未配置时与请求一致
+     *
+     * @param rpcRequestDTO
+     * @return
+     */
+    private byte responseSerializerId(RpcRequestDTO rpcRequestDTO) {
+        return serializerId != 0 ? serializerId : rpcRequestDTO.getSerializerId();
+    }
+
+    /**
+     * 服务方法, service和fastMethod为null时表示健康检查
+     */
+    private static class ProviderMethod {
+
+        private final Object service;
+
+        private final FastMethod fastMethod;
+
+        private final BoundedExecutor executor;
+
+        /**
+         * 在IO线程中执行
+         */
+        private final boolean nonBlocking;
+
+        /**
+         * 调用统计, 未开启上报时为null
+         */
+        private final MethodMetrics metrics;
+
+        ProviderMethod(Object service, FastMethod fastMethod, BoundedExecutor executor, boolean nonBlocking, MethodMetrics metrics) {
+            this.service = service;
+            this.fastMethod = fastMethod;
+            this.executor = executor;
+            this.nonBlocking = nonBlocking;
+            this.metrics = metrics;
+        }
+
+        /**
+         * 记录从收到请求到产生响应的耗时
+         *
+         * @param start   收到请求时的System.nanoTime
+         * @param success
+         */
+        void record(long start, boolean success) {
+            if (metrics != null) {
+                metrics.record(System.nanoTime() - start, success);
+            }
+        }
+    }
+
     public void setRpcConfigBean(RpcConfigBean rpcConfigBean) {
         this.rpcConfigBean = rpcConfigBean;
     }
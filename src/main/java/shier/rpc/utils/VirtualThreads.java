@@ -0,0 +1,105 @@
+package shier.rpc.utils;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+/**
+ * 虚拟线程支持, 项目按Java 8编译, 通过反射调用JDK 21的API, 运行时不支持时 {@link #isAvailable()} 返回false
+ *
+ * @author liangliang.wei
+ * @description
+ * @create 2017-12-20 下午4:10
+ **/
+@Slf4j
+public class VirtualThreads {
+
+    private static final MethodHandle IS_VIRTUAL;
+
+    private static final Method OF_VIRTUAL;
+
+    private static final Method BUILDER_NAME;
+
+    private static final Method BUILDER_FACTORY;
+
+    private static final Method NEW_THREAD_PER_TASK_EXECUTOR;
+
+    static {
+        MethodHandle isVirtual = null;
+        Method ofVirtual = null;
+        Method builderName = null;
+        Method builderFactory = null;
+        Method newThreadPerTaskExecutor = null;
+        try {
+            isVirtual = MethodHandles.publicLookup().findVirtual(Thread.class, "isVirtual", MethodType.methodType(boolean.class));
+            ofVirtual = Thread.class.getMethod("ofVirtual");
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            builderName = builderClass.getMethod("name", String.class, long.class);
+            builderFactory = builderClass.getMethod("factory");
+            newThreadPerTaskExecutor = Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class);
+        } catch (Throwable e) {
+            isVirtual = null;
+            log.debug("VirtualThreads not available: {}", e.toString());
+        }
+        IS_VIRTUAL = isVirtual;
+        OF_VIRTUAL = ofVirtual;
+        BUILDER_NAME = builderName;
+        BUILDER_FACTORY = builderFactory;
+        NEW_THREAD_PER_TASK_EXECUTOR = newThreadPerTaskExecutor;
+    }
+
+    private VirtualThreads() {
+    }
+
+    /**
+     * 当前JDK是否支持虚拟线程
+     *
+     * @return
+     */
+    public static boolean isAvailable() {
+        return IS_VIRTUAL != null;
+    }
+
+    /**
+     * 线程是否为虚拟线程
+     *
+     * @param thread
+     * @return
+     */
+    public static boolean isVirtual(Thread thread) {
+        if (IS_VIRTUAL == null) {
+            return false;
+        }
+        try {
+            return (boolean) IS_VIRTUAL.invokeExact(thread);
+        } catch (Throwable e) {
+            return false;
+        }
+    }
+
+    /**
+     * 每个任务一个虚拟线程的线程池
+     *
+     * @param namePrefix 线程名前缀
+     * @return
+     * @throws UnsupportedOperationException 当前JDK不支持虚拟线程
+     */
+    public static ExecutorService newVirtualThreadPerTaskExecutor(String namePrefix) {
+        if (!isAvailable()) {
+            throw new UnsupportedOperationException("virtual threads require JDK 21+, current " + System.getProperty("java.version"));
+        }
+        try {
+            Object builder = BUILDER_NAME.invoke(OF_VIRTUAL.invoke(null), namePrefix, 0L);
+            ThreadFactory threadFactory = (ThreadFactory) BUILDER_FACTORY.invoke(builder);
+            return (ExecutorService) NEW_THREAD_PER_TASK_EXECUTOR.invoke(null, threadFactory);
+        } catch (Exception e) {
+            throw new IllegalStateException("create virtual thread executor fail", e);
+        }
+    }
+}
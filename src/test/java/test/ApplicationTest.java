@@ -3,9 +3,12 @@ package test;
 import org.junit.Assert;
 import org.junit.Test;
 import org.springframework.context.support.ClassPathXmlApplicationContext;
+import shier.rpc.context.RpcContext;
 import test.dto.TestDTO;
 import test.service.TestService;
 
+import java.util.concurrent.CompletableFuture;
+
 /**
  * @author liangliang.wei
  * @description
@@ -15,7 +18,7 @@ public class ApplicationTest {
 
 
     @Test
-    public void test() throws InterruptedException {
+    public void test() throws Exception {
         ClassPathXmlApplicationContext context = new ClassPathXmlApplicationContext(new String[]{"spring.xml"});
         context.start();
         Thread.sleep(5000L);
@@ -24,6 +27,9 @@ public class ApplicationTest {
         testDTO.setName("Hi shier-simple-rpc");
         Long res = testService.addTest(testDTO);
         Assert.assertTrue(res > 0);
+
+        CompletableFuture<Long> future = RpcContext.asyncCall(() -> testService.addTest(testDTO));
+        Assert.assertTrue(future.get() > 0);
     }
 
 }
@@ -0,0 +1,103 @@
+package test.benchmark;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import shier.rpc.dto.RpcCallback;
+import shier.rpc.netty.PendingRequestTable;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 请求表基准测试: 一次操作 = 生成requestId + 登记回调 + IO线程移除并回调
+ * <p>
+ * legacy 为原先的 UUID + HashMap + Lock/Condition 方案, 原HashMap并发访问不安全, 这里加了同步
+ * <p>
+ * 运行: mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=test.benchmark.PendingRequestTableBenchmark
+ *
+ * @author liangliang.wei
+ * @description
+ * @create 2017-12-02 下午9:10
+ **/
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(4)
+@State(Scope.Benchmark)
+public class PendingRequestTableBenchmark {
+
+    private final Map<String, LegacyCallback> legacyMap = Collections.synchronizedMap(new HashMap<>(512));
+
+    private final PendingRequestTable pendingRequestTable = new PendingRequestTable(512);
+
+    private final AtomicLong requestIdGenerator = new AtomicLong();
+
+    @Benchmark
+    public Object legacy() {
+        String requestId = UUID.randomUUID().toString().substring(0, 16);
+        LegacyCallback callback = new LegacyCallback(requestId, 5000L);
+        legacyMap.put(requestId, callback);
+
+        LegacyCallback received = legacyMap.get(requestId);
+        legacyMap.remove(requestId);
+        received.callback(requestId);
+        return received;
+    }
+
+    @Benchmark
+    public boolean pendingTable() {
+        long requestId = requestIdGenerator.incrementAndGet();
+        RpcCallback callback = RpcCallback.newInstance(requestId);
+        pendingRequestTable.put(callback);
+
+        RpcCallback received = pendingRequestTable.remove(requestId);
+        boolean done = received.callback(requestId);
+        callback.recycle();
+        return done;
+    }
+
+    /**
+     * 原有回调实现
+     */
+    private static class LegacyCallback {
+        private Lock lock = new ReentrantLock();
+        private Condition finish = lock.newCondition();
+        private String requestId;
+        private Long timeout;
+        private Object object;
+
+        LegacyCallback(String requestId, Long timeout) {
+            this.requestId = requestId;
+            this.timeout = timeout;
+        }
+
+        void callback(Object object) {
+            try {
+                lock.lock();
+                this.object = object;
+                finish.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(PendingRequestTableBenchmark.class.getSimpleName())
+                .forks(1)
+                .build();
+        new Runner(options).run();
+    }
+}
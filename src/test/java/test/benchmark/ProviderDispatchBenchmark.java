@@ -0,0 +1,118 @@
+package test.benchmark;
+
+import net.sf.cglib.reflect.FastClass;
+import net.sf.cglib.reflect.FastMethod;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import shier.rpc.utils.NameUtils;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 服务端方法分发基准测试
+ * <p>
+ * legacy 为原 ProviderServerHandler 的做法: 拼接服务方法名, 两次HashMap查找, 反射调用;
+ * reflect 按id查表后反射调用; fastMethod 按id查表后调用cglib生成的FastMethod; methodHandle 按id查表后调用MethodHandle
+ * <p>
+ * 运行: mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=test.benchmark.ProviderDispatchBenchmark
+ *
+ * @author liangliang.wei
+ * @description
+ * @create 2017-12-17 上午10:40
+ **/
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@State(Scope.Thread)
+public class ProviderDispatchBenchmark {
+
+    public interface CalcService {
+
+        long add(long a, int b);
+
+        String echo(String value);
+    }
+
+    public static class CalcServiceImpl implements CalcService {
+
+        @Override
+        public long add(long a, int b) {
+            return a + b;
+        }
+
+        @Override
+        public String echo(String value) {
+            return value;
+        }
+    }
+
+    private static final String SERVICE_NAME = NameUtils.buildServiceName(CalcService.class.getName(), "0.0.1");
+
+    private final CalcService service = new CalcServiceImpl();
+
+    private final Map<String, Object> serviceMap = new HashMap<>();
+
+    private final Map<String, Method> serviceMethodMap = new HashMap<>();
+
+    private final Method[] methodTable = new Method[2];
+
+    private final FastMethod[] fastMethodTable = new FastMethod[2];
+
+    private final MethodHandle[] methodHandleTable = new MethodHandle[2];
+
+    private final Object[] params = new Object[]{10086L, 1};
+
+    private int methodId;
+
+    @Setup
+    public void setup() throws Exception {
+        Method method = CalcService.class.getMethod("add", long.class, int.class);
+        serviceMap.put(SERVICE_NAME, service);
+        serviceMethodMap.put(NameUtils.buildServiceMethodName(SERVICE_NAME, NameUtils.buildMethodName(method)), method);
+        methodTable[methodId] = method;
+        fastMethodTable[methodId] = FastClass.create(CalcService.class).getMethod(method);
+        methodHandleTable[methodId] = MethodHandles.publicLookup().unreflect(method)
+                .asSpreader(Object[].class, method.getParameterCount())
+                .asType(MethodType.methodType(Object.class, Object.class, Object[].class));
+    }
+
+    @Benchmark
+    public Object legacy() throws Exception {
+        Object target = serviceMap.get(SERVICE_NAME);
+        Method method = serviceMethodMap.get(NameUtils.buildServiceMethodName(SERVICE_NAME, "add(2)"));
+        return method.invoke(target, params);
+    }
+
+    @Benchmark
+    public Object reflect() throws Exception {
+        return methodTable[methodId].invoke(service, params);
+    }
+
+    @Benchmark
+    public Object fastMethod() throws Exception {
+        return fastMethodTable[methodId].invoke(service, params);
+    }
+
+    @Benchmark
+    public Object methodHandle() throws Throwable {
+        return (Object) methodHandleTable[methodId].invokeExact((Object) service, params);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(ProviderDispatchBenchmark.class.getSimpleName())
+                .forks(1)
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,151 @@
+package test.benchmark;
+
+import com.caucho.hessian.io.Hessian2Input;
+import com.caucho.hessian.io.Hessian2Output;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufInputStream;
+import io.netty.buffer.ByteBufOutputStream;
+import io.netty.buffer.PooledByteBufAllocator;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import shier.rpc.dto.RpcRequestDTO;
+import shier.rpc.serialize.Serializer;
+import shier.rpc.serialize.SerializerRegistry;
+import test.dto.TestDTO;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 序列化基准测试, 负载为 TestService.addTest 的参数
+ * <p>
+ * legacy 为原 HessianObjectEncoder/HessianObjectDecoder 的做法: 整个 RpcRequestDTO 每次新建 Hessian2Output/Hessian2Input;
+ * 内存分配加 -prof gc 查看 gc.alloc.rate.norm
+ * <p>
+ * 运行: mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=test.benchmark.SerializerBenchmark
+ *
+ * @author liangliang.wei
+ * @description
+ * @create 2017-12-14 下午5:00
+ **/
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class SerializerBenchmark {
+
+    private static Object[] newParams() {
+        TestDTO testDTO = new TestDTO();
+        testDTO.setId(10086L);
+        testDTO.setName("Hi shier-simple-rpc");
+        return new Object[]{testDTO};
+    }
+
+    @State(Scope.Thread)
+    public static class SerializerState {
+
+        @Param({"hessian", "kryo"})
+        public String serializerName;
+
+        private Serializer serializer;
+
+        private Object[] params;
+
+        private ByteBuf buffer;
+
+        private ByteBuf encoded;
+
+        @Setup
+        public void setup() throws Exception {
+            serializer = SerializerRegistry.getSerializer(serializerName);
+            params = newParams();
+            buffer = PooledByteBufAllocator.DEFAULT.directBuffer(256);
+            encoded = PooledByteBufAllocator.DEFAULT.directBuffer(256);
+            serializer.serialize(params, encoded);
+        }
+
+        @TearDown
+        public void tearDown() {
+            buffer.release();
+            encoded.release();
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class LegacyState {
+
+        private RpcRequestDTO rpcRequestDTO;
+
+        private ByteBuf buffer;
+
+        private ByteBuf encoded;
+
+        @Setup
+        public void setup() throws Exception {
+            rpcRequestDTO = new RpcRequestDTO();
+            rpcRequestDTO.setServiceName("test.service.TestService_0.0.1");
+            rpcRequestDTO.setMethodName("addTest(1)");
+            rpcRequestDTO.setParams(newParams());
+            buffer = PooledByteBufAllocator.DEFAULT.directBuffer(256);
+            encoded = PooledByteBufAllocator.DEFAULT.directBuffer(256);
+            legacyWrite(rpcRequestDTO, encoded);
+        }
+
+        @TearDown
+        public void tearDown() {
+            buffer.release();
+            encoded.release();
+        }
+    }
+
+    @Benchmark
+    public int encode(SerializerState state) throws Exception {
+        state.buffer.clear();
+        state.serializer.serialize(state.params, state.buffer);
+        return state.buffer.writerIndex();
+    }
+
+    @Benchmark
+    public Object decode(SerializerState state) throws Exception {
+        state.encoded.readerIndex(0);
+        return state.serializer.deserialize(state.encoded);
+    }
+
+    @Benchmark
+    public int legacyEncode(LegacyState state) throws Exception {
+        state.buffer.clear();
+        legacyWrite(state.rpcRequestDTO, state.buffer);
+        return state.buffer.writerIndex();
+    }
+
+    @Benchmark
+    public Object legacyDecode(LegacyState state) throws Exception {
+        state.encoded.readerIndex(0);
+        Hessian2Input input = new Hessian2Input(new ByteBufInputStream(state.encoded));
+        try {
+            return input.readObject();
+        } finally {
+            input.close();
+        }
+    }
+
+    private static void legacyWrite(Object msg, ByteBuf out) throws Exception {
+        Hessian2Output output = new Hessian2Output(new ByteBufOutputStream(out));
+        try {
+            output.writeObject(msg);
+            output.flush();
+        } finally {
+            output.close();
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(SerializerBenchmark.class.getSimpleName())
+                .forks(1)
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,128 @@
+package test.benchmark;
+
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import shier.rpc.dto.RpcCallback;
+import shier.rpc.netty.BoundedExecutor;
+import shier.rpc.utils.VirtualThreads;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 虚拟线程执行方式基准测试, 每次操作同时提交10000个阻塞10毫秒的调用, 等待全部完成
+ * <p>
+ * pool 为 RpcProviderBean 默认的 ThreadPoolTaskExecutor(200线程, 队列放大到能容纳全部任务), virtual 为每个任务一个虚拟线程;
+ * providerSleep 模拟阻塞的服务方法, consumerWait 模拟同步调用在 {@link RpcCallback#waitCallback(long)} 中等待响应.
+ * virtual 需要在JDK 21及以上运行
+ * <p>
+ * 运行: mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=test.benchmark.VirtualThreadBenchmark
+ *
+ * @author liangliang.wei
+ * @description
+ * @create 2017-12-20 下午5:30
+ **/
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@State(Scope.Benchmark)
+public class VirtualThreadBenchmark {
+
+    private static final int CONCURRENCY = 10000;
+
+    private static final long BLOCK_MILLIS = 10;
+
+    @Param({"pool", "virtual"})
+    public String mode;
+
+    private ThreadPoolTaskExecutor taskExecutor;
+
+    private ExecutorService virtualThreadExecutor;
+
+    private BoundedExecutor executor;
+
+    private ScheduledExecutorService responder;
+
+    private final EmbeddedChannel channel = new EmbeddedChannel();
+
+    private final AtomicLong requestId = new AtomicLong();
+
+    @Setup
+    public void setup() {
+        if ("virtual".equals(mode)) {
+            virtualThreadExecutor = VirtualThreads.newVirtualThreadPerTaskExecutor("benchmark-vt-");
+            //计数在任务结束后才减少, 留出上一次操作收尾的余量
+            executor = new BoundedExecutor("benchmark-vt", virtualThreadExecutor, CONCURRENCY * 2, 0, 0);
+        } else {
+            taskExecutor = new ThreadPoolTaskExecutor();
+            taskExecutor.setCorePoolSize(200);
+            taskExecutor.setMaxPoolSize(200);
+            taskExecutor.setQueueCapacity(CONCURRENCY * 2);
+            taskExecutor.initialize();
+            executor = new BoundedExecutor("benchmark", taskExecutor.getThreadPoolExecutor(), 0, 0);
+        }
+        responder = Executors.newScheduledThreadPool(4);
+    }
+
+    @TearDown
+    public void tearDown() {
+        executor.shutdown();
+        responder.shutdown();
+    }
+
+    @Benchmark
+    public void providerSleep() throws InterruptedException {
+        CountDownLatch latch = new CountDownLatch(CONCURRENCY);
+        for (int i = 0; i < CONCURRENCY; i++) {
+            submit(() -> {
+                try {
+                    Thread.sleep(BLOCK_MILLIS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                latch.countDown();
+            });
+        }
+        latch.await();
+    }
+
+    @Benchmark
+    public void consumerWait() throws InterruptedException {
+        CountDownLatch latch = new CountDownLatch(CONCURRENCY);
+        for (int i = 0; i < CONCURRENCY; i++) {
+            submit(() -> {
+                RpcCallback rpcCallback = RpcCallback.newInstance(requestId.incrementAndGet());
+                //模拟IO线程在10毫秒后写入响应
+                responder.schedule(() -> rpcCallback.callback(Boolean.TRUE), BLOCK_MILLIS, TimeUnit.MILLISECONDS);
+                try {
+                    rpcCallback.waitCallback(3000);
+                    rpcCallback.recycle();
+                } catch (Throwable e) {
+                    throw new IllegalStateException(e);
+                }
+                latch.countDown();
+            });
+        }
+        latch.await();
+    }
+
+    private void submit(Runnable task) {
+        if (!executor.execute(channel, task)) {
+            throw new IllegalStateException("rejected");
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(VirtualThreadBenchmark.class.getSimpleName())
+                .forks(1)
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,161 @@
+package test.benchmark;
+
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.*;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.SocketChannel;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import shier.rpc.dto.RpcRequestDTO;
+import shier.rpc.dto.RpcResponseDTO;
+import shier.rpc.netty.RpcNettyClient;
+import shier.rpc.netty.RpcProtocolDecoder;
+import shier.rpc.netty.RpcProtocolEncoder;
+import shier.rpc.netty.WriteQueue;
+import shier.rpc.protocol.RpcProtocol;
+import shier.rpc.serialize.HessianSerializer;
+
+import java.net.InetSocketAddress;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 合并写出基准测试, 32个线程同步调用本地回显服务, 服务端在业务线程池中返回响应
+ * <p>
+ * writeBatchSize=0 为每条消息单独flush; 结束时打印每个请求对应的服务端读事件数(约等于客户端写出的系统调用)
+ * 和服务端flush次数
+ * <p>
+ * 运行: mvn test-compile exec:java -Dexec.classpathScope=test -Dexec.mainClass=test.benchmark.WriteBatchBenchmark
+ *
+ * @author liangliang.wei
+ * @description
+ * @create 2017-12-16 下午4:30
+ **/
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(32)
+public class WriteBatchBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class ClientState {
+
+        @Param({"0", "64"})
+        public int writeBatchSize;
+
+        private EventLoopGroup serverGroup;
+
+        private ExecutorService executor;
+
+        private RpcNettyClient rpcNettyClient;
+
+        private final AtomicLong requests = new AtomicLong();
+
+        private final AtomicLong reads = new AtomicLong();
+
+        private final AtomicLong flushes = new AtomicLong();
+
+        @Setup
+        public void setup() throws Exception {
+            serverGroup = new NioEventLoopGroup(2);
+            executor = Executors.newFixedThreadPool(8);
+            Channel serverChannel = new ServerBootstrap().group(serverGroup)
+                    .channel(NioServerSocketChannel.class)
+                    .childHandler(new ChannelInitializer<SocketChannel>() {
+                        @Override
+                        protected void initChannel(SocketChannel ch) throws Exception {
+                            ch.pipeline().addLast(new FlushCounter());
+                            ch.pipeline().addLast(new RpcProtocolDecoder(Integer.MAX_VALUE));
+                            ch.pipeline().addLast(new RpcProtocolEncoder());
+                            ch.pipeline().addLast(new EchoHandler());
+                        }
+                    })
+                    .bind(0).sync().channel();
+            int port = ((InetSocketAddress) serverChannel.localAddress()).getPort();
+            rpcNettyClient = new RpcNettyClient("127.0.0.1:" + port).setWriteBatchSize(writeBatchSize);
+            rpcNettyClient.init();
+        }
+
+        @TearDown
+        public void tearDown() {
+            double count = requests.get();
+            System.out.printf("%nwriteBatchSize=%d requests=%d reads/request=%.3f flushes/request=%.3f%n",
+                    writeBatchSize, requests.get(), reads.get() / count, flushes.get() / count);
+            rpcNettyClient.disConnect();
+            executor.shutdown();
+            serverGroup.shutdownGracefully();
+        }
+
+        private class FlushCounter extends ChannelOutboundHandlerAdapter {
+            @Override
+            public void flush(ChannelHandlerContext ctx) throws Exception {
+                flushes.incrementAndGet();
+                ctx.flush();
+            }
+        }
+
+        /**
+         * 与 RpcProviderBean 一致: IO线程收到请求后交给业务线程池, 由业务线程写回响应
+         */
+        private class EchoHandler extends ChannelInboundHandlerAdapter {
+
+            private WriteQueue writeQueue;
+
+            @Override
+            public void channelActive(ChannelHandlerContext ctx) {
+                if (writeBatchSize > 0) {
+                    writeQueue = new WriteQueue(ctx.channel(), writeBatchSize);
+                }
+            }
+
+            @Override
+            public void channelRead(ChannelHandlerContext ctx, Object msg) {
+                RpcRequestDTO rpcRequestDTO = (RpcRequestDTO) msg;
+                if (rpcRequestDTO.isHandshake()) {
+                    return;
+                }
+                requests.incrementAndGet();
+                executor.execute(() -> {
+                    RpcResponseDTO rpcResponseDTO = new RpcResponseDTO();
+                    rpcResponseDTO.setRequestId(rpcRequestDTO.getRequestId());
+                    rpcResponseDTO.setSerializerId(rpcRequestDTO.getSerializerId());
+                    rpcResponseDTO.setResult(rpcRequestDTO.getParams()[0]);
+                    if (writeQueue != null) {
+                        writeQueue.write(rpcResponseDTO);
+                    } else {
+                        ctx.channel().writeAndFlush(rpcResponseDTO);
+                    }
+                });
+            }
+
+            @Override
+            public void channelReadComplete(ChannelHandlerContext ctx) {
+                reads.incrementAndGet();
+            }
+        }
+    }
+
+    @Benchmark
+    public Object call(ClientState state) throws Throwable {
+        RpcRequestDTO rpcRequestDTO = new RpcRequestDTO();
+        rpcRequestDTO.setMethodId(RpcProtocol.HEALTH_METHOD_ID);
+        rpcRequestDTO.setSerializerId(HessianSerializer.ID);
+        rpcRequestDTO.setParams(new Object[]{"ping"});
+        return state.rpcNettyClient.sendRpcRequest(rpcRequestDTO, 3000L);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(WriteBatchBenchmark.class.getSimpleName())
+                .forks(1)
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,73 @@
+package test.cache;
+
+import org.junit.Assert;
+import org.junit.Test;
+import shier.rpc.cache.CacheRegistry;
+import shier.rpc.cache.ResultCache;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * @author liangliang.wei
+ * @description
+ * @create 2017-12-25 上午10:30
+ **/
+public class ResultCacheTest {
+
+    @Test
+    public void testHitAndExpire() throws InterruptedException {
+        ResultCache cache = new ResultCache("test.cache.Service:get", 100, 50);
+        ResultCache.Key key = key("a");
+        Assert.assertNull(cache.get(key));
+        cache.put(key, null, cache.getGeneration());
+        //缓存的结果可以为null
+        ResultCache.Hit hit = cache.get(ResultCache.newKey(1, "a".getBytes(StandardCharsets.UTF_8)));
+        Assert.assertNotNull(hit);
+        Assert.assertNull(hit.getValue());
+        Assert.assertEquals(1, cache.getHitCount());
+        Assert.assertEquals(1, cache.getMissCount());
+
+        Thread.sleep(80);
+        Assert.assertNull(cache.get(key));
+        Assert.assertEquals(0, cache.size());
+        Assert.assertEquals(2, cache.getMissCount());
+    }
+
+    @Test
+    public void testInvalidate() {
+        ResultCache cache = new ResultCache("test.cache.Service:invalidate", 100, 0);
+        CacheRegistry.register(cache);
+        cache.put(key("a"), "a", cache.getGeneration());
+
+        //调用发起后发生失效, 返回的旧结果不写入
+        long generation = cache.getGeneration();
+        CacheRegistry.invalidate(new Object[]{"test.cache.Service:invalidate", "test.cache.Service:unknown"});
+        Assert.assertNull(cache.get(key("a")));
+        cache.put(key("a"), "stale", generation);
+        Assert.assertNull(cache.get(key("a")));
+
+        cache.put(key("a"), "b", cache.getGeneration());
+        Assert.assertEquals("b", cache.get(key("a")).getValue());
+    }
+
+    @Test
+    public void testScanResistance() {
+        ResultCache cache = new ResultCache("test.cache.Service:scan", 100, 0);
+        ResultCache.Key hot = key("hot");
+        cache.put(hot, "hot", cache.getGeneration());
+        for (int i = 0; i < 10; i++) {
+            Assert.assertNotNull(cache.get(hot));
+        }
+        //只访问一次的key不能挤掉频繁访问的key
+        for (int i = 0; i < 1000; i++) {
+            cache.put(key("scan" + i), i, cache.getGeneration());
+        }
+        Assert.assertNotNull(cache.get(hot));
+        Assert.assertEquals(100, cache.size());
+        Assert.assertEquals(901, cache.getEvictionCount());
+    }
+
+    private static ResultCache.Key key(String args) {
+        return ResultCache.newKey(1, args.getBytes(StandardCharsets.UTF_8));
+    }
+}
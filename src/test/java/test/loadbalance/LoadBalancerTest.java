@@ -0,0 +1,121 @@
+package test.loadbalance;
+
+import org.junit.Assert;
+import org.junit.Test;
+import shier.rpc.dto.RpcRequestDTO;
+import shier.rpc.loadbalance.LoadBalancer;
+import shier.rpc.loadbalance.LoadBalancerRegistry;
+import shier.rpc.netty.RpcNettyClient;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * @author liangliang.wei
+ * @description
+ * @create 2017-12-18 下午3:40
+ **/
+public class LoadBalancerTest {
+
+    private final RpcNettyClient a = new RpcNettyClient("127.0.0.1:8001").setWeight(5);
+
+    private final RpcNettyClient b = new RpcNettyClient("127.0.0.1:8002").setWeight(1);
+
+    private final RpcNettyClient c = new RpcNettyClient("127.0.0.1:8003").setWeight(1);
+
+    @Test
+    public void testWeightedRoundRobin() {
+        LoadBalancer loadBalancer = LoadBalancerRegistry.newLoadBalancer("weightedRoundRobin");
+        List<RpcNettyClient> clients = Arrays.asList(a, b, c);
+        Map<RpcNettyClient, Integer> countMap = new HashMap<>();
+        StringBuilder order = new StringBuilder();
+        for (int i = 0; i < 7; i++) {
+            RpcNettyClient client = loadBalancer.select(clients, new RpcRequestDTO());
+            countMap.merge(client, 1, Integer::sum);
+            order.append(client == a ? 'a' : client == b ? 'b' : 'c');
+        }
+        Assert.assertEquals(5, (int) countMap.get(a));
+        Assert.assertEquals(1, (int) countMap.get(b));
+        Assert.assertEquals(1, (int) countMap.get(c));
+        Assert.assertEquals("aabacaa", order.toString()); //平滑: 低权重的提供者穿插其中
+    }
+
+    @Test
+    public void testWeightedRoundRobinReplace() {
+        RpcNettyClient d = new RpcNettyClient("127.0.0.1:8004").setWeight(1);
+        List<RpcNettyClient> bc = Collections.unmodifiableList(Arrays.asList(b, c));
+        List<RpcNettyClient> bd = Collections.unmodifiableList(Arrays.asList(b, d));
+
+        //熔断过滤后的列表不清理e的当前值
+        RpcNettyClient e = new RpcNettyClient("127.0.0.1:8005").setWeight(3);
+        List<RpcNettyClient> be = Collections.unmodifiableList(Arrays.asList(b, e));
+        LoadBalancer loadBalancer = LoadBalancerRegistry.newLoadBalancer("weightedRoundRobin");
+        loadBalancer.updateProviders(be);
+        Assert.assertSame(e, loadBalancer.select(be, new RpcRequestDTO()));
+        Assert.assertSame(b, loadBalancer.select(Collections.singletonList(b), new RpcRequestDTO()));
+        Assert.assertSame(b, loadBalancer.select(be, new RpcRequestDTO()));
+
+        //c被d替换, 提供者个数不变; c重新上线时不带旧的当前值
+        loadBalancer = LoadBalancerRegistry.newLoadBalancer("weightedRoundRobin");
+        loadBalancer.updateProviders(bc);
+        Assert.assertSame(b, loadBalancer.select(bc, new RpcRequestDTO()));
+        loadBalancer.updateProviders(bd);
+        Assert.assertSame(d, loadBalancer.select(bd, new RpcRequestDTO()));
+        loadBalancer.updateProviders(bc);
+        Assert.assertSame(b, loadBalancer.select(bc, new RpcRequestDTO()));
+    }
+
+    @Test
+    public void testConsistentHash() {
+        LoadBalancer loadBalancer = LoadBalancerRegistry.newLoadBalancer("consistentHash");
+        List<RpcNettyClient> clients = new ArrayList<>(Arrays.asList(a, b, c));
+        Map<Integer, RpcNettyClient> routeMap = new HashMap<>();
+        for (int i = 0; i < 100; i++) {
+            RpcNettyClient client = select(loadBalancer, clients, i);
+            Assert.assertSame(client, select(loadBalancer, clients, i));
+            routeMap.put(i, client);
+        }
+
+        //下线一个提供者, 其余提供者上的key不迁移
+        clients.remove(c);
+        for (int i = 0; i < 100; i++) {
+            if (routeMap.get(i) != c) {
+                Assert.assertSame(routeMap.get(i), select(loadBalancer, clients, i));
+            }
+        }
+    }
+
+    @Test
+    public void testExcluded() {
+        List<RpcNettyClient> clients = Collections.unmodifiableList(Arrays.asList(a, b, c));
+        for (String name : new String[]{"random", "leastActive", "p2c", "weightedRoundRobin", "consistentHash"}) {
+            LoadBalancer loadBalancer = LoadBalancerRegistry.newLoadBalancer(name);
+            for (int i = 0; i < 20; i++) {
+                RpcRequestDTO rpcRequestDTO = new RpcRequestDTO();
+                rpcRequestDTO.setHashKey(i);
+                //重试时跳过已尝试的提供者, 全部尝试过时返回null
+                Assert.assertSame(name, c, loadBalancer.select(clients, rpcRequestDTO, Arrays.asList(a, b)));
+                Assert.assertNotSame(name, a, loadBalancer.select(clients, rpcRequestDTO, Collections.singletonList(a)));
+                Assert.assertNull(name, loadBalancer.select(clients, rpcRequestDTO, clients));
+            }
+        }
+        //一致性哈希顺时针找下一个提供者, 未排除时与普通选择相同
+        LoadBalancer loadBalancer = LoadBalancerRegistry.newLoadBalancer("consistentHash");
+        for (int i = 0; i < 100; i++) {
+            RpcRequestDTO rpcRequestDTO = new RpcRequestDTO();
+            rpcRequestDTO.setHashKey(i);
+            RpcNettyClient selected = loadBalancer.select(clients, rpcRequestDTO);
+            Assert.assertSame(selected, loadBalancer.select(clients, rpcRequestDTO, Collections.emptyList()));
+        }
+    }
+
+    private static RpcNettyClient select(LoadBalancer loadBalancer, List<RpcNettyClient> clients, int key) {
+        RpcRequestDTO rpcRequestDTO = new RpcRequestDTO();
+        rpcRequestDTO.setHashKey(key);
+        return loadBalancer.select(clients, rpcRequestDTO);
+    }
+}
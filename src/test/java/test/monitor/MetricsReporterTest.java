@@ -0,0 +1,134 @@
+package test.monitor;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.Assert;
+import org.junit.Test;
+import shier.rpc.monitor.MethodMetrics;
+import shier.rpc.monitor.MetricsHttpServer;
+import shier.rpc.monitor.MetricsReporter;
+import shier.rpc.monitor.Monitor;
+import shier.rpc.monitor.Report;
+import shier.rpc.monitor.ReportCodec;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @author liangliang.wei
+ * @description
+ * @create 2017-12-22 下午3:30
+ **/
+public class MetricsReporterTest {
+
+    @Test
+    public void testCodec() {
+        Date start = new Date(1513900000000L);
+        Date end = new Date(1513900030000L);
+        Report a = report(Monitor.CONSUMER, "test.service.TestService_0.0.1", "addTest(java.lang.String)", start, end);
+        Report b = report(Monitor.PROVIDER, "test.service.TestService_0.0.1", "addTest(java.lang.String)", start, end);
+        b.setFailCount(3);
+        byte[] frame = ReportCodec.encode(Arrays.asList(a, b));
+        //第二个报告的服务名和方法名只写序号
+        int single = ReportCodec.encode(Collections.singletonList(a)).length;
+        Assert.assertTrue(frame.length - single < 30);
+
+        byte[] batch = new byte[frame.length * 2];
+        System.arraycopy(frame, 0, batch, 0, frame.length);
+        System.arraycopy(frame, 0, batch, frame.length, frame.length);
+        List<Report> reports = ReportCodec.decode(batch);
+        Assert.assertEquals(Arrays.asList(a, b, a, b), reports);
+    }
+
+    @Test
+    public void testPushAndPull() throws Exception {
+        AtomicInteger status = new AtomicInteger(500);
+        List<byte[]> received = new CopyOnWriteArrayList<>();
+        HttpServer center = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        center.createContext("/report", exchange -> {
+            received.add(readAll(exchange.getRequestBody()));
+            exchange.sendResponseHeaders(status.get(), -1);
+            exchange.close();
+        });
+        center.start();
+
+        MetricsReporter reporter = new MetricsReporter(() -> "http://127.0.0.1:" + center.getAddress().getPort());
+        MetricsHttpServer pullServer = new MetricsHttpServer(18093, reporter);
+        pullServer.start();
+        try {
+            MethodMetrics metrics = Monitor.getMetrics(Monitor.CONSUMER, "reporter.Service", "call()");
+            metrics.record(TimeUnit.MILLISECONDS.toNanos(2), true);
+            reporter.run();
+            //推送失败, 保留等待重试
+            Assert.assertEquals(1, reporter.getPendingCount());
+
+            metrics.record(TimeUnit.MILLISECONDS.toNanos(3), false);
+            status.set(200);
+            reporter.run();
+            Assert.assertEquals(0, reporter.getPendingCount());
+            Assert.assertEquals(2, reporter.getPushedCount());
+            //重试时两个周期合并为一个批次
+            List<Report> batch = ReportCodec.decode(received.get(1));
+            long count = batch.stream().filter(r -> "reporter.Service".equals(r.getServiceName())).count();
+            Assert.assertEquals(2, count);
+
+            String text = get("http://127.0.0.1:18093/metrics");
+            Assert.assertTrue(text, text.contains(
+                    "shier_rpc_calls_total{side=\"consumer\",service=\"reporter.Service\",method=\"call()\",result=\"success\"} 1"));
+            Assert.assertTrue(text, text.contains(
+                    "shier_rpc_calls_total{side=\"consumer\",service=\"reporter.Service\",method=\"call()\",result=\"fail\"} 1"));
+            Assert.assertTrue(text, text.contains(
+                    "shier_rpc_latency_microseconds_count{side=\"consumer\",service=\"reporter.Service\",method=\"call()\"} 2"));
+        } finally {
+            pullServer.close();
+            center.stop(0);
+        }
+    }
+
+    private static Report report(String side, String serviceName, String methodName, Date start, Date end) {
+        Report report = new Report();
+        report.setSide(side);
+        report.setServiceName(serviceName);
+        report.setMethodName(methodName);
+        report.setStartTime(start);
+        report.setEndTime(end);
+        report.setCount(1200);
+        report.setSuccessCount(1200);
+        report.setTotalTime(360000);
+        report.setMinTime(120);
+        report.setMaxTime(15000);
+        report.setP50(255);
+        report.setP90(511);
+        report.setP99(2047);
+        report.setP999(14335);
+        return report;
+    }
+
+    private static String get(String url) throws Exception {
+        HttpURLConnection conn = (HttpURLConnection) new URL(url).openConnection();
+        Assert.assertEquals(200, conn.getResponseCode());
+        return new String(readAll(conn.getInputStream()), StandardCharsets.UTF_8);
+    }
+
+    private static byte[] readAll(InputStream inputStream) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[1024];
+        int n;
+        while ((n = inputStream.read(buffer)) >= 0) {
+            out.write(buffer, 0, n);
+        }
+        inputStream.close();
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,87 @@
+package test.monitor;
+
+import org.junit.Assert;
+import org.junit.Test;
+import shier.rpc.monitor.LatencyHistogram;
+import shier.rpc.monitor.MethodMetrics;
+import shier.rpc.monitor.Report;
+
+import java.util.Date;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author liangliang.wei
+ * @description
+ * @create 2017-12-21 下午4:00
+ **/
+public class MonitorTest {
+
+    @Test
+    public void testBucket() {
+        long last = -1;
+        for (int i = 0; i < LatencyHistogram.BUCKET_COUNT; i++) {
+            long value = LatencyHistogram.bucketValue(i);
+            Assert.assertTrue(value > last);
+            Assert.assertEquals(i, LatencyHistogram.bucketIndex(value));
+            Assert.assertEquals(i, LatencyHistogram.bucketIndex(last + 1));
+            last = value;
+        }
+        //相对误差不超过1/16
+        for (long v = 1; v < 100000000L; v = v * 3 + 1) {
+            long bucket = LatencyHistogram.bucketValue(LatencyHistogram.bucketIndex(v));
+            Assert.assertTrue(bucket >= v && bucket - v <= v / 16);
+        }
+    }
+
+    @Test
+    public void testPercentile() {
+        MethodMetrics metrics = new MethodMetrics("consumer", "service", "method");
+        for (int i = 1; i <= 1000; i++) {
+            metrics.record(TimeUnit.MICROSECONDS.toNanos(i * 10), i % 100 != 0);
+        }
+        Report report = metrics.drain(new Date(), new Date());
+        Assert.assertEquals(1000, report.getCount());
+        Assert.assertEquals(990, report.getSuccessCount());
+        Assert.assertEquals(10, report.getFailCount());
+        Assert.assertEquals(10, report.getMinTime());
+        Assert.assertEquals(10000, report.getMaxTime());
+        Assert.assertEquals(5005000, report.getTotalTime());
+        assertNear(5000, report.getP50());
+        assertNear(9000, report.getP90());
+        assertNear(9900, report.getP99());
+        //导出后清零
+        Assert.assertNull(metrics.drain(new Date(), new Date()));
+    }
+
+    @Test
+    public void testConcurrentDrain() throws Exception {
+        MethodMetrics metrics = new MethodMetrics("provider", "service", "method");
+        int threads = 4;
+        int perThread = 200000;
+        CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            new Thread(() -> {
+                for (int i = 0; i < perThread; i++) {
+                    metrics.record(i, true);
+                }
+                done.countDown();
+            }).start();
+        }
+        //记录的同时不断导出, 各周期之和与记录数一致
+        long total = 0;
+        while (done.getCount() > 0) {
+            total += count(metrics.drain(new Date(), new Date()));
+        }
+        total += count(metrics.drain(new Date(), new Date()));
+        Assert.assertEquals((long) threads * perThread, total);
+    }
+
+    private static long count(Report report) {
+        return report == null ? 0 : report.getCount();
+    }
+
+    private static void assertNear(long expected, long actual) {
+        Assert.assertTrue(actual + " != " + expected, actual >= expected && actual - expected <= expected / 16);
+    }
+}
@@ -0,0 +1,125 @@
+package test.netty;
+
+import io.netty.channel.ChannelConfig;
+import io.netty.channel.DefaultChannelConfig;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.junit.Assert;
+import org.junit.Test;
+import shier.rpc.netty.BoundedExecutor;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author liangliang.wei
+ * @description
+ * @create 2017-12-20 下午2:15
+ **/
+public class BoundedExecutorTest {
+
+    @Test
+    public void testBackpressure() throws Exception {
+        BoundedExecutor executor = new BoundedExecutor("test", 1, 4, 3, 1);
+        EmbeddedChannel channel = new EmbeddedChannel();
+        CountDownLatch blocker = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(5);
+        Runnable task = () -> {
+            try {
+                blocker.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            done.countDown();
+        };
+        try {
+            //1个执行中 + 4个排队, 排队达到3时暂停读取
+            for (int i = 0; i < 5; i++) {
+                Assert.assertTrue(executor.execute(channel, task));
+            }
+            Assert.assertFalse(channel.config().isAutoRead());
+            //队列已满, 快速拒绝
+            Assert.assertFalse(executor.execute(channel, task));
+            Assert.assertEquals(1, executor.getRejectedCount());
+
+            blocker.countDown();
+            Assert.assertTrue(done.await(5, TimeUnit.SECONDS));
+            long deadline = System.currentTimeMillis() + 5000;
+            while (!channel.config().isAutoRead() && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            Assert.assertTrue(channel.config().isAutoRead());
+        } finally {
+            executor.shutdown();
+            channel.finish();
+        }
+    }
+
+    @Test
+    public void testDrainWhilePausing() throws Exception {
+        BoundedExecutor executor = new BoundedExecutor("test", 1, 4, 3, 1);
+        CountDownLatch blocker = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(4);
+        //暂停读取的过程中放开任务, 等队列排空后才真正暂停
+        PausingChannel channel = new PausingChannel(() -> {
+            blocker.countDown();
+            try {
+                Assert.assertTrue(done.await(5, TimeUnit.SECONDS));
+                Thread.sleep(200);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        });
+        Runnable task = () -> {
+            try {
+                blocker.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            done.countDown();
+        };
+        try {
+            //1个执行中 + 3个排队, 第4个任务触发暂停
+            for (int i = 0; i < 4; i++) {
+                Assert.assertTrue(executor.execute(channel, task));
+            }
+            Assert.assertTrue(channel.paused);
+            Assert.assertTrue(channel.config().isAutoRead());
+        } finally {
+            executor.shutdown();
+            channel.finish();
+        }
+    }
+
+    /**
+     * setAutoRead(false) 生效前先执行onPause
+     */
+    private static class PausingChannel extends EmbeddedChannel {
+
+        private final Runnable onPause;
+
+        private ChannelConfig config;
+
+        private volatile boolean paused;
+
+        PausingChannel(Runnable onPause) {
+            this.onPause = onPause;
+        }
+
+        @Override
+        public ChannelConfig config() {
+            if (config == null) {
+                config = new DefaultChannelConfig(this) {
+                    @Override
+                    public ChannelConfig setAutoRead(boolean autoRead) {
+                        if (!autoRead && !paused && onPause != null) {
+                            paused = true;
+                            onPause.run();
+                        }
+                        return super.setAutoRead(autoRead);
+                    }
+                };
+            }
+            return config;
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package test.netty;
+
+import org.junit.Assert;
+import org.junit.Test;
+import shier.rpc.netty.CircuitBreaker;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @author liangliang.wei
+ * @description
+ * @create 2017-12-23 下午2:00
+ **/
+public class CircuitBreakerTest {
+
+    @Test
+    public void testOpenAndProbe() {
+        AtomicInteger changes = new AtomicInteger();
+        CircuitBreaker breaker = new CircuitBreaker(changes::incrementAndGet);
+        long fast = TimeUnit.MILLISECONDS.toNanos(1);
+
+        //请求数不足时不打开
+        for (int i = 0; i < CircuitBreaker.MIN_REQUESTS - 1; i++) {
+            Assert.assertFalse(breaker.record(fast, true));
+        }
+        Assert.assertTrue(breaker.allowRequest());
+        Assert.assertTrue(breaker.record(fast, true));
+        Assert.assertEquals(CircuitBreaker.OPEN, breaker.getState());
+        Assert.assertFalse(breaker.allowRequest());
+        Assert.assertEquals(CircuitBreaker.OPEN_DURATION, breaker.getOpenDuration());
+        //打开后的结果不再统计
+        Assert.assertFalse(breaker.record(fast, true));
+
+        //探测失败, 打开时间翻倍
+        breaker.halfOpen();
+        Assert.assertEquals(CircuitBreaker.HALF_OPEN, breaker.getState());
+        Assert.assertFalse(breaker.allowRequest());
+        breaker.probeFailure();
+        Assert.assertEquals(CircuitBreaker.OPEN, breaker.getState());
+        Assert.assertEquals(CircuitBreaker.OPEN_DURATION * 2, breaker.getOpenDuration());
+
+        //连续探测成功后关闭
+        breaker.halfOpen();
+        for (int i = 1; i < CircuitBreaker.PROBE_SUCCESS; i++) {
+            Assert.assertFalse(breaker.probeSuccess());
+        }
+        Assert.assertTrue(breaker.probeSuccess());
+        Assert.assertTrue(breaker.allowRequest());
+        Assert.assertEquals(CircuitBreaker.OPEN_DURATION, breaker.getOpenDuration());
+        //关闭 -> 打开 -> 打开 -> 关闭
+        Assert.assertEquals(3, changes.get());
+    }
+
+    @Test
+    public void testErrorRate() {
+        CircuitBreaker breaker = new CircuitBreaker(() -> {
+        });
+        long fast = TimeUnit.MILLISECONDS.toNanos(1);
+        long slow = TimeUnit.MILLISECONDS.toNanos(CircuitBreaker.SLOW_THRESHOLD + 1);
+        //失败率低于阈值
+        for (int i = 0; i < 100; i++) {
+            breaker.record(fast, i % 4 == 0);
+        }
+        Assert.assertTrue(breaker.allowRequest());
+        //慢请求比例达到阈值
+        for (int i = 0; i < 2000 && breaker.allowRequest(); i++) {
+            breaker.record(slow, false);
+        }
+        Assert.assertFalse(breaker.allowRequest());
+    }
+}
@@ -0,0 +1,152 @@
+package test.netty;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.CorruptedFrameException;
+import org.junit.Assert;
+import org.junit.Test;
+import shier.rpc.dto.RpcRequestDTO;
+import shier.rpc.dto.RpcResponseDTO;
+import shier.rpc.exception.RpcBusyException;
+import shier.rpc.netty.RpcProtocolDecoder;
+import shier.rpc.netty.RpcProtocolEncoder;
+import shier.rpc.protocol.RpcProtocol;
+import shier.rpc.serialize.HessianSerializer;
+import shier.rpc.serialize.KryoSerializer;
+import shier.rpc.spring.RpcConfigBean;
+import test.dto.TestDTO;
+
+/**
+ * @author liangliang.wei
+ * @description
+ * @create 2017-12-15 上午11:20
+ **/
+public class RpcProtocolCodecTest {
+
+    @Test
+    public void testRequest() {
+        TestDTO testDTO = new TestDTO();
+        testDTO.setId(1L);
+        testDTO.setName("Hi shier-simple-rpc");
+        for (byte serializerId : new byte[]{HessianSerializer.ID, KryoSerializer.ID}) {
+            RpcRequestDTO request = new RpcRequestDTO();
+            request.setRequestId(Long.MAX_VALUE);
+            request.setMethodId(7);
+            request.setSerializerId(serializerId);
+            request.setParams(new Object[]{testDTO, 3});
+            request.setTimeout(3000);
+
+            RpcRequestDTO decoded = (RpcRequestDTO) roundTrip(request);
+            Assert.assertEquals(Long.MAX_VALUE, decoded.getRequestId());
+            Assert.assertEquals(7, decoded.getMethodId());
+            Assert.assertEquals(serializerId, decoded.getSerializerId());
+            Assert.assertEquals(testDTO, decoded.getParams()[0]);
+            Assert.assertEquals(3, decoded.getParams()[1]);
+            Assert.assertEquals(3000, decoded.getTimeout());
+            Assert.assertTrue(decoded.getDeadline() - System.nanoTime() > 0);
+        }
+    }
+
+    @Test
+    public void testAttachment() {
+        byte[] data = new byte[RpcConfigBean.ATTACHMENT_THRESHOLD * 2];
+        data[data.length - 1] = 9;
+        Object[] params = new Object[]{"small", data, new byte[]{1, 2}};
+
+        RpcRequestDTO request = new RpcRequestDTO();
+        request.setRequestId(1L);
+        request.setSerializerId(HessianSerializer.ID);
+        request.setParams(params);
+        RpcRequestDTO decodedRequest = (RpcRequestDTO) roundTrip(request);
+        Assert.assertSame(data, params[1]); //调用方参数不被修改
+        Assert.assertEquals("small", decodedRequest.getParams()[0]);
+        Assert.assertArrayEquals(data, (byte[]) decodedRequest.getParams()[1]);
+        Assert.assertArrayEquals(new byte[]{1, 2}, (byte[]) decodedRequest.getParams()[2]);
+
+        RpcResponseDTO response = new RpcResponseDTO();
+        response.setRequestId(2L);
+        response.setSerializerId(KryoSerializer.ID);
+        response.setResult(data);
+        RpcResponseDTO decodedResponse = (RpcResponseDTO) roundTrip(response);
+        Assert.assertArrayEquals(data, (byte[]) decodedResponse.getResult());
+    }
+
+    @Test
+    public void testError() {
+        RpcResponseDTO response = new RpcResponseDTO();
+        response.setRequestId(3L);
+        response.setSerializerId(KryoSerializer.ID);
+        response.setHasError(true);
+        response.setThrowable(new IllegalStateException("error"));
+
+        RpcResponseDTO decoded = (RpcResponseDTO) roundTrip(response);
+        Assert.assertTrue(decoded.isHasError());
+        Assert.assertEquals("error", decoded.getThrowable().getMessage());
+    }
+
+    @Test
+    public void testBusyResponse() {
+        RpcResponseDTO response = new RpcResponseDTO();
+        response.setRequestId(9);
+        response.setSerializerId(HessianSerializer.ID);
+        response.setHasError(true);
+        response.setBusy(true);
+
+        RpcResponseDTO decoded = (RpcResponseDTO) roundTrip(response);
+        Assert.assertEquals(9, decoded.getRequestId());
+        Assert.assertTrue(decoded.isHasError());
+        Assert.assertTrue(decoded.isBusy());
+        Assert.assertTrue(decoded.getThrowable() instanceof RpcBusyException);
+    }
+
+    @Test
+    public void testMalformedAttachment() {
+        //附件个数, 附件长度, 参数序号超出范围时拒绝, 不按对端给出的大小分配
+        assertCorrupted(RpcProtocol.FLAG_RESPONSE, Integer.MAX_VALUE);
+        assertCorrupted(RpcProtocol.FLAG_RESPONSE, -1);
+        assertCorrupted(RpcProtocol.FLAG_RESPONSE, 1, -1, Integer.MAX_VALUE);
+        assertCorrupted(RpcProtocol.FLAG_RESPONSE, 1, -1, -1);
+        assertCorrupted(RpcProtocol.FLAG_RESPONSE, 1, 0, 0);
+        assertCorrupted((byte) 0, 1, Integer.MAX_VALUE - 1, 0);
+    }
+
+    private void assertCorrupted(byte flags, int... attachmentInts) {
+        ByteBuf frame = Unpooled.buffer();
+        frame.writeInt(RpcProtocol.HEADER_LENGTH + 4 + attachmentInts.length * 4);
+        frame.writeShort(RpcProtocol.MAGIC);
+        frame.writeByte(RpcProtocol.VERSION);
+        frame.writeByte(flags | RpcProtocol.FLAG_ATTACHMENT);
+        frame.writeLong(1L);
+        frame.writeByte(HessianSerializer.ID);
+        frame.writeInt(0);
+        frame.writeInt(0); //消息体长度
+        for (int value : attachmentInts) {
+            frame.writeInt(value);
+        }
+        EmbeddedChannel decoder = new EmbeddedChannel(new RpcProtocolDecoder(Integer.MAX_VALUE));
+        try {
+            decoder.writeInbound(frame);
+            Assert.fail();
+        } catch (CorruptedFrameException e) {
+            Assert.assertNull(decoder.readInbound());
+        } finally {
+            decoder.finishAndReleaseAll();
+        }
+    }
+
+    private Object roundTrip(Object msg) {
+        EmbeddedChannel encoder = new EmbeddedChannel(new RpcProtocolEncoder());
+        EmbeddedChannel decoder = new EmbeddedChannel(new RpcProtocolDecoder(Integer.MAX_VALUE));
+        Assert.assertTrue(encoder.writeOutbound(msg));
+        ByteBuf frame = encoder.readOutbound();
+        //分两段写入, 验证半包
+        decoder.writeInbound(frame.readRetainedSlice(10));
+        decoder.writeInbound(frame);
+        Object decoded = decoder.readInbound();
+        Assert.assertNotNull(decoded);
+        Assert.assertFalse(encoder.finish());
+        Assert.assertFalse(decoder.finish());
+        return decoded;
+    }
+}
@@ -0,0 +1,63 @@
+package test.proxy;
+
+import org.junit.Assert;
+import org.junit.Test;
+import shier.rpc.proxy.RpcStubGenerator;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * @author liangliang.wei
+ * @description
+ * @create 2017-12-17 下午4:20
+ **/
+public class RpcStubGeneratorTest {
+
+    public interface BaseService {
+
+        String echo(String value);
+    }
+
+    public interface StubService extends BaseService {
+
+        long add(long a, int b);
+
+        boolean check();
+
+        void notify(String message);
+
+        @Override
+        String echo(String value);
+    }
+
+    @Test
+    public void testStub() {
+        Method[] methods = RpcStubGenerator.getStubMethods(StubService.class);
+        Assert.assertEquals(4, methods.length); //echo只生成一次
+
+        List<Object[]> calls = new ArrayList<>();
+        StubService stub = RpcStubGenerator.newStub(StubService.class, (methodIndex, args) -> {
+            calls.add(args);
+            switch (methods[methodIndex].getName()) {
+                case "add":
+                    return (Long) args[0] + (Integer) args[1];
+                case "echo":
+                    return args[0];
+                default:
+                    return null;
+            }
+        });
+
+        Assert.assertEquals(3L, stub.add(1L, 2));
+        Assert.assertEquals("hi", stub.echo("hi"));
+        Assert.assertEquals("hi", ((BaseService) stub).echo("hi"));
+        Assert.assertFalse(stub.check()); //基本类型返回null时为默认值
+        stub.notify("message");
+        Assert.assertEquals(5, calls.size());
+        Assert.assertArrayEquals(new Object[]{"message"}, calls.get(4));
+
+        Assert.assertSame(stub.getClass(), RpcStubGenerator.newStub(StubService.class, (methodIndex, args) -> null).getClass());
+    }
+}
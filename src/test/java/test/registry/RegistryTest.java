@@ -0,0 +1,69 @@
+package test.registry;
+
+import org.junit.Assert;
+import org.junit.Test;
+import shier.rpc.registry.FileRegistry;
+import shier.rpc.registry.MemoryRegistry;
+import shier.rpc.registry.Registry;
+
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author liangliang.wei
+ * @description
+ * @create 2017-12-19 下午5:10
+ **/
+public class RegistryTest {
+
+    private static final String SERVICE_NAME = "test.service.TestService_0.0.1";
+
+    @Test
+    public void testMemoryRegistry() throws Exception {
+        MemoryRegistry registry = new MemoryRegistry();
+        try {
+            verifyNotify(registry, registry);
+        } finally {
+            registry.close();
+        }
+    }
+
+    @Test
+    public void testFileRegistry() throws Exception {
+        String directory = Files.createTempDirectory("shier-rpc-registry").toString();
+        FileRegistry consumer = new FileRegistry(directory);
+        FileRegistry provider = new FileRegistry(directory);
+        try {
+            verifyNotify(consumer, provider);
+            provider.register(SERVICE_NAME, "127.0.0.1:8003");
+        } finally {
+            provider.close();
+        }
+        //提供者关闭后注销本实例注册的地址
+        Assert.assertEquals(Collections.emptyList(), consumer.subscribe(SERVICE_NAME, (serviceName, addressList) -> {
+        }));
+        consumer.close();
+    }
+
+    private void verifyNotify(Registry consumer, Registry provider) throws Exception {
+        LinkedBlockingQueue<List<String>> notifyQueue = new LinkedBlockingQueue<>();
+        provider.register(SERVICE_NAME, "127.0.0.1:8001");
+        List<String> addressList = consumer.subscribe(SERVICE_NAME, (serviceName, list) -> notifyQueue.add(list));
+        Assert.assertEquals(Collections.singletonList("127.0.0.1:8001"), addressList);
+
+        provider.register(SERVICE_NAME, "127.0.0.1:8002");
+        Assert.assertEquals(Arrays.asList("127.0.0.1:8001", "127.0.0.1:8002"), notifyQueue.poll(5, TimeUnit.SECONDS));
+
+        provider.unregister(SERVICE_NAME, "127.0.0.1:8001");
+        Assert.assertEquals(Collections.singletonList("127.0.0.1:8002"), notifyQueue.poll(5, TimeUnit.SECONDS));
+
+        provider.registerCenter("http://127.0.0.1:8080");
+        Assert.assertEquals("http://127.0.0.1:8080", consumer.getCenterAddress());
+        provider.cancelCenter();
+        Assert.assertNull(consumer.getCenterAddress());
+    }
+}
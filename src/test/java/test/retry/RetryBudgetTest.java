@@ -0,0 +1,62 @@
+package test.retry;
+
+import org.junit.Assert;
+import org.junit.Test;
+import shier.rpc.retry.LatencyWindow;
+import shier.rpc.retry.RetryBudget;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * @author liangliang.wei
+ * @description
+ * @create 2017-12-24 下午3:00
+ **/
+public class RetryBudgetTest {
+
+    @Test
+    public void testBudget() {
+        RetryBudget budget = new RetryBudget(0.1, 0);
+        //没有请求时没有预算
+        Assert.assertFalse(budget.tryWithdraw());
+        for (int i = 0; i < 100; i++) {
+            budget.deposit();
+        }
+        //100个请求最多10次重试
+        int retries = 0;
+        while (budget.tryWithdraw()) {
+            retries++;
+        }
+        Assert.assertEquals(10, retries);
+
+        RetryBudget floor = new RetryBudget(0.1, 5);
+        Assert.assertEquals(5, floor.getBalance());
+        //余额有上限
+        for (int i = 0; i < 100000; i++) {
+            floor.deposit();
+        }
+        Assert.assertEquals(100, floor.getBalance());
+    }
+
+    @Test
+    public void testHedgeDelay() throws Exception {
+        Assert.assertEquals(-1, new LatencyWindow(95D, null).getDelayMillis());
+        Assert.assertEquals(20, new LatencyWindow(null, 20L).getDelayMillis());
+
+        long windowMillis = LatencyWindow.WINDOW_MILLIS;
+        LatencyWindow.WINDOW_MILLIS = 50;
+        try {
+            LatencyWindow window = new LatencyWindow(90D, 5L);
+            Assert.assertEquals(5, window.getDelayMillis());
+            for (int i = 1; i <= 1000; i++) {
+                window.record(TimeUnit.MICROSECONDS.toNanos(i * 100));
+            }
+            Thread.sleep(60);
+            //第90百分位约90毫秒
+            long delay = window.getDelayMillis();
+            Assert.assertTrue(String.valueOf(delay), delay >= 90 && delay <= 97);
+        } finally {
+            LatencyWindow.WINDOW_MILLIS = windowMillis;
+        }
+    }
+}